@@ -0,0 +1,180 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measure counting throughput under contention.
+ * 
+ * The same Zipf-distributed token stream is counted by 1, 4, 16 and 64
+ * threads in three ways: all threads adding to one
+ * {@link ConcurrentCategoryCounts}, all threads adding to one
+ * {@link CategoryCounts} under a lock, and each thread adding to its own
+ * {@link CategoryCounts} followed by a merge.
+ * 
+ * Usage: ConcurrentCountsBenchmark [vocabulary size] [tokens]
+ * 
+ * @author W.P. McNeill
+ */
+public class ConcurrentCountsBenchmark {
+	private final String[] types;
+	private final String[] categories;
+	private final int[] tokenTypes;
+	private final int[] tokenCategories;
+
+	ConcurrentCountsBenchmark(int vocabularySize, int tokenCount) {
+		Random random = new Random(0);
+		ZipfGenerator zipf = new ZipfGenerator(vocabularySize, 1.0, random);
+		types = ZipfGenerator.typeNames(vocabularySize);
+		categories = new String[45];
+		for (int c = 0; c < categories.length; c++)
+			categories[c] = "C" + c;
+		tokenTypes = new int[tokenCount];
+		tokenCategories = new int[tokenCount];
+		for (int i = 0; i < tokenCount; i++) {
+			tokenTypes[i] = zipf.next();
+			tokenCategories[i] = ZipfGenerator.category(tokenTypes[i],
+					categories.length, random);
+		}
+	}
+
+	/**
+	 * A way of counting tokens on several threads.
+	 */
+	private abstract class Strategy {
+		final String name;
+
+		Strategy(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Prepare for a run with a number of threads.
+		 */
+		abstract void start(int threads);
+
+		/**
+		 * Count a token on a thread.
+		 */
+		abstract void add(int thread, String type, String category);
+
+		/**
+		 * Finish counting.
+		 */
+		abstract void finish() throws InterruptedException;
+	}
+
+	/**
+	 * Count the token stream split among threads.
+	 * 
+	 * @return tokens per second
+	 */
+	double run(final Strategy strategy, final int threads)
+			throws InterruptedException {
+		strategy.start(threads);
+		final CountDownLatch ready = new CountDownLatch(threads);
+		final CountDownLatch go = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			Thread worker = new Thread() {
+				@Override
+				public void run() {
+					ready.countDown();
+					try {
+						go.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = thread; i < tokenTypes.length; i += threads)
+						strategy.add(thread, types[tokenTypes[i]],
+								categories[tokenCategories[i]]);
+				}
+			};
+			worker.start();
+			workers.add(worker);
+		}
+		ready.await();
+		long start = System.nanoTime();
+		go.countDown();
+		for (Thread worker : workers)
+			worker.join();
+		strategy.finish();
+		return tokenTypes.length * 1e9 / (System.nanoTime() - start);
+	}
+
+	/**
+	 * @param args
+	 *            vocabulary size and number of tokens
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int vocabularySize = args.length > 0 ? Integer.parseInt(args[0])
+				: 100000;
+		int tokenCount = args.length > 1 ? Integer.parseInt(args[1])
+				: 10000000;
+		ConcurrentCountsBenchmark benchmark = new ConcurrentCountsBenchmark(
+				vocabularySize, tokenCount);
+		Strategy[] strategies = {
+				benchmark.new Strategy("concurrent") {
+					ConcurrentCategoryCounts<String, String> counts;
+
+					void start(int threads) {
+						counts = new ConcurrentCategoryCounts<String, String>();
+					}
+
+					void add(int thread, String type, String category) {
+						counts.addToken(type, category);
+					}
+
+					void finish() {
+						counts.toCategoryCounts();
+					}
+				}, benchmark.new Strategy("synchronized") {
+					CategoryCounts<String, String> counts;
+
+					void start(int threads) {
+						counts = new CategoryCounts<String, String>();
+					}
+
+					void add(int thread, String type, String category) {
+						synchronized (counts) {
+							counts.addToken(type, category);
+						}
+					}
+
+					void finish() {
+					}
+				}, benchmark.new Strategy("per-thread + merge") {
+					List<CategoryCounts<String, String>> counts;
+
+					void start(int threads) {
+						counts = new ArrayList<CategoryCounts<String, String>>();
+						for (int t = 0; t < threads; t++)
+							counts.add(new CategoryCounts<String, String>());
+					}
+
+					void add(int thread, String type, String category) {
+						counts.get(thread).addToken(type, category);
+					}
+
+					void finish() throws InterruptedException {
+						CategoryCounts.merge(counts, counts.size());
+					}
+				} };
+		System.out.println(vocabularySize + " types, " + tokenCount
+				+ " tokens, " + Runtime.getRuntime().availableProcessors()
+				+ " processors");
+		System.out.printf("%-20s %14s %14s %14s %14s%n", "tokens/s", "1", "4",
+				"16", "64");
+		for (int trial = 0; trial < 2; trial++)
+			for (Strategy strategy : strategies) {
+				System.out.printf("%-20s", strategy.name);
+				for (int threads : new int[] { 1, 4, 16, 64 })
+					System.out.printf(" %14.0f", benchmark.run(strategy,
+							threads));
+				System.out.println();
+			}
+	}
+}
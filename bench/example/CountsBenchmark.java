@@ -0,0 +1,94 @@
+package example;
+
+import java.util.Random;
+
+/**
+ * Compare the memory use and counting speed of {@link CategoryCounts} and
+ * {@link SparseCategoryCounts}.
+ * 
+ * Usage: CountsBenchmark [vocabulary size] [tokens] [categories]
+ * 
+ * @author W.P. McNeill
+ */
+public class CountsBenchmark {
+	private final String[] types;
+	private final String[] categories;
+	private final int[] tokenTypes;
+	private final int[] tokenCategories;
+
+	CountsBenchmark(int vocabularySize, int tokenCount, int categoryCount) {
+		Random random = new Random(0);
+		ZipfGenerator zipf = new ZipfGenerator(vocabularySize, 1.0, random);
+		types = ZipfGenerator.typeNames(vocabularySize);
+		categories = new String[categoryCount];
+		for (int c = 0; c < categoryCount; c++)
+			categories[c] = "C" + c;
+		tokenTypes = new int[tokenCount];
+		tokenCategories = new int[tokenCount];
+		for (int i = 0; i < tokenCount; i++) {
+			tokenTypes[i] = zipf.next();
+			tokenCategories[i] = ZipfGenerator.category(tokenTypes[i],
+					categoryCount, random);
+		}
+	}
+
+	/**
+	 * Count the tokens and report the speed and retained heap.
+	 */
+	void run(String name, CountsAccumulator<String, String> counts) {
+		long before = usedMemory();
+		long start = System.nanoTime();
+		for (int i = 0; i < tokenTypes.length; i++)
+			counts.addToken(types[tokenTypes[i]],
+					categories[tokenCategories[i]]);
+		long elapsed = System.nanoTime() - start;
+		long after = usedMemory();
+		int distinct = distinctTypes();
+		System.out.printf("%-22s %12.0f tokens/s %8.1f bytes/type%n", name,
+				tokenTypes.length * 1e9 / elapsed, (after - before)
+						/ (double) distinct);
+		// Keep the counts reachable until they have been measured.
+		if (null == counts.getMostCommonCategory())
+			System.out.println();
+	}
+
+	private int distinctTypes() {
+		boolean[] seen = new boolean[types.length];
+		int n = 0;
+		for (int type : tokenTypes)
+			if (!seen[type]) {
+				seen[type] = true;
+				n++;
+			}
+		return n;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * @param args
+	 *            vocabulary size, number of tokens and number of categories
+	 */
+	public static void main(String[] args) {
+		int vocabularySize = args.length > 0 ? Integer.parseInt(args[0])
+				: 1000000;
+		int tokenCount = args.length > 1 ? Integer.parseInt(args[1])
+				: 10000000;
+		int categoryCount = args.length > 2 ? Integer.parseInt(args[2]) : 45;
+		CountsBenchmark benchmark = new CountsBenchmark(vocabularySize,
+				tokenCount, categoryCount);
+		System.out.println(vocabularySize + " types, " + tokenCount
+				+ " tokens, " + categoryCount + " categories");
+		for (int trial = 0; trial < 2; trial++) {
+			benchmark.run("CategoryCounts",
+					new CategoryCounts<String, String>());
+			benchmark.run("SparseCategoryCounts",
+					new SparseCategoryCounts<String, String>());
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package example;
+
+import gate.Annotation;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.Gate;
+import gate.ProcessingResource;
+import gate.creole.ResourceInstantiationException;
+import gate.creole.SerialAnalyserController;
+import gate.util.GateException;
+import gate.util.InvalidOffsetException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The GATE phases of {@link LoadTest}.
+ * 
+ * Synthetic documents are made into GATE documents with gold standard Token
+ * annotations when they are loaded. They are counted with
+ * {@link TaggerTrainer} and tagged with {@link TaggerAnalyzer}, each run by
+ * {@link ParallelCorpusProcessor}, which is the path taken by {@link Train}
+ * and {@link Analyze}. Latencies come from {@link TaggerMetrics}.
+ * 
+ * This needs gate.home to be set and the plugin directory to contain
+ * creole.xml and NaiveTagger.jar.
+ * 
+ * @author W.P. McNeill
+ */
+class GateLoadTest {
+	/**
+	 * Train and tag through GATE.
+	 */
+	static void run(final SyntheticCorpus corpus, File pluginDirectory,
+			int threads) throws GateException, IOException {
+		Gate.init();
+		Gate.getCreoleRegister().registerDirectories(
+				pluginDirectory.toURI().toURL());
+		List<CorpusDocument> documents = new ArrayList<CorpusDocument>();
+		for (int d = 0; d < corpus.size(); d++)
+			documents.add(corpusDocument(corpus, d));
+
+		CategoryCounts<String, String> counts = new CategoryCounts<String, String>();
+		SerialAnalyserController trainer = controller("example.TaggerTrainer");
+		TaggerMetrics trainerMetrics = TaggerMetrics.forName("TaggerTrainer");
+		trainerMetrics.reset();
+		LoadTest.Phase phase = new LoadTest.Phase("gate train");
+		ParallelCorpusProcessor processor = new ParallelCorpusProcessor(
+				trainer, threads);
+		try {
+			for (int i = 0; i < threads; i++)
+				TaggerTrainer.setAccumulator(processor.getController(i), counts);
+			processor.process(documents,
+					new ParallelCorpusProcessor.DocumentHandler() {
+						public void processed(int worker,
+								CorpusDocument source, Document document) {
+						}
+					});
+		} finally {
+			processor.cleanup();
+			Factory.deleteResource(trainer);
+		}
+		phase.report(trainerMetrics);
+
+		File modelFile = File.createTempFile("loadtest", ".ntgm");
+		try {
+			ModelFile.save(counts.toModel(), modelFile);
+			SerialAnalyserController analyzer = controller("example.TaggerAnalyzer");
+			ProcessingResource tagger = analyzer.getPRs().iterator().next();
+			tagger.setParameterValue("modelPath", modelFile.getPath());
+			tagger.setParameterValue("categoryFeatureName", "predicted");
+			TaggerMetrics analyzerMetrics = TaggerMetrics
+					.forName("TaggerAnalyzer");
+			analyzerMetrics.reset();
+			final AtomicLong correct = new AtomicLong();
+			phase = new LoadTest.Phase("gate tag");
+			processor = new ParallelCorpusProcessor(analyzer, threads);
+			try {
+				processor.process(documents,
+						new ParallelCorpusProcessor.DocumentHandler() {
+							public void processed(int worker,
+									CorpusDocument source, Document document) {
+								long n = 0;
+								for (Annotation token : document
+										.getAnnotations().get(
+												TaggingMachineLearner.TOKEN)) {
+									FeatureMap features = token.getFeatures();
+									if (features.get("category").equals(
+											features.get("predicted")))
+										n++;
+								}
+								correct.addAndGet(n);
+							}
+						});
+			} finally {
+				processor.cleanup();
+				Factory.deleteResource(analyzer);
+			}
+			phase.report(analyzerMetrics);
+			System.out.printf("gate tag accuracy %.4f, %.2f%% unknown%n",
+					correct.get() / (double) analyzerMetrics.getTokens(),
+					100 * analyzerMetrics.getUnknownTokenRate());
+		} finally {
+			modelFile.delete();
+		}
+	}
+
+	/**
+	 * An application containing a single processing resource.
+	 */
+	private static SerialAnalyserController controller(String resourceClass)
+			throws ResourceInstantiationException {
+		SerialAnalyserController controller = (SerialAnalyserController) Factory
+				.createResource("gate.creole.SerialAnalyserController");
+		controller.add((ProcessingResource) Factory
+				.createResource(resourceClass));
+		return controller;
+	}
+
+	/**
+	 * A synthetic document as a GATE document with gold standard Token
+	 * annotations.
+	 */
+	private static CorpusDocument corpusDocument(
+			final SyntheticCorpus corpus, final int d) {
+		return new CorpusDocument("synthetic" + d, -1) {
+			@Override
+			public Document load() throws ResourceInstantiationException {
+				SyntheticCorpus.Document tokens = corpus.get(d);
+				StringBuilder text = new StringBuilder();
+				for (String type : tokens.getTypes())
+					text.append(type).append(' ');
+				Document document = Factory.newDocument(text.toString());
+				long offset = 0;
+				try {
+					for (int i = 0; i < tokens.size(); i++) {
+						String type = tokens.getTypes()[i];
+						FeatureMap features = Factory.newFeatureMap();
+						features.put("string", type);
+						features.put("category", tokens.getCategories()[i]);
+						document.getAnnotations().add(offset,
+								offset + type.length(),
+								TaggingMachineLearner.TOKEN, features);
+						offset += type.length() + 1;
+					}
+				} catch (InvalidOffsetException e) {
+					Factory.deleteResource(document);
+					throw new ResourceInstantiationException(e);
+				}
+				return document;
+			}
+		};
+	}
+}
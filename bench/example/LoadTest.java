@@ -0,0 +1,251 @@
+package example;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+
+/**
+ * End-to-end throughput test on a synthetic corpus.
+ * 
+ * A {@link SyntheticCorpus} is counted, turned into a model and tagged with
+ * the core classes alone, and optionally also through GATE with the
+ * {@link TaggerTrainer} and {@link TaggerAnalyzer} processing resources run
+ * by {@link ParallelCorpusProcessor}, which is the path taken by
+ * {@link Train} and {@link Analyze}. Documents are generated as they are
+ * needed, so the corpus can be much larger than the heap.
+ * 
+ * Each phase reports tokens per second, per-document latency percentiles,
+ * peak heap use and time spent in garbage collection.
+ * 
+ * Usage: LoadTest [-vocabulary n] [-exponent s] [-categories n] [-documents
+ * n] [-length mean] [-lengths fixed|exponential|lognormal] [-threads n]
+ * [-gate plugin-directory]
+ * 
+ * The GATE phases are run by {@link GateLoadTest}, so GATE only needs to be
+ * on the class path when they are requested.
+ * 
+ * @author W.P. McNeill
+ */
+public class LoadTest {
+	/**
+	 * Resource use over one phase of the test.
+	 */
+	static final class Phase {
+		private final String name;
+		private final long start;
+		private final long gcStart;
+
+		Phase(String name) {
+			this.name = name;
+			System.gc();
+			for (MemoryPoolMXBean pool : ManagementFactory
+					.getMemoryPoolMXBeans())
+				if (pool.getType() == MemoryType.HEAP)
+					pool.resetPeakUsage();
+			gcStart = gcMillis();
+			start = System.nanoTime();
+		}
+
+		/**
+		 * Report a phase that is not made of documents.
+		 */
+		void report() {
+			System.out.printf("%-14s %12.0f ms%43s  peak heap %6.0f MB  "
+					+ "GC %5d ms%n", name, (System.nanoTime() - start) / 1e6,
+					"", peakHeap() / 1048576.0, gcMillis() - gcStart);
+		}
+
+		/**
+		 * Report a phase with document latencies in nanoseconds.
+		 * 
+		 * Throughput is measured over the time spent processing documents, not
+		 * generating them.
+		 */
+		void report(long tokens, long[] latencies) {
+			long elapsed = 0;
+			for (long latency : latencies)
+				elapsed += latency;
+			long[] sorted = latencies.clone();
+			Arrays.sort(sorted);
+			report(tokens, elapsed, percentile(sorted, 0.5),
+					percentile(sorted, 0.9), percentile(sorted, 0.99),
+					sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+		}
+
+		/**
+		 * Report a phase with document latencies from a processing resource.
+		 * 
+		 * Throughput is measured over the whole phase, including loading the
+		 * documents.
+		 */
+		void report(TaggerMetrics metrics) {
+			long elapsed = System.nanoTime() - start;
+			report(metrics.getTokens(), elapsed, metrics
+					.getMedianLatencyMillis(), metrics
+					.getLatencyPercentileMillis(0.9), metrics
+					.getLatency99thPercentileMillis(), metrics
+					.getMaxLatencyMillis());
+		}
+
+		private void report(long tokens, long elapsed, double p50, double p90,
+				double p99, double max) {
+			System.out.printf("%-14s %12.0f tokens/s  latency ms p50 %8.3f "
+					+ "p90 %8.3f p99 %8.3f max %8.3f  peak heap %6.0f MB  "
+					+ "GC %5d ms%n", name, tokens * 1e9 / elapsed, p50, p90,
+					p99, max, peakHeap() / 1048576.0, gcMillis() - gcStart);
+		}
+
+		private static double percentile(long[] sorted, double fraction) {
+			if (sorted.length == 0)
+				return 0;
+			int i = (int) Math.ceil(fraction * sorted.length) - 1;
+			return sorted[Math.max(i, 0)] / 1e6;
+		}
+
+		private static long peakHeap() {
+			long peak = 0;
+			for (MemoryPoolMXBean pool : ManagementFactory
+					.getMemoryPoolMXBeans())
+				if (pool.getType() == MemoryType.HEAP)
+					peak += pool.getPeakUsage().getUsed();
+			return peak;
+		}
+
+		private static long gcMillis() {
+			long millis = 0;
+			for (GarbageCollectorMXBean collector : ManagementFactory
+					.getGarbageCollectorMXBeans())
+				millis += Math.max(collector.getCollectionTime(), 0);
+			return millis;
+		}
+	}
+
+	private final SyntheticCorpus corpus;
+
+	LoadTest(SyntheticCorpus corpus) {
+		this.corpus = corpus;
+	}
+
+	/**
+	 * Count, build and tag with the core classes.
+	 */
+	void runCore() throws IOException {
+		long[] latencies = new long[corpus.size()];
+		long tokens = 0;
+		Phase phase = new Phase("count");
+		CategoryCounts<String, String> counts = new CategoryCounts<String, String>();
+		for (int d = 0; d < corpus.size(); d++) {
+			SyntheticCorpus.Document document = corpus.get(d);
+			long start = System.nanoTime();
+			String[] types = document.getTypes();
+			String[] categories = document.getCategories();
+			for (int i = 0; i < types.length; i++)
+				counts.addToken(types[i], categories[i]);
+			latencies[d] = System.nanoTime() - start;
+			tokens += types.length;
+		}
+		phase.report(tokens, latencies);
+
+		phase = new Phase("build model");
+		Model<String, String> model = counts.toModel();
+		counts = null;
+		phase.report();
+		System.out.printf("%,d types%n", model.size());
+
+		tag("tag indexed", new IndexedModel(model));
+		File indexFile = File.createTempFile("loadtest", ".ntgi");
+		try {
+			MappedModel.write(model, indexFile);
+			tag("tag mapped", new MappedModel(indexFile));
+		} finally {
+			indexFile.delete();
+		}
+	}
+
+	private void tag(String name, TextCategoryModel model) {
+		long[] latencies = new long[corpus.size()];
+		long tokens = 0;
+		long correct = 0;
+		String[] predicted = new String[0];
+		Phase phase = new Phase(name);
+		for (int d = 0; d < corpus.size(); d++) {
+			SyntheticCorpus.Document document = corpus.get(d);
+			if (predicted.length < document.size())
+				predicted = new String[document.size()];
+			long start = System.nanoTime();
+			model.getCategories(document.getTypes(), document.size(),
+					predicted);
+			latencies[d] = System.nanoTime() - start;
+			tokens += document.size();
+			for (int i = 0; i < document.size(); i++)
+				if (predicted[i].equals(document.getCategories()[i]))
+					correct++;
+		}
+		phase.report(tokens, latencies);
+		System.out.printf("%s accuracy %.4f%n", name, correct
+				/ (double) tokens);
+	}
+
+	private static void usage() {
+		System.err.println("LoadTest [-vocabulary n] [-exponent s] "
+				+ "[-categories n] [-documents n] [-length mean] "
+				+ "[-lengths fixed|exponential|lognormal] [-threads n] "
+				+ "[-gate plugin-directory]");
+		System.exit(-1);
+	}
+
+	/**
+	 * @param args
+	 *            options
+	 * @throws Exception
+	 *             from GATE, which is not loaded unless it is used
+	 */
+	public static void main(String[] args) throws Exception {
+		int vocabularySize = 100000;
+		double exponent = 1.0;
+		int categoryCount = 45;
+		int documentCount = 2000;
+		int meanLength = 500;
+		SyntheticCorpus.LengthDistribution lengths = SyntheticCorpus.LengthDistribution.LOGNORMAL;
+		int threads = 1;
+		String pluginDirectory = null;
+		for (int a = 0; a < args.length; a += 2) {
+			if (a + 1 == args.length)
+				usage();
+			String option = args[a];
+			String value = args[a + 1];
+			if ("-vocabulary".equals(option))
+				vocabularySize = Integer.parseInt(value);
+			else if ("-exponent".equals(option))
+				exponent = Double.parseDouble(value);
+			else if ("-categories".equals(option))
+				categoryCount = Integer.parseInt(value);
+			else if ("-documents".equals(option))
+				documentCount = Integer.parseInt(value);
+			else if ("-length".equals(option))
+				meanLength = Integer.parseInt(value);
+			else if ("-lengths".equals(option))
+				lengths = SyntheticCorpus.LengthDistribution.valueOf(value
+						.toUpperCase());
+			else if ("-threads".equals(option))
+				threads = Integer.parseInt(value);
+			else if ("-gate".equals(option))
+				pluginDirectory = value;
+			else
+				usage();
+		}
+		System.out.printf("%,d documents, mean length %d (%s), "
+				+ "%,d types (exponent %.2f), %d categories, %d threads%n",
+				documentCount, meanLength, lengths.toString().toLowerCase(),
+				vocabularySize, exponent, categoryCount, threads);
+		LoadTest test = new LoadTest(new SyntheticCorpus(vocabularySize,
+				exponent, categoryCount, documentCount, meanLength, lengths, 0));
+		test.runCore();
+		if (null != pluginDirectory)
+			GateLoadTest.run(test.corpus, new File(pluginDirectory), threads);
+	}
+}
@@ -0,0 +1,151 @@
+package example;
+
+import java.util.Random;
+
+/**
+ * A reproducible corpus of synthetic tagged documents.
+ * 
+ * Token types are drawn from a Zipf distribution over a vocabulary and given
+ * categories with {@link ZipfGenerator#category(int, int, Random)}, so the
+ * counts have a natural-language shape. Document lengths are drawn from a
+ * configurable distribution.
+ * 
+ * Each document is generated from its own seed, so documents can be
+ * generated on demand in any order and on any thread without holding the
+ * corpus in memory.
+ * 
+ * @author W.P. McNeill
+ */
+public class SyntheticCorpus {
+	/**
+	 * Distributions of document lengths in tokens
+	 */
+	public enum LengthDistribution {
+		/**
+		 * Every document has the mean length.
+		 */
+		FIXED,
+		/**
+		 * Exponentially distributed lengths, mostly short documents
+		 */
+		EXPONENTIAL,
+		/**
+		 * Log-normal lengths with a long tail of very large documents
+		 */
+		LOGNORMAL
+	}
+
+	/**
+	 * The tokens of a document.
+	 */
+	public static class Document {
+		private final String[] types;
+		private final String[] categories;
+
+		Document(String[] types, String[] categories) {
+			this.types = types;
+			this.categories = categories;
+		}
+
+		/**
+		 * @return the types of the tokens
+		 */
+		public String[] getTypes() {
+			return types;
+		}
+
+		/**
+		 * @return the categories of the tokens
+		 */
+		public String[] getCategories() {
+			return categories;
+		}
+
+		/**
+		 * @return the number of tokens
+		 */
+		public int size() {
+			return types.length;
+		}
+	}
+
+	private final ZipfGenerator zipf;
+	private final String[] types;
+	private final String[] categories;
+	private final int documentCount;
+	private final int meanLength;
+	private final LengthDistribution lengths;
+	private final long seed;
+
+	/**
+	 * @param vocabularySize
+	 *            the number of types
+	 * @param exponent
+	 *            the Zipf exponent, about 1 for natural language
+	 * @param categoryCount
+	 *            the number of categories
+	 * @param documentCount
+	 *            the number of documents
+	 * @param meanLength
+	 *            the mean document length in tokens
+	 * @param lengths
+	 *            the distribution of document lengths
+	 * @param seed
+	 *            seed from which the corpus is generated
+	 */
+	public SyntheticCorpus(int vocabularySize, double exponent,
+			int categoryCount, int documentCount, int meanLength,
+			LengthDistribution lengths, long seed) {
+		zipf = new ZipfGenerator(vocabularySize, exponent, new Random(seed));
+		types = ZipfGenerator.typeNames(vocabularySize);
+		categories = new String[categoryCount];
+		for (int c = 0; c < categoryCount; c++)
+			categories[c] = "C" + c;
+		this.documentCount = documentCount;
+		this.meanLength = meanLength;
+		this.lengths = lengths;
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the number of documents
+	 */
+	public int size() {
+		return documentCount;
+	}
+
+	/**
+	 * Generate a document.
+	 * 
+	 * @param d
+	 *            the index of the document
+	 * @return the document, which is the same every time it is generated
+	 */
+	public Document get(int d) {
+		Random random = new Random(seed * 0x5DEECE66DL + d);
+		int length = length(random);
+		String[] documentTypes = new String[length];
+		String[] documentCategories = new String[length];
+		for (int i = 0; i < length; i++) {
+			int type = zipf.next(random);
+			documentTypes[i] = types[type];
+			documentCategories[i] = categories[ZipfGenerator.category(type,
+					categories.length, random)];
+		}
+		return new Document(documentTypes, documentCategories);
+	}
+
+	private int length(Random random) {
+		switch (lengths) {
+		case EXPONENTIAL:
+			return 1 + (int) (-Math.log(1 - random.nextDouble())
+					* (meanLength - 1));
+		case LOGNORMAL:
+			// Sigma 1 and a mu that keeps the mean length.
+			return Math.max(1, (int) Math.round(Math.exp(Math.log(meanLength)
+					- 0.5 + random.nextGaussian())));
+		default:
+			return meanLength;
+		}
+	}
+}
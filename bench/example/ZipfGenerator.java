@@ -0,0 +1,94 @@
+package example;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Random ranks drawn from a Zipf distribution.
+ * 
+ * Rank r in 0..n-1 is drawn with probability proportional to 1 / (r + 1)^s,
+ * which is a good approximation of the type frequencies of natural language
+ * text.
+ * 
+ * @author W.P. McNeill
+ */
+public class ZipfGenerator {
+	private final double[] cumulative;
+	private final Random random;
+
+	/**
+	 * @param n
+	 *            the number of ranks
+	 * @param exponent
+	 *            the Zipf exponent, about 1 for natural language
+	 * @param random
+	 *            source of randomness
+	 */
+	public ZipfGenerator(int n, double exponent, Random random) {
+		this.random = random;
+		cumulative = new double[n];
+		double total = 0;
+		for (int r = 0; r < n; r++) {
+			total += 1 / Math.pow(r + 1, exponent);
+			cumulative[r] = total;
+		}
+		for (int r = 0; r < n; r++)
+			cumulative[r] /= total;
+	}
+
+	/**
+	 * @return a random rank
+	 */
+	public int next() {
+		return next(random);
+	}
+
+	/**
+	 * A random rank drawn with another source of randomness.
+	 * 
+	 * This lets one generator be shared by several reproducible streams.
+	 * 
+	 * @param random
+	 *            source of randomness
+	 * @return a random rank
+	 */
+	public int next(Random random) {
+		int r = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min(r < 0 ? -r - 1 : r, cumulative.length - 1);
+	}
+
+	/**
+	 * Synthetic type names for ranks.
+	 * 
+	 * @param n
+	 *            the number of types
+	 * @return a name for each rank
+	 */
+	public static String[] typeNames(int n) {
+		String[] names = new String[n];
+		for (int r = 0; r < n; r++)
+			names[r] = "t" + Integer.toString(r, 36);
+		return names;
+	}
+
+	/**
+	 * Random categories for a stream of tokens.
+	 * 
+	 * Each type has a preferred category that it takes most of the time, and
+	 * is otherwise given a category at random, so the synthetic counts have
+	 * realistic ambiguity.
+	 * 
+	 * @param type
+	 *            a type rank
+	 * @param categoryCount
+	 *            the number of categories
+	 * @param random
+	 *            source of randomness
+	 * @return a category index
+	 */
+	public static int category(int type, int categoryCount, Random random) {
+		if (random.nextInt(5) != 0)
+			return (type * 0x9E3779B9 >>> 1) % categoryCount;
+		return random.nextInt(categoryCount);
+	}
+}
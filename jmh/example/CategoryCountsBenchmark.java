@@ -0,0 +1,58 @@
+package example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link CategoryCounts} updates and queries with Zipf-distributed types.
+ * 
+ * @author W.P. McNeill
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CategoryCountsBenchmark extends ZipfState {
+	/**
+	 * Counts of the whole vocabulary, which the benchmarks add to
+	 */
+	private CategoryCounts<String, String> counts;
+	/**
+	 * Counts of a document-sized sample of the tokens
+	 */
+	private CategoryCounts<String, String> document;
+
+	@Setup
+	public void countTokens() {
+		generateTokens();
+		counts = vocabularyCounts();
+		document = new CategoryCounts<String, String>();
+		for (int i = 0; i < 1000; i++)
+			document.addToken(tokenTypes[i], tokenCategories[i]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public CategoryCounts<String, String> addToken() {
+		for (int i = 0; i < TOKENS; i++)
+			counts.addToken(tokenTypes[i], tokenCategories[i]);
+		return counts;
+	}
+
+	@Benchmark
+	public CategoryCounts<String, String> addCategoryCounts() {
+		return counts.addCategoryCounts(document);
+	}
+
+	@Benchmark
+	public String getMostCommonCategory() {
+		return counts.getMostCommonCategory();
+	}
+}
@@ -0,0 +1,119 @@
+package example;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link Model} construction, lookup and storage with a Zipf-distributed
+ * vocabulary.
+ * 
+ * Lookup times are per token. Construction and storage times are per model.
+ * 
+ * @author W.P. McNeill
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ModelBenchmark extends ZipfState {
+	private CategoryCounts<String, String> counts;
+	private Model<String, String> model;
+	/**
+	 * Types that are not in the model
+	 */
+	private String[] unknownTypes;
+	private File modelFile;
+	private byte[] serialized;
+
+	@Setup
+	public void buildModel() throws IOException {
+		generateTokens();
+		counts = vocabularyCounts();
+		model = counts.toModel();
+		unknownTypes = new String[TOKENS];
+		for (int i = 0; i < TOKENS; i++)
+			unknownTypes[i] = "?" + tokenTypes[i];
+		modelFile = File.createTempFile("benchmark", ".ntgm");
+		ModelFile.save(model, modelFile);
+		serialized = serialize(model);
+	}
+
+	@TearDown
+	public void deleteModelFile() {
+		modelFile.delete();
+	}
+
+	@Benchmark
+	public Model<String, String> construct() {
+		return new Model<String, String>(counts);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public void getCategoryHit(Blackhole blackhole) {
+		for (String type : tokenTypes)
+			blackhole.consume(model.getCategory(type));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public void getCategoryMiss(Blackhole blackhole) {
+		for (String type : unknownTypes)
+			blackhole.consume(model.getCategory(type));
+	}
+
+	@Benchmark
+	public File save() throws IOException {
+		ModelFile.save(model, modelFile);
+		return modelFile;
+	}
+
+	@Benchmark
+	public Model<String, String> load() throws IOException,
+			ClassNotFoundException {
+		return ModelFile.load(modelFile);
+	}
+
+	@Benchmark
+	public byte[] serialize() throws IOException {
+		return serialize(model);
+	}
+
+	@Benchmark
+	public Object deserialize() throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				serialized));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] serialize(Model<String, String> model)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		try {
+			out.writeObject(model);
+		} finally {
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+}
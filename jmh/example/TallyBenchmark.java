@@ -0,0 +1,60 @@
+package example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link Tally} updates and queries with Zipf-distributed keys.
+ * 
+ * @author W.P. McNeill
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TallyBenchmark extends ZipfState {
+	/**
+	 * A tally of all the tokens, which the benchmarks add to
+	 */
+	private Tally<String> tally;
+	/**
+	 * A tally of a document-sized sample of the tokens
+	 */
+	private Tally<String> document;
+
+	@Setup
+	public void countTokens() {
+		generateTokens();
+		tally = new Tally<String>();
+		for (String type : tokenTypes)
+			tally.addToCount(type, 1);
+		document = new Tally<String>();
+		for (int i = 0; i < 1000; i++)
+			document.addToCount(tokenTypes[i], 1);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public Tally<String> addToCount() {
+		for (String type : tokenTypes)
+			tally.addToCount(type, 1);
+		return tally;
+	}
+
+	@Benchmark
+	public Tally<String> addTally() {
+		return tally.addTally(document);
+	}
+
+	@Benchmark
+	public String getLargestKey() {
+		return tally.getLargestKey();
+	}
+}
@@ -0,0 +1,87 @@
+package example;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Synthetic tokens for the benchmarks.
+ * 
+ * Token types are drawn from a Zipf distribution over a vocabulary whose size
+ * is a benchmark parameter, and each token is given a category with
+ * {@link ZipfGenerator#category(int, int, Random)}. The same seed is used for
+ * every run, so results can be compared over time.
+ * 
+ * JMH only accepts parameters on a state class, so this is annotated as well
+ * as the benchmarks that extend it.
+ * 
+ * @author W.P. McNeill
+ */
+@State(Scope.Benchmark)
+public abstract class ZipfState {
+	/**
+	 * Number of tokens processed by each benchmark invocation
+	 */
+	static final int TOKENS = 1 << 16;
+	/**
+	 * About the number of tags in the Penn Treebank tag set
+	 */
+	static final int CATEGORIES = 45;
+
+	@Param( { "1000", "100000", "1000000" })
+	public int vocabularySize;
+
+	/**
+	 * Names of the types in rank order
+	 */
+	protected String[] types;
+	protected String[] categories;
+	/**
+	 * Types and categories of TOKENS tokens
+	 */
+	protected String[] tokenTypes;
+	protected String[] tokenCategories;
+
+	/**
+	 * Generate the types, categories and tokens.
+	 * 
+	 * JMH does not order the setup methods of a state class and its
+	 * superclass, so this is called by the setup method of each benchmark
+	 * rather than being one itself.
+	 */
+	protected void generateTokens() {
+		Random random = new Random(0);
+		ZipfGenerator zipf = new ZipfGenerator(vocabularySize, 1.0, random);
+		types = ZipfGenerator.typeNames(vocabularySize);
+		categories = new String[CATEGORIES];
+		for (int c = 0; c < CATEGORIES; c++)
+			categories[c] = "C" + c;
+		tokenTypes = new String[TOKENS];
+		tokenCategories = new String[TOKENS];
+		for (int i = 0; i < TOKENS; i++) {
+			int type = zipf.next();
+			tokenTypes[i] = types[type];
+			tokenCategories[i] = categories[ZipfGenerator.category(type,
+					CATEGORIES, random)];
+		}
+	}
+
+	/**
+	 * Counts of every type in the vocabulary plus the synthetic tokens.
+	 * 
+	 * Every type is counted once in its preferred category so that the
+	 * counts cover the whole vocabulary.
+	 */
+	protected CategoryCounts<String, String> vocabularyCounts() {
+		Random random = new Random(1);
+		CategoryCounts<String, String> counts = new CategoryCounts<String, String>();
+		for (int type = 0; type < types.length; type++)
+			counts.addToken(types[type], categories[ZipfGenerator.category(
+					type, CATEGORIES, random)]);
+		for (int i = 0; i < TOKENS; i++)
+			counts.addToken(tokenTypes[i], tokenCategories[i]);
+		return counts;
+	}
+}
@@ -1,7 +1,9 @@
 package example;
 
 import gate.Corpus;
+import gate.CorpusController;
 import gate.DataStore;
+import gate.Document;
 import gate.Factory;
 import gate.Gate;
 import gate.ProcessingResource;
@@ -11,12 +13,15 @@ import gate.util.persistence.PersistenceManager;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.Vector;
 
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Logger;
 
 /**
+ * Run a GATE application to tag a corpus with a part-of-speech tagging model.
+ * 
  * @author W.P. McNeill
  * 
  */
@@ -24,7 +29,70 @@ public class Analyze {
 	static Logger logger = Logger.getLogger(TaggerTrainer.class.getName());
 
 	/**
+	 * Tag the documents of a data store corpus on several threads, writing
+	 * each tagged document back to the data store.
+	 * 
+	 * Each worker runs its own copy of the tagger application. The copies
+	 * take their model from the shared {@link ModelCache}, so there is a
+	 * single model in memory. Tagging a document does not depend on any other
+	 * document, so the data store ends up the same as after a serial run.
+	 * Writes to the data store are serialized.
+	 * 
+	 * @param taggerController
+	 *            the tagger application
+	 * @param dataStore
+	 *            the data store containing the documents
+	 * @param documents
+	 *            the documents to tag
+	 * @param threads
+	 *            number of worker threads
+	 * @throws GateException
+	 */
+	static void analyzeInParallel(CorpusController taggerController,
+			final DataStore dataStore, List<CorpusDocument> documents,
+			int threads) throws GateException {
+		ParallelCorpusProcessor processor = new ParallelCorpusProcessor(
+				taggerController, Math.max(threads, 1));
+		try {
+			processor.process(documents,
+					new ParallelCorpusProcessor.DocumentHandler() {
+						public void processed(int worker,
+								CorpusDocument source, Document document)
+								throws GateException {
+							synchronized (dataStore) {
+								dataStore.sync(document);
+							}
+						}
+					});
+		} finally {
+			processor.cleanup();
+		}
+	}
+
+	/**
+	 * A summary of how fast a set of documents was tagged.
+	 * 
+	 * Sizes are those of the stored documents.
+	 */
+	static String throughputReport(List<CorpusDocument> documents,
+			int threads, long nanoseconds) {
+		long bytes = 0;
+		for (CorpusDocument document : documents)
+			bytes += Math.max(document.getSize(), 0);
+		double seconds = nanoseconds / 1e9;
+		return String.format("Tagged %d documents (%.1f MB) in %.1fs "
+				+ "on %d threads: %.1f documents/s, %.2f MB/s", documents
+				.size(), bytes / 1048576.0, seconds, threads, documents.size()
+				/ seconds, bytes / 1048576.0 / seconds);
+	}
+
+	/**
+	 * Tag a corpus in a data store.
+	 * 
+	 * The optional -threads N switch tags on N threads.
+	 * 
 	 * @param args
+	 *            command line arguments
 	 * @throws GateException
 	 * @throws IOException
 	 * @throws ClassNotFoundException
@@ -34,10 +102,21 @@ public class Analyze {
 		BasicConfigurator.configure();
 		Gate.init();
 
-		String analyzerGappPath = args[0];
-		String modelPath = args[1];
-		String dataStorePath = args[2];
-		String corpusName = args[3];
+		int threads = 1;
+		int a = 0;
+		while (a < args.length && args[a].startsWith("-")) {
+			String option = args[a++];
+			if ("-threads".equals(option))
+				threads = Integer.parseInt(args[a++]);
+			else {
+				System.err.println("Unknown option " + option);
+				System.exit(-1);
+			}
+		}
+		String analyzerGappPath = args[a];
+		String modelPath = args[a + 1];
+		String dataStorePath = args[a + 2];
+		String corpusName = args[a + 3];
 
 		// Load the tagger GATE application.
 		SerialAnalyserController taggerController = (SerialAnalyserController) PersistenceManager
@@ -54,13 +133,24 @@ public class Analyze {
 		try {
 			Corpus corpus = Datastore.loadCorpusFromDatastore(dataStore,
 					corpusName);
+			List<CorpusDocument> documents;
+			long start = System.nanoTime();
 			try {
-				// Tag the test corpus.
-				taggerController.setCorpus(corpus);
-				taggerController.execute();
+				documents = Datastore.getCorpusDocuments(dataStore, corpus);
+				if (threads <= 1) {
+					// Tag the test corpus.
+					taggerController.setCorpus(corpus);
+					taggerController.execute();
+					taggerController.setCorpus(null);
+				}
 			} finally {
 				Factory.deleteResource(corpus);
 			}
+			if (threads > 1)
+				analyzeInParallel(taggerController, dataStore, documents,
+						threads);
+			logger.info(throughputReport(documents, Math.max(threads, 1),
+					System.nanoTime() - start));
 		} finally {
 			dataStore.close();
 		}
@@ -0,0 +1,374 @@
+package example;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Type frequencies counted approximately in a fixed amount of memory.
+ * 
+ * Most types are seen only a few times and never change a prediction, so
+ * there is no need to count them exactly. This keeps a count-min sketch of
+ * (type, category) counts and of type totals, and only gives a type an exact
+ * {@link Tally} once its estimated total reaches a threshold. The tally
+ * starts from the sketch's estimates of the type's category counts. If the
+ * exact table grows beyond its capacity, the threshold is doubled and the
+ * types below it are returned to the sketch.
+ * 
+ * The sketch uses conservative update, which only increments the counters
+ * that hold the current minimum, so its estimates are never too low and are
+ * usually close. Category totals are kept exactly, so the default category
+ * is the same as the one computed from exact counts.
+ * 
+ * A model built from these counts only contains the frequent types. The rest
+ * are given the default category. {@link #evaluate(CategoryCounts)} reports
+ * the accuracy lost against exact counts.
+ * 
+ * T is the type class. C is the category class.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author W.P. McNeill
+ */
+public class ApproximateCategoryCounts<T extends Comparable<T>, C extends Comparable<C>>
+		implements CountsAccumulator<T, C> {
+	static Logger logger = Logger.getLogger(ApproximateCategoryCounts.class
+			.getName());
+
+	/**
+	 * Number of rows in the sketch
+	 */
+	private static final int DEPTH = 4;
+	/**
+	 * Estimated heap cost of a type in the exact table
+	 */
+	private static final long TYPE_BYTES = 300;
+	/**
+	 * Category id under which type totals are kept in the sketch
+	 */
+	private static final int TOTAL = -1;
+
+	private final int[][] sketch;
+	private final int mask;
+	private final int maxTypes;
+	private long threshold;
+	private final CategoryCounts<T, C> exact = new CategoryCounts<T, C>();
+	private final SymbolTable<C> categories = new SymbolTable<C>();
+	private final Tally<C> categoryTotals = new Tally<C>(categories);
+
+	/**
+	 * Create counts that use about a given amount of memory.
+	 * 
+	 * Half of the memory goes to the sketch and half to the exact counts.
+	 * 
+	 * @param memoryBudget
+	 *            the number of bytes to use
+	 */
+	public ApproximateCategoryCounts(long memoryBudget) {
+		this((int) Math.min(1 << 28, memoryBudget / 2 / DEPTH / 4), 2,
+				(int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / 2
+						/ TYPE_BYTES)));
+	}
+
+	/**
+	 * @param width
+	 *            the number of counters in each row of the sketch, which is
+	 *            rounded up to a power of two
+	 * @param threshold
+	 *            the estimated count at which a type is counted exactly
+	 * @param maxTypes
+	 *            the largest number of types to count exactly
+	 */
+	public ApproximateCategoryCounts(int width, long threshold, int maxTypes) {
+		int length = 1;
+		while (length < width)
+			length <<= 1;
+		sketch = new int[DEPTH][length];
+		mask = length - 1;
+		this.threshold = Math.max(threshold, 1);
+		this.maxTypes = maxTypes;
+	}
+
+	public void addToken(T type, C category) {
+		addCount(type, category, 1);
+	}
+
+	/**
+	 * Add to the count of a type in a category.
+	 * 
+	 * @param type
+	 *            a type, e.g. "bank"
+	 * @param category
+	 *            the type's category, e.g. "NN"
+	 * @param n
+	 *            the amount to add, which must not be negative
+	 */
+	public void addCount(T type, C category, long n) {
+		int id = categories.intern(category);
+		categoryTotals.addToCount(category, n);
+		Tally<C> tally = exact.get(type);
+		if (null != tally) {
+			tally.addToCount(category, n);
+			return;
+		}
+		int hash = type.hashCode();
+		add(hash, id, n);
+		if (add(hash, TOTAL, n) >= threshold)
+			admit(type, hash);
+	}
+
+	public ApproximateCategoryCounts<T, C> addCategoryCounts(
+			CategoryCounts<T, C> categoryCounts) {
+		for (Entry<T, Tally<C>> entry : categoryCounts.entrySet()) {
+			Tally<C> tally = entry.getValue();
+			for (int i = 0; i < tally.size(); i++)
+				addCount(entry.getKey(), tally.keyAt(i), tally.countAt(i));
+		}
+		return this;
+	}
+
+	public C getMostCommonCategory() {
+		return categoryTotals.getLargestKey();
+	}
+
+	/**
+	 * @return the number of types counted exactly
+	 */
+	public int size() {
+		return exact.size();
+	}
+
+	/**
+	 * @return the estimated count at which a type is counted exactly
+	 */
+	public long getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * The count of a type in a category.
+	 * 
+	 * @param type
+	 *            a type, e.g. "bank"
+	 * @param category
+	 *            a category, e.g. "NN"
+	 * @return the exact count if the type is counted exactly, otherwise an
+	 *         estimate that is never too low
+	 */
+	public long getCount(T type, C category) {
+		Tally<C> tally = exact.get(type);
+		if (null != tally)
+			return tally.getCount(category);
+		int id = categories.getId(category);
+		return id < 0 ? 0 : estimate(type.hashCode(), id);
+	}
+
+	/**
+	 * Create a model of the types that are counted exactly.
+	 * 
+	 * @see Model#Model(CategoryCounts)
+	 */
+	public Model<T, C> toModel() {
+		Map<T, C> category = new HashMap<T, C>(exact.size() * 4 / 3 + 1);
+		for (Entry<T, Tally<C>> entry : exact.entrySet())
+			category.put(entry.getKey(), entry.getValue().getLargestKey());
+		return new Model<T, C>(category, getMostCommonCategory());
+	}
+
+	/**
+	 * Compare these counts with exact counts of the same data.
+	 * 
+	 * @param exactCounts
+	 *            exact counts of the same tokens
+	 * @return a report of the accuracy lost
+	 */
+	public Report evaluate(CategoryCounts<T, C> exactCounts) {
+		Report report = new Report();
+		Model<T, C> model = toModel();
+		C defaultCategory = exactCounts.getMostCommonCategory();
+		report.approximateTypes = model.size();
+		report.approximateBytes = 4L * DEPTH * sketch[0].length + TYPE_BYTES
+				* exact.size();
+		for (Entry<T, Tally<C>> entry : exactCounts.entrySet()) {
+			T type = entry.getKey();
+			Tally<C> tally = entry.getValue();
+			long tokens = tally.getTotalCount();
+			C expected = tally.getLargestKey();
+			report.types++;
+			report.tokens += tokens;
+			if (expected.equals(model.getCategory(type))) {
+				report.agreeingTypes++;
+				report.agreeingTokens += tokens;
+			}
+			if (!expected.equals(defaultCategory))
+				report.nonDefaultTypes++;
+			Tally<C> approximate = exact.get(type);
+			if (null != approximate)
+				for (int i = 0; i < tally.size(); i++) {
+					report.countedTokens += tally.countAt(i);
+					report.countError += Math.abs(approximate.getCount(tally
+							.keyAt(i))
+							- tally.countAt(i));
+				}
+		}
+		report.exactBytes = TYPE_BYTES * report.types;
+		return report;
+	}
+
+	/**
+	 * Accuracy of approximate counts compared with exact ones.
+	 */
+	public static class Report {
+		/**
+		 * Number of types in the exact counts
+		 */
+		public long types;
+		/**
+		 * Number of types whose most common category is not the default
+		 */
+		public long nonDefaultTypes;
+		/**
+		 * Number of types in the approximate model
+		 */
+		public long approximateTypes;
+		/**
+		 * Number of tokens in the exact counts
+		 */
+		public long tokens;
+		/**
+		 * Number of types given the same category by both models
+		 */
+		public long agreeingTypes;
+		/**
+		 * Number of tokens whose types are given the same category by both
+		 * models
+		 */
+		public long agreeingTokens;
+		/**
+		 * Number of tokens of the types counted exactly
+		 */
+		public long countedTokens;
+		/**
+		 * Sum of the absolute errors in the counts of the types counted
+		 * exactly
+		 */
+		public long countError;
+		/**
+		 * Estimated memory used by exact counts
+		 */
+		public long exactBytes;
+		/**
+		 * Estimated memory used by the approximate counts
+		 */
+		public long approximateBytes;
+
+		/**
+		 * @return the fraction of training tokens tagged the same way by both
+		 *         models
+		 */
+		public double getTokenAgreement() {
+			return 0 == tokens ? 1 : (double) agreeingTokens / tokens;
+		}
+
+		/**
+		 * @return the fraction of types tagged the same way by both models
+		 */
+		public double getTypeAgreement() {
+			return 0 == types ? 1 : (double) agreeingTypes / types;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Types: %d exact, %d approximate, "
+					+ "%d not default\n" + "Type agreement: %.4f\n"
+					+ "Token agreement: %.4f\n"
+					+ "Relative count error of kept types: %.4f\n"
+					+ "Estimated memory: %d exact, %d approximate", types,
+					approximateTypes, nonDefaultTypes, getTypeAgreement(),
+					getTokenAgreement(), 0 == countedTokens ? 0.0
+							: (double) countError / countedTokens, exactBytes,
+					approximateBytes);
+		}
+	}
+
+	/**
+	 * Start counting a type exactly.
+	 */
+	private void admit(T type, int hash) {
+		for (int id = 0; id < categories.size(); id++) {
+			long n = estimate(hash, id);
+			if (n > 0)
+				exact.addCount(type, categories.get(id), n);
+		}
+		if (exact.size() > maxTypes)
+			prune();
+	}
+
+	/**
+	 * Raise the threshold and return the types below it to the sketch.
+	 */
+	private void prune() {
+		threshold *= 2;
+		int before = exact.size();
+		for (Iterator<Entry<T, Tally<C>>> i = exact.entrySet().iterator(); i
+				.hasNext();) {
+			Entry<T, Tally<C>> entry = i.next();
+			Tally<C> tally = entry.getValue();
+			if (tally.getTotalCount() < threshold) {
+				int hash = entry.getKey().hashCode();
+				for (int k = 0; k < tally.size(); k++) {
+					int id = categories.getId(tally.keyAt(k));
+					long n = tally.countAt(k) - estimate(hash, id);
+					if (n > 0)
+						add(hash, id, n);
+				}
+				long n = tally.getTotalCount() - estimate(hash, TOTAL);
+				if (n > 0)
+					add(hash, TOTAL, n);
+				i.remove();
+			}
+		}
+		logger.info("Raised exact count threshold to " + threshold
+				+ ", keeping " + exact.size() + " of " + before + " types");
+	}
+
+	/**
+	 * Add to the count of a (type, category) cell with conservative update.
+	 * 
+	 * @return the new estimate of the cell's count
+	 */
+	private long add(int hash, int category, long n) {
+		long estimate = estimate(hash, category) + n;
+		int value = (int) Math.min(Integer.MAX_VALUE, estimate);
+		long h = mix(hash, category);
+		for (int row = 0; row < DEPTH; row++) {
+			int slot = slot(h, row);
+			if (sketch[row][slot] < value)
+				sketch[row][slot] = value;
+		}
+		return estimate;
+	}
+
+	private long estimate(int hash, int category) {
+		long h = mix(hash, category);
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++)
+			min = Math.min(min, sketch[row][slot(h, row)]);
+		return min;
+	}
+
+	private int slot(long h, int row) {
+		return (int) ((h >>> 32) + row * h) & mask;
+	}
+
+	private static long mix(int hash, int category) {
+		long h = ((long) hash << 32 | (category & 0xFFFFFFFFL))
+				* 0x9E3779B97F4A7C15L;
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		return h ^ (h >>> 32) | 1;
+	}
+}
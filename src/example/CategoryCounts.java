@@ -1,5 +1,6 @@
 package example;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -8,6 +9,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Type frequencies for a set of tokens.
@@ -22,12 +28,19 @@ import java.util.Map.Entry;
  * 
  * T is the type class. C is the category class.
  * 
+ * All the category tallies share a single symbol table of categories.
+ * 
  * @author W.P. McNeill
  * 
  */
 @SuppressWarnings("serial")
 public class CategoryCounts<T extends Comparable<T>, C extends Comparable<C>>
-		extends HashMap<T, Tally<C>> {
+		extends HashMap<T, Tally<C>> implements CountsAccumulator<T, C> {
+	/**
+	 * Categories shared by all the tallies created by this object.
+	 */
+	private transient SymbolTable<C> categories;
+
 	/**
 	 * The natural order of category count entries.
 	 * 
@@ -44,11 +57,18 @@ public class CategoryCounts<T extends Comparable<T>, C extends Comparable<C>>
 		}
 	}
 
+	/**
+	 * @return the order in which entries are printed
+	 */
+	Comparator<Map.Entry<T, Tally<C>>> entryOrder() {
+		return new CategoryCountsComparator();
+	}
+
 	@Override
 	public String toString() {
 		List<Map.Entry<T, Tally<C>>> entries = new LinkedList<Map.Entry<T, Tally<C>>>(
 				entrySet());
-		Collections.sort(entries, new CategoryCountsComparator());
+		Collections.sort(entries, entryOrder());
 		StringBuilder s = new StringBuilder();
 		Iterator<Map.Entry<T, Tally<C>>> i = entries.iterator();
 		while (i.hasNext()) {
@@ -69,9 +89,26 @@ public class CategoryCounts<T extends Comparable<T>, C extends Comparable<C>>
 	 *            the type's category, e.g. "NN"
 	 */
 	public void addToken(T type, C category) {
-		if (!containsKey(type))
-			put(type, new Tally<C>());
-		get(type).addToCount(category, 1);
+		addCount(type, category, 1);
+	}
+
+	/**
+	 * Add to the count of a type in a category.
+	 * 
+	 * @param type
+	 *            a type, e.g. "bank"
+	 * @param category
+	 *            the type's category, e.g. "NN"
+	 * @param n
+	 *            the amount to add
+	 */
+	public void addCount(T type, C category, long n) {
+		Tally<C> tally = get(type);
+		if (null == tally) {
+			tally = newTally();
+			put(type, tally);
+		}
+		tally.addToCount(category, n);
 	}
 
 	/**
@@ -85,10 +122,12 @@ public class CategoryCounts<T extends Comparable<T>, C extends Comparable<C>>
 			CategoryCounts<T, C> categoryCounts) {
 		for (Entry<T, Tally<C>> entry : categoryCounts.entrySet()) {
 			T type = entry.getKey();
-			Tally<C> tally = entry.getValue();
-			if (!containsKey(type))
-				put(type, new Tally<C>());
-			get(type).addTally(tally);
+			Tally<C> tally = get(type);
+			if (null == tally) {
+				tally = newTally();
+				put(type, tally);
+			}
+			tally.addTally(entry.getValue());
 		}
 		return this;
 	}
@@ -96,12 +135,97 @@ public class CategoryCounts<T extends Comparable<T>, C extends Comparable<C>>
 	/**
 	 * The category that has the largest count across all the types.
 	 * 
+	 * Ties are broken in the same way as in {@link Tally#getLargestKey()}.
+	 * 
 	 * @return the most common category, e.g. "NN"
 	 */
 	public C getMostCommonCategory() {
-		Tally<C> categoryTotal = new Tally<C>();
-		for (Entry<T, Tally<C>> entry : entrySet())
-			categoryTotal.addTally(entry.getValue());
-		return categoryTotal.getLargestKey();
+		if (null == categories)
+			categories = new SymbolTable<C>();
+		long[] totals = new long[categories.size()];
+		for (Tally<C> tally : values())
+			totals = tally.addCountsTo(totals, categories);
+		int best = -1;
+		for (int id = 0; id < totals.length; id++)
+			if (best < 0
+					|| totals[id] > totals[best]
+					|| (totals[id] == totals[best] && categories.get(id)
+							.compareTo(categories.get(best)) < 0))
+				best = id;
+		return best < 0 ? null : categories.get(best);
+	}
+
+	/**
+	 * Add together a list of type counts objects.
+	 * 
+	 * The objects are merged pairwise in a tree on several threads, the
+	 * smaller of each pair being added into the larger. The merged objects are
+	 * modified.
+	 * 
+	 * @param categoryCounts
+	 *            the type counts to merge
+	 * @param threads
+	 *            the number of threads to use
+	 * @return the sum of the type counts
+	 * @throws InterruptedException
+	 */
+	public static <T extends Comparable<T>, C extends Comparable<C>> CategoryCounts<T, C> merge(
+			List<CategoryCounts<T, C>> categoryCounts, int threads)
+			throws InterruptedException {
+		if (categoryCounts.isEmpty())
+			return new CategoryCounts<T, C>();
+		List<CategoryCounts<T, C>> level = new ArrayList<CategoryCounts<T, C>>(
+				categoryCounts);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+				threads));
+		try {
+			while (level.size() > 1) {
+				List<Future<CategoryCounts<T, C>>> merged = new ArrayList<Future<CategoryCounts<T, C>>>();
+				for (int i = 0; i + 1 < level.size(); i += 2) {
+					final CategoryCounts<T, C> a = level.get(i);
+					final CategoryCounts<T, C> b = level.get(i + 1);
+					merged.add(executor
+							.submit(new Callable<CategoryCounts<T, C>>() {
+								public CategoryCounts<T, C> call() {
+									return a.size() >= b.size() ? a
+											.addCategoryCounts(b) : b
+											.addCategoryCounts(a);
+								}
+							}));
+				}
+				List<CategoryCounts<T, C>> next = new ArrayList<CategoryCounts<T, C>>();
+				for (Future<CategoryCounts<T, C>> future : merged)
+					try {
+						next.add(future.get());
+					} catch (ExecutionException e) {
+						throw new RuntimeException(e.getCause());
+					}
+				if (level.size() % 2 == 1)
+					next.add(level.get(level.size() - 1));
+				level = next;
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return level.get(0);
+	}
+
+	/**
+	 * @see Model#Model(CategoryCounts)
+	 */
+	public Model<T, C> toModel() {
+		return new Model<T, C>(this);
+	}
+
+	/**
+	 * Create an empty category tally that uses the shared symbol table.
+	 * 
+	 * @return a new tally
+	 */
+	private Tally<C> newTally() {
+		// The symbol table is not serialized, so may need to be recreated.
+		if (null == categories)
+			categories = new SymbolTable<C>();
+		return new Tally<C>(categories);
 	}
 }
@@ -0,0 +1,30 @@
+package example;
+
+/**
+ * A mapping of types to categories.
+ * 
+ * This is the part of a tagging model needed to tag tokens. Implementations
+ * must be safe to query from multiple threads.
+ * 
+ * T is the type class. C is the category class.
+ * 
+ * @author W.P. McNeill
+ */
+public interface CategoryModel<T, C> {
+	/**
+	 * The model's type assignment to the token.
+	 * 
+	 * This returns the default category if the model has no entry for this
+	 * token.
+	 * 
+	 * @param type
+	 *            a type to tag, e.g. "bank"
+	 * @return the category of the type, e.g. "NN"
+	 */
+	C getCategory(T type);
+
+	/**
+	 * @return the category predicted for unknown types
+	 */
+	C getDefaultCategory();
+}
@@ -0,0 +1,214 @@
+package example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The state of a training run: the category counts accumulated so far and the
+ * ids of the documents they came from.
+ * 
+ * Checkpoints are written in a binary format. All numbers are big-endian.
+ * 
+ * <pre>
+ * int    magic number "NTGC"
+ * int    format version
+ * int    number of categories
+ *        the categories, as strings
+ * int    number of types
+ *        for each type: the type as a string, an int number of categories
+ *        followed by that many int category ids and long counts
+ * int    number of document ids
+ *        the document ids, as strings
+ * long   CRC-32 of everything before it
+ * </pre>
+ * 
+ * Strings are an int byte length followed by UTF-8 bytes. A checkpoint is
+ * written to a temporary file that is then renamed over the previous one, so
+ * a crash while writing leaves the previous checkpoint in place. Where a
+ * rename cannot replace a file, the previous checkpoint is deleted first, and
+ * a crash in between leaves the complete temporary file, which
+ * {@link #latest(File)} falls back to.
+ * 
+ * @author W.P. McNeill
+ */
+public class Checkpoint {
+	static final int MAGIC = 0x4E544743;
+	static final int VERSION = 1;
+
+	private final CategoryCounts<String, String> categoryCounts;
+	private final Set<String> documentIds;
+
+	/**
+	 * @param categoryCounts
+	 *            counts accumulated so far
+	 * @param documentIds
+	 *            ids of the documents that have been counted
+	 */
+	public Checkpoint(CategoryCounts<String, String> categoryCounts,
+			Set<String> documentIds) {
+		this.categoryCounts = categoryCounts;
+		this.documentIds = documentIds;
+	}
+
+	/**
+	 * @return counts accumulated so far
+	 */
+	public CategoryCounts<String, String> getCategoryCounts() {
+		return categoryCounts;
+	}
+
+	/**
+	 * @return ids of the documents that have been counted
+	 */
+	public Set<String> getDocumentIds() {
+		return documentIds;
+	}
+
+	/**
+	 * Write a checkpoint.
+	 * 
+	 * @param file
+	 *            the checkpoint file
+	 * @param categoryCounts
+	 *            counts accumulated so far
+	 * @param documentIds
+	 *            ids of the documents that have been counted
+	 * @throws IOException
+	 */
+	public static void write(File file,
+			CategoryCounts<String, String> categoryCounts,
+			Collection<String> documentIds) throws IOException {
+		File temporary = temporaryFile(file);
+		CRC32 checksum = new CRC32();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new CheckedOutputStream(new FileOutputStream(temporary),
+						checksum), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			SymbolTable<String> categories = new SymbolTable<String>();
+			for (Tally<String> tally : categoryCounts.values())
+				for (int i = 0; i < tally.size(); i++)
+					categories.intern(tally.keyAt(i));
+			out.writeInt(categories.size());
+			for (int id = 0; id < categories.size(); id++)
+				writeString(out, categories.get(id));
+			out.writeInt(categoryCounts.size());
+			for (Entry<String, Tally<String>> entry : categoryCounts.entrySet()) {
+				Tally<String> tally = entry.getValue();
+				writeString(out, entry.getKey());
+				out.writeInt(tally.size());
+				for (int i = 0; i < tally.size(); i++) {
+					out.writeInt(categories.getId(tally.keyAt(i)));
+					out.writeLong(tally.countAt(i));
+				}
+			}
+			out.writeInt(documentIds.size());
+			for (String id : documentIds)
+				writeString(out, id);
+			out.flush();
+			out.writeLong(checksum.getValue());
+		} finally {
+			out.close();
+		}
+		if (temporary.renameTo(file))
+			return;
+		if (file.exists() && !file.delete())
+			throw new IOException("Cannot replace " + file + ".");
+		if (!temporary.renameTo(file))
+			throw new IOException("Cannot rename " + temporary + " to " + file
+					+ ".");
+	}
+
+	/**
+	 * The file holding the latest checkpoint.
+	 * 
+	 * This is the checkpoint file, or its temporary file if a crash left only
+	 * that.
+	 * 
+	 * @param file
+	 *            the checkpoint file
+	 * @return the file to read, or null if there is no checkpoint
+	 */
+	public static File latest(File file) {
+		if (file.exists())
+			return file;
+		File temporary = temporaryFile(file);
+		return temporary.exists() ? temporary : null;
+	}
+
+	static File temporaryFile(File file) {
+		return new File(file.getPath() + ".tmp");
+	}
+
+	/**
+	 * Read a checkpoint.
+	 * 
+	 * @param file
+	 *            the checkpoint file
+	 * @return the checkpoint
+	 * @throws IOException
+	 */
+	public static Checkpoint read(File file) throws IOException {
+		CRC32 checksum = new CRC32();
+		DataInputStream in = new DataInputStream(new CheckedInputStream(
+				new BufferedInputStream(new FileInputStream(file), 1 << 16),
+				checksum));
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is not a checkpoint file.");
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported checkpoint version "
+						+ version + ".");
+			String[] categories = new String[in.readInt()];
+			for (int id = 0; id < categories.length; id++)
+				categories[id] = readString(in);
+			CategoryCounts<String, String> categoryCounts = new CategoryCounts<String, String>();
+			for (int types = in.readInt(); types > 0; types--) {
+				String type = readString(in);
+				for (int n = in.readInt(); n > 0; n--) {
+					int id = in.readInt();
+					if (id < 0 || id >= categories.length)
+						throw new IOException("Invalid category id " + id + ".");
+					categoryCounts.addCount(type, categories[id], in.readLong());
+				}
+			}
+			Set<String> documentIds = new HashSet<String>();
+			for (int ids = in.readInt(); ids > 0; ids--)
+				documentIds.add(readString(in));
+			long expected = checksum.getValue();
+			if (in.readLong() != expected)
+				throw new IOException("Checkpoint checksum mismatch.");
+			return new Checkpoint(categoryCounts, documentIds);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		byte[] bytes = s.getBytes(ModelWriter.UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, ModelWriter.UTF8);
+	}
+}
@@ -0,0 +1,249 @@
+package example;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Accumulates training counts and periodically saves them in a
+ * {@link Checkpoint} so that an interrupted run can be resumed.
+ * 
+ * Each worker adds document counts to its own segment. When a segment holds
+ * its share of the checkpoint interval, or the time interval has passed, the
+ * worker hands it to a background thread and starts a new one. The
+ * background thread adds segments to the running total and writes a
+ * checkpoint whenever an interval's worth of documents or time has been
+ * absorbed, so the workers never wait for the disk.
+ * 
+ * A checkpoint contains exactly the documents whose counts it includes.
+ * Documents that were being processed at the time of a crash are counted
+ * again on resumption.
+ * 
+ * @author W.P. McNeill
+ */
+public class Checkpointer {
+	static Logger logger = Logger.getLogger(Checkpointer.class.getName());
+
+	/**
+	 * Counts and ids of the documents processed by a worker since its last
+	 * handoff.
+	 */
+	private static final class Segment {
+		final CategoryCounts<String, String> categoryCounts = new CategoryCounts<String, String>();
+		final List<String> documentIds = new ArrayList<String>();
+		final long started = System.currentTimeMillis();
+	}
+
+	/**
+	 * Handed to the background thread to make it write a final checkpoint and
+	 * stop.
+	 */
+	private static final Segment END = new Segment();
+
+	private final File file;
+	private final int documentInterval;
+	private final long timeInterval;
+	private final Segment[] segments;
+	private final BlockingQueue<Segment> handoffs = new LinkedBlockingQueue<Segment>();
+	/**
+	 * The running total, which belongs to the background thread once it has
+	 * started.
+	 */
+	private CategoryCounts<String, String> categoryCounts = new CategoryCounts<String, String>();
+	private final Set<String> documentIds = new HashSet<String>();
+	private Thread writer;
+	private volatile IOException failure;
+
+	/**
+	 * @param file
+	 *            the checkpoint file
+	 * @param workers
+	 *            the number of workers that will add counts
+	 * @param documentInterval
+	 *            the number of documents between checkpoints, or 0 to not
+	 *            checkpoint by document count
+	 * @param timeInterval
+	 *            the number of milliseconds between checkpoints, or 0 to not
+	 *            checkpoint by time
+	 */
+	public Checkpointer(File file, int workers, int documentInterval,
+			long timeInterval) {
+		if (documentInterval <= 0 && timeInterval <= 0)
+			throw new IllegalArgumentException(
+					"A checkpoint interval is required.");
+		this.file = file;
+		this.documentInterval = documentInterval > 0 ? documentInterval
+				: Integer.MAX_VALUE;
+		this.timeInterval = timeInterval > 0 ? timeInterval : Long.MAX_VALUE;
+		segments = new Segment[workers];
+	}
+
+	/**
+	 * Start from the checkpoint file if it exists.
+	 * 
+	 * This must be called before {@link #start()}.
+	 * 
+	 * @return true if a checkpoint was read
+	 * @throws IOException
+	 */
+	public boolean resume() throws IOException {
+		File latest = Checkpoint.latest(file);
+		if (null == latest)
+			return false;
+		Checkpoint checkpoint;
+		try {
+			checkpoint = Checkpoint.read(latest);
+		} catch (IOException e) {
+			if (latest == file)
+				throw e;
+			// A temporary file alone is the first checkpoint, unfinished.
+			logger.warn("Ignoring incomplete checkpoint " + latest + ": "
+					+ e);
+			return false;
+		}
+		categoryCounts = checkpoint.getCategoryCounts();
+		documentIds.addAll(checkpoint.getDocumentIds());
+		logger.info("Resuming from " + latest + " with " + documentIds.size()
+				+ " documents");
+		return true;
+	}
+
+	/**
+	 * The documents that are not in the checkpoint.
+	 * 
+	 * @param documents
+	 *            a list of documents
+	 * @return the documents that still need to be counted
+	 */
+	public List<CorpusDocument> remaining(List<CorpusDocument> documents) {
+		List<CorpusDocument> remaining = new ArrayList<CorpusDocument>();
+		for (CorpusDocument document : documents)
+			if (!documentIds.contains(document.getId()))
+				remaining.add(document);
+		return remaining;
+	}
+
+	/**
+	 * Start the background thread.
+	 */
+	public void start() {
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = new Segment();
+		writer = new Thread("Checkpoint writer") {
+			@Override
+			public void run() {
+				absorb();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Add the counts of a document.
+	 * 
+	 * Calls for the same worker must be made from a single thread.
+	 * 
+	 * @param worker
+	 *            index of the worker
+	 * @param documentId
+	 *            the document's id
+	 * @param documentCounts
+	 *            the document's counts
+	 */
+	public void add(int worker, String documentId,
+			CategoryCounts<String, String> documentCounts) {
+		Segment segment = segments[worker];
+		segment.categoryCounts.addCategoryCounts(documentCounts);
+		segment.documentIds.add(documentId);
+		if (segment.documentIds.size() * segments.length >= documentInterval
+				|| System.currentTimeMillis() - segment.started >= timeInterval) {
+			handoffs.add(segment);
+			segments[worker] = new Segment();
+		}
+	}
+
+	/**
+	 * Hand off the last segments, write a final checkpoint and stop the
+	 * background thread.
+	 * 
+	 * This must be called after all the workers have finished.
+	 * 
+	 * @return the counts of all the documents, including the resumed ones
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public CategoryCounts<String, String> finish() throws IOException,
+			InterruptedException {
+		for (int i = 0; i < segments.length; i++) {
+			handoffs.add(segments[i]);
+			segments[i] = null;
+		}
+		handoffs.add(END);
+		writer.join();
+		if (null != failure)
+			throw failure;
+		return categoryCounts;
+	}
+
+	/**
+	 * @return the number of documents absorbed into the running total
+	 */
+	public int getDocumentCount() {
+		synchronized (documentIds) {
+			return documentIds.size();
+		}
+	}
+
+	/**
+	 * Add handed off segments to the running total, writing checkpoints as
+	 * they come due.
+	 */
+	private void absorb() {
+		int unsaved = 0;
+		long saved = System.currentTimeMillis();
+		try {
+			while (true) {
+				Segment segment = handoffs.take();
+				if (END == segment)
+					break;
+				categoryCounts.addCategoryCounts(segment.categoryCounts);
+				synchronized (documentIds) {
+					documentIds.addAll(segment.documentIds);
+				}
+				unsaved += segment.documentIds.size();
+				if (unsaved >= documentInterval
+						|| System.currentTimeMillis() - saved >= timeInterval) {
+					save();
+					unsaved = 0;
+					saved = System.currentTimeMillis();
+				}
+			}
+			save();
+		} catch (InterruptedException e) {
+			failure = new IOException("Checkpoint writer interrupted.");
+		}
+	}
+
+	private void save() {
+		try {
+			long start = System.currentTimeMillis();
+			Checkpoint.write(file, categoryCounts, documentIds);
+			failure = null;
+			logger.info("Checkpoint of " + documentIds.size()
+					+ " documents written to " + file + " in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		} catch (IOException e) {
+			// Keep counting. The failure is reported by finish().
+			logger.error("Cannot write checkpoint " + file, e);
+			failure = e;
+		}
+	}
+}
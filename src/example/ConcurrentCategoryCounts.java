@@ -0,0 +1,182 @@
+package example;
+
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Type frequencies that many threads can add tokens to at once.
+ * 
+ * Nothing here takes a lock. The counts are split into stripes, each a
+ * concurrent map of types to atomic category counters, and a thread always
+ * adds to the stripe chosen by its id. Threads counting the same frequent type
+ * therefore usually update different counters. Categories are interned as
+ * small ids, and each type's counters are allocated in fixed chunks of ids
+ * that are installed with compare-and-set and never replaced, so no increment
+ * can be lost.
+ * 
+ * When counting is done the counts can be frozen into an ordinary
+ * {@link CategoryCounts} or {@link Model}. Reading while other threads are
+ * still adding gives counts that include some subset of the concurrent
+ * additions.
+ * 
+ * T is the type class. C is the category class.
+ * 
+ * @author W.P. McNeill
+ */
+public class ConcurrentCategoryCounts<T extends Comparable<T>, C extends Comparable<C>>
+		implements CountsAccumulator<T, C> {
+	private static final int CHUNK_SIZE = 8;
+
+	/**
+	 * Atomic counts of a type in each category, indexed by category id.
+	 */
+	private static final class Counters {
+		private final AtomicReferenceArray<AtomicLongArray> chunks;
+
+		Counters(int maxCategories) {
+			chunks = new AtomicReferenceArray<AtomicLongArray>(
+					(maxCategories + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		}
+
+		void add(int category, long n) {
+			int c = category / CHUNK_SIZE;
+			AtomicLongArray chunk = chunks.get(c);
+			if (null == chunk) {
+				chunks.compareAndSet(c, null, new AtomicLongArray(CHUNK_SIZE));
+				chunk = chunks.get(c);
+			}
+			chunk.addAndGet(category % CHUNK_SIZE, n);
+		}
+
+		long get(int category) {
+			AtomicLongArray chunk = chunks.get(category / CHUNK_SIZE);
+			return null == chunk ? 0 : chunk.get(category % CHUNK_SIZE);
+		}
+	}
+
+	private final ConcurrentMap<T, Counters>[] stripes;
+	private final int maxCategories;
+	private final ConcurrentMap<C, Integer> categoryIds = new ConcurrentHashMap<C, Integer>();
+	private final AtomicReferenceArray<C> categories;
+	private final AtomicInteger nextCategoryId = new AtomicInteger();
+
+	/**
+	 * Create counts with a stripe for each processor and room for 256
+	 * categories.
+	 */
+	public ConcurrentCategoryCounts() {
+		this(Runtime.getRuntime().availableProcessors(), 256);
+	}
+
+	/**
+	 * @param stripes
+	 *            the number of stripes, which is rounded up to a power of two
+	 * @param maxCategories
+	 *            the largest number of distinct categories
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public ConcurrentCategoryCounts(int stripes, int maxCategories) {
+		int n = 1;
+		while (n < stripes)
+			n <<= 1;
+		this.stripes = new ConcurrentMap[n];
+		for (int i = 0; i < n; i++)
+			this.stripes[i] = new ConcurrentHashMap<T, Counters>();
+		this.maxCategories = maxCategories;
+		categories = new AtomicReferenceArray<C>(maxCategories);
+	}
+
+	public void addToken(T type, C category) {
+		addCount(type, category, 1);
+	}
+
+	/**
+	 * Add to the count of a type in a category.
+	 * 
+	 * @param type
+	 *            a type, e.g. "bank"
+	 * @param category
+	 *            the type's category, e.g. "NN"
+	 * @param n
+	 *            the amount to add
+	 */
+	public void addCount(T type, C category, long n) {
+		int id = categoryId(category);
+		ConcurrentMap<T, Counters> stripe = stripes[(int) Thread
+				.currentThread().getId() & (stripes.length - 1)];
+		Counters counters = stripe.get(type);
+		if (null == counters) {
+			counters = new Counters(maxCategories);
+			Counters existing = stripe.putIfAbsent(type, counters);
+			if (null != existing)
+				counters = existing;
+		}
+		counters.add(id, n);
+	}
+
+	public ConcurrentCategoryCounts<T, C> addCategoryCounts(
+			CategoryCounts<T, C> categoryCounts) {
+		for (Entry<T, Tally<C>> entry : categoryCounts.entrySet()) {
+			Tally<C> tally = entry.getValue();
+			for (int i = 0; i < tally.size(); i++)
+				addCount(entry.getKey(), tally.keyAt(i), tally.countAt(i));
+		}
+		return this;
+	}
+
+	public C getMostCommonCategory() {
+		return toCategoryCounts().getMostCommonCategory();
+	}
+
+	/**
+	 * Copy the counts into an ordinary type counts object.
+	 * 
+	 * @return the counts
+	 */
+	public CategoryCounts<T, C> toCategoryCounts() {
+		CategoryCounts<T, C> categoryCounts = new CategoryCounts<T, C>();
+		int categoryCount = Math.min(nextCategoryId.get(), maxCategories);
+		for (ConcurrentMap<T, Counters> stripe : stripes)
+			for (Entry<T, Counters> entry : stripe.entrySet())
+				for (int id = 0; id < categoryCount; id++) {
+					long n = entry.getValue().get(id);
+					if (n != 0)
+						categoryCounts.addCount(entry.getKey(),
+								categories.get(id), n);
+				}
+		return categoryCounts;
+	}
+
+	/**
+	 * @see CategoryCounts#toModel()
+	 */
+	public Model<T, C> toModel() {
+		return toCategoryCounts().toModel();
+	}
+
+	/**
+	 * Intern a category without locking.
+	 * 
+	 * A thread that loses a race to add a new category wastes an id, which
+	 * leaves an unused slot in the category table.
+	 */
+	private int categoryId(C category) {
+		Integer id = categoryIds.get(category);
+		if (null != id)
+			return id;
+		int candidate = nextCategoryId.getAndIncrement();
+		if (candidate >= maxCategories)
+			throw new IllegalStateException("More than " + maxCategories
+					+ " categories.");
+		categories.set(candidate, category);
+		id = categoryIds.putIfAbsent(category, candidate);
+		if (null == id)
+			return candidate;
+		categories.set(candidate, null);
+		return id;
+	}
+}
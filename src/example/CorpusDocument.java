@@ -0,0 +1,119 @@
+package example;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+import gate.DataStore;
+import gate.Document;
+import gate.Factory;
+import gate.creole.ResourceInstantiationException;
+
+/**
+ * A reference to a document that can be loaded on demand.
+ * 
+ * This lets a corpus be scheduled across several workers without loading its
+ * documents up front. Each reference carries an estimate of the size of its
+ * document so that large documents can be processed first.
+ * 
+ * @author W.P. McNeill
+ */
+public abstract class CorpusDocument {
+	private final String id;
+	private final long size;
+
+	/**
+	 * @param id
+	 *            a unique identifier for the document
+	 * @param size
+	 *            estimated size of the document, or -1 if unknown
+	 */
+	protected CorpusDocument(String id, long size) {
+		this.id = id;
+		this.size = size;
+	}
+
+	/**
+	 * Load the document.
+	 * 
+	 * It is the caller's responsibility to call Factory.deleteResource() on the
+	 * value returned by this function.
+	 * 
+	 * @return the document
+	 * @throws ResourceInstantiationException
+	 */
+	public abstract Document load() throws ResourceInstantiationException;
+
+	/**
+	 * @return a unique identifier for the document, e.g. its URL
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return estimated size of the document, or -1 if unknown
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return id;
+	}
+
+	/**
+	 * A document at a URL.
+	 * 
+	 * The sizes of local files are known. Other URLs have an unknown size.
+	 * 
+	 * @param url
+	 *            the document URL
+	 * @return a reference to the document
+	 */
+	public static CorpusDocument fromURL(final String url) {
+		long size = -1;
+		try {
+			URL u = new URL(url);
+			if ("file".equals(u.getProtocol()))
+				size = new File(u.toURI()).length();
+		} catch (MalformedURLException e) {
+			// Reported when the document is loaded.
+		} catch (URISyntaxException e) {
+			// Size is unknown.
+		}
+		return new CorpusDocument(url, size) {
+			@Override
+			public Document load() throws ResourceInstantiationException {
+				try {
+					return Factory.newDocument(new URL(url));
+				} catch (MalformedURLException e) {
+					throw new ResourceInstantiationException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * A document in a data store.
+	 * 
+	 * @param dataStore
+	 *            the data store
+	 * @param lrid
+	 *            the document's persistence id
+	 * @param size
+	 *            estimated size of the document, or -1 if unknown
+	 * @return a reference to the document
+	 */
+	public static CorpusDocument fromDatastore(final DataStore dataStore,
+			final Object lrid, long size) {
+		return new CorpusDocument(lrid.toString(), size) {
+			@Override
+			public Document load() throws ResourceInstantiationException {
+				return Datastore.loadDocumentFromDatastore(dataStore, lrid);
+			}
+		};
+	}
+}
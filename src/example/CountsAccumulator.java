@@ -0,0 +1,45 @@
+package example;
+
+/**
+ * Something that accumulates category counts for types and builds a model
+ * from them.
+ * 
+ * T is the type class. C is the category class.
+ * 
+ * @author W.P. McNeill
+ */
+public interface CountsAccumulator<T extends Comparable<T>, C extends Comparable<C>> {
+	/**
+	 * Increment the type count for a token.
+	 * 
+	 * @param type
+	 *            a type to add, e.g. "bank"
+	 * @param category
+	 *            the type's category, e.g. "NN"
+	 */
+	void addToken(T type, C category);
+
+	/**
+	 * Add the counts from a type counts object into this one.
+	 * 
+	 * @param categoryCounts
+	 *            type counts, for example those of a single document
+	 * @return this object
+	 */
+	CountsAccumulator<T, C> addCategoryCounts(
+			CategoryCounts<T, C> categoryCounts);
+
+	/**
+	 * The category that has the largest count across all the types.
+	 * 
+	 * @return the most common category, e.g. "NN"
+	 */
+	C getMostCommonCategory();
+
+	/**
+	 * Create a model that predicts the most common category of each type.
+	 * 
+	 * @return a model
+	 */
+	Model<T, C> toModel();
+}
@@ -0,0 +1,300 @@
+package example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Streaming writer for reports of category counts, tallies and models.
+ * 
+ * Entries are encoded one at a time into a buffer that is written to a
+ * channel whenever it fills, so a report is never built as a single string.
+ * Entries below a minimum count are skipped. If a top-n limit is set, only the
+ * first n entries in the report order are written, and they are selected with
+ * a {@link TopN} heap rather than by sorting everything. Otherwise entries are
+ * written in the order they are stored, without sorting or copying.
+ * 
+ * The report orders are those of the objects' toString() methods: category
+ * counts by descending total count, tallies by descending count and models by
+ * type.
+ * 
+ * In the TSV format a category counts entry is the line
+ * 
+ * type total category count category count ...
+ * 
+ * with tab-separated fields and the categories in tally order. A tally entry
+ * is the line "key count", and a model report is a "#default category" line
+ * followed by "type category" lines.
+ * 
+ * The binary format has the same fields in the same order. Strings are UTF-8
+ * bytes preceded by their length, and the length, counts and number of
+ * categories are unsigned base-128 varints, as in the {@link ModelFile}
+ * format. A binary model report starts with just the default category. A
+ * null category is written as the empty string.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author W.P. McNeill
+ */
+public class CountsReportWriter implements Closeable {
+	/**
+	 * Report formats
+	 */
+	public enum Format {
+		/**
+		 * Tab-separated text lines
+		 */
+		TSV,
+		/**
+		 * Length-prefixed strings and varints
+		 */
+		BINARY
+	}
+
+	private final WritableByteChannel out;
+	private final Format format;
+	private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+	private int topN = 0;
+	private long minCount = 0;
+	private long entryCount = 0;
+	/**
+	 * Is the next field the first of a line?
+	 */
+	private boolean atLineStart = true;
+
+	/**
+	 * @param out
+	 *            channel to write the report to
+	 * @param format
+	 *            the report format
+	 */
+	public CountsReportWriter(WritableByteChannel out, Format format) {
+		this.out = out;
+		this.format = format;
+	}
+
+	/**
+	 * @param topN
+	 *            the largest number of entries to write for each object, or 0
+	 *            to write all of them unsorted
+	 */
+	public void setTopN(int topN) {
+		if (topN < 0)
+			throw new IllegalArgumentException("Invalid top-n " + topN);
+		this.topN = topN;
+	}
+
+	/**
+	 * @param minCount
+	 *            the smallest count of an entry to write; this does not apply
+	 *            to models
+	 */
+	public void setMinCount(long minCount) {
+		this.minCount = minCount;
+	}
+
+	/**
+	 * @return the number of entries written so far
+	 */
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Write category counts, one entry per type.
+	 * 
+	 * @param categoryCounts
+	 *            category counts
+	 * @throws IOException
+	 */
+	public <T extends Comparable<T>, C extends Comparable<C>> void write(
+			CategoryCounts<T, C> categoryCounts) throws IOException {
+		if (topN > 0) {
+			TopN<Entry<T, Tally<C>>> top = new TopN<Entry<T, Tally<C>>>(topN,
+					categoryCounts.entryOrder());
+			for (Entry<T, Tally<C>> entry : categoryCounts.entrySet())
+				if (entry.getValue().getTotalCount() >= minCount)
+					top.add(entry);
+			for (Entry<T, Tally<C>> entry : top.toList())
+				writeCounts(entry.getKey(), entry.getValue());
+		} else
+			for (Entry<T, Tally<C>> entry : categoryCounts.entrySet())
+				if (entry.getValue().getTotalCount() >= minCount)
+					writeCounts(entry.getKey(), entry.getValue());
+	}
+
+	/**
+	 * Write a tally, one entry per object.
+	 * 
+	 * @param tally
+	 *            a tally
+	 * @throws IOException
+	 */
+	public <K extends Comparable<K>> void write(Tally<K> tally)
+			throws IOException {
+		if (topN > 0) {
+			// Tally order is by descending count, so the entries above the
+			// minimum are a prefix of the first n.
+			for (K key : tally.topK(topN)) {
+				long count = tally.getCount(key);
+				if (count < minCount)
+					break;
+				writeTallyEntry(key, count);
+			}
+		} else
+			for (int i = 0; i < tally.size(); i++)
+				if (tally.countAt(i) >= minCount)
+					writeTallyEntry(tally.keyAt(i), tally.countAt(i));
+	}
+
+	/**
+	 * Write a model, one entry per type.
+	 * 
+	 * @param model
+	 *            a model
+	 * @throws IOException
+	 */
+	public <T extends Comparable<T>, C extends Comparable<C>> void write(
+			Model<T, C> model) throws IOException {
+		if (format == Format.TSV)
+			putString("#default");
+		putField(model.getDefaultCategory());
+		endLine();
+		if (topN > 0) {
+			TopN<Entry<T, C>> top = new TopN<Entry<T, C>>(topN,
+					new Comparator<Entry<T, C>>() {
+						public int compare(Entry<T, C> e1, Entry<T, C> e2) {
+							return e1.getKey().compareTo(e2.getKey());
+						}
+					});
+			for (Entry<T, C> entry : model.entrySet())
+				top.add(entry);
+			for (Entry<T, C> entry : top.toList())
+				writeModelEntry(entry);
+		} else
+			for (Entry<T, C> entry : model.entrySet())
+				writeModelEntry(entry);
+	}
+
+	/**
+	 * Write buffered entries to the channel.
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			out.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Flush and close the channel.
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private <T, C extends Comparable<C>> void writeCounts(T type,
+			Tally<C> tally) throws IOException {
+		putString(type.toString());
+		putCount(tally.getTotalCount());
+		if (format == Format.BINARY)
+			putCount(tally.size());
+		for (C category : tally.topK(tally.size())) {
+			putField(category);
+			putCount(tally.getCount(category));
+		}
+		endEntry();
+	}
+
+	private void writeTallyEntry(Object key, long count) throws IOException {
+		putString(key.toString());
+		putCount(count);
+		endEntry();
+	}
+
+	private void writeModelEntry(Map.Entry<?, ?> entry) throws IOException {
+		putString(entry.getKey().toString());
+		putField(entry.getValue());
+		endEntry();
+	}
+
+	/**
+	 * Write a field that may be null.
+	 */
+	private void putField(Object value) throws IOException {
+		putString(null == value ? "" : value.toString());
+	}
+
+	/**
+	 * Write a string, preceded by a tab in TSV if it is not the first field of
+	 * an entry, or by its length in binary.
+	 */
+	private void putString(String s) throws IOException {
+		byte[] bytes = s.getBytes(ModelWriter.UTF8);
+		if (format == Format.TSV)
+			putSeparator();
+		else
+			putVarint(bytes.length);
+		if (buffer.remaining() < bytes.length)
+			flush();
+		if (buffer.remaining() < bytes.length) {
+			// Too large for the buffer, so write it directly.
+			ByteBuffer b = ByteBuffer.wrap(bytes);
+			while (b.hasRemaining())
+				out.write(b);
+		} else
+			buffer.put(bytes);
+	}
+
+	private void putCount(long n) throws IOException {
+		if (format == Format.TSV)
+			putString(Long.toString(n));
+		else
+			putVarint(n);
+	}
+
+	private void putSeparator() throws IOException {
+		if (!atLineStart) {
+			if (buffer.remaining() < 1)
+				flush();
+			buffer.put((byte) '\t');
+		}
+		atLineStart = false;
+	}
+
+	private void endEntry() throws IOException {
+		endLine();
+		entryCount++;
+	}
+
+	private void endLine() throws IOException {
+		if (format == Format.TSV) {
+			if (buffer.remaining() < 1)
+				flush();
+			buffer.put((byte) '\n');
+		}
+		atLineStart = true;
+	}
+
+	private void putVarint(long n) throws IOException {
+		if (buffer.remaining() < 10)
+			flush();
+		while ((n & ~0x7FL) != 0) {
+			buffer.put((byte) ((n & 0x7F) | 0x80));
+			n >>>= 7;
+		}
+		buffer.put((byte) n);
+	}
+}
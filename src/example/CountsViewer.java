@@ -3,8 +3,34 @@
  */
 package example;
 
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
-import javax.swing.JTextPane;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+
+import org.apache.log4j.Logger;
 
 import gate.Document;
 import gate.FeatureMap;
@@ -16,21 +42,130 @@ import gate.creole.metadata.GuiType;
 import gate.event.FeatureMapListener;
 
 /**
+ * Shows a document's category counts as a table.
+ * 
+ * Types are listed in the {@link CategoryCounts} print order. The table only
+ * renders the rows that are visible, and the rows are filtered and sorted on a
+ * background thread, so large documents do not freeze the GUI. The rows can be
+ * restricted to types containing a string and to the most frequent n types.
+ * 
+ * Feature map updates that arrive in quick succession are coalesced into a
+ * single refresh.
+ * 
  * @author W.P. McNeill
  * 
  */
 @CreoleResource(name = "Statistics Viewer", comment = "Shows document statistics", resourceDisplayed = "gate.Document", guiType = GuiType.LARGE, mainViewer = true)
 public class CountsViewer extends AbstractVisualResource implements
 		FeatureMapListener {
+	static Logger logger = Logger.getLogger(CountsViewer.class.getName());
 
 	private static final long serialVersionUID = -7505075313672997840L;
-	private JTextPane textPane;
+
+	/**
+	 * Milliseconds to wait for further updates before refreshing
+	 */
+	private static final int REFRESH_DELAY = 250;
+
+	/**
+	 * The rows currently displayed
+	 */
+	private static class CountsTableModel extends AbstractTableModel {
+		private static final long serialVersionUID = 1L;
+		private static final String[] COLUMNS = { "Type", "Count",
+				"Categories" };
+
+		private List<Map.Entry<Object, Tally<?>>> rows = Collections
+				.emptyList();
+
+		void setRows(List<Map.Entry<Object, Tally<?>>> rows) {
+			this.rows = rows;
+			fireTableDataChanged();
+		}
+
+		public int getRowCount() {
+			return rows.size();
+		}
+
+		public int getColumnCount() {
+			return COLUMNS.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMNS[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			return column == 1 ? Long.class : String.class;
+		}
+
+		public Object getValueAt(int row, int column) {
+			Map.Entry<Object, Tally<?>> entry = rows.get(row);
+			switch (column) {
+			case 0:
+				return entry.getKey().toString();
+			case 1:
+				return entry.getValue().getTotalCount();
+			default:
+				return categories(entry.getValue());
+			}
+		}
+	}
+
+	private CountsTableModel tableModel;
+	private JTextField filterField;
+	private SpinnerNumberModel topModel;
+	private JLabel statusLabel;
+	private Timer refreshTimer;
 	private FeatureMap targetFeatures;
+	/**
+	 * Incremented by every refresh so that the results of a superseded one
+	 * are discarded
+	 */
+	private int generation = 0;
 
 	@Override
 	public Resource init() throws ResourceInstantiationException {
-		textPane = new JTextPane();
-		add(new JScrollPane(textPane));
+		setLayout(new BorderLayout());
+		tableModel = new CountsTableModel();
+		JTable table = new JTable(tableModel);
+		add(new JScrollPane(table), BorderLayout.CENTER);
+		filterField = new JTextField(20);
+		topModel = new SpinnerNumberModel(1000, 0, Integer.MAX_VALUE, 100);
+		statusLabel = new JLabel();
+		JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		controls.add(new JLabel("Filter"));
+		controls.add(filterField);
+		controls.add(new JLabel("Top (0 for all)"));
+		controls.add(new JSpinner(topModel));
+		controls.add(statusLabel);
+		add(controls, BorderLayout.NORTH);
+		refreshTimer = new Timer(REFRESH_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				refresh();
+			}
+		});
+		refreshTimer.setRepeats(false);
+		filterField.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				refreshTimer.restart();
+			}
+
+			public void removeUpdate(DocumentEvent e) {
+				refreshTimer.restart();
+			}
+
+			public void changedUpdate(DocumentEvent e) {
+				refreshTimer.restart();
+			}
+		});
+		topModel.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				refreshTimer.restart();
+			}
+		});
 		return super.init();
 	}
 
@@ -40,7 +175,15 @@ public class CountsViewer extends AbstractVisualResource implements
 			targetFeatures.removeFeatureMapListener(this);
 		targetFeatures = ((Document) target).getFeatures();
 		targetFeatures.addFeatureMapListener(this);
-		featureMapUpdated();
+		refreshTimer.restart();
+	}
+
+	@Override
+	public void cleanup() {
+		refreshTimer.stop();
+		if (null != targetFeatures)
+			targetFeatures.removeFeatureMapListener(this);
+		super.cleanup();
 	}
 
 	/*
@@ -49,8 +192,109 @@ public class CountsViewer extends AbstractVisualResource implements
 	 * @see gate.event.FeatureMapListener#featureMapUpdated()
 	 */
 	public void featureMapUpdated() {
-		textPane.setText(targetFeatures.get(TaggerTrainer.CATEGORY_COUNTS)
-				.toString());
+		refreshTimer.restart();
 	}
 
+	/**
+	 * Filter and sort the counts on a background thread and display the
+	 * result.
+	 * 
+	 * This is called on the event dispatch thread.
+	 */
+	@SuppressWarnings("unchecked")
+	private void refresh() {
+		final int refresh = ++generation;
+		Object value = null == targetFeatures ? null : targetFeatures
+				.get(TaggerTrainer.CATEGORY_COUNTS);
+		if (!(value instanceof CategoryCounts)) {
+			tableModel.setRows(Collections
+					.<Map.Entry<Object, Tally<?>>> emptyList());
+			statusLabel.setText("No counts");
+			return;
+		}
+		final CategoryCounts<?, ?> counts = (CategoryCounts<?, ?>) value;
+		// Copy the entries here so that the worker does not read the map
+		// while it might be changing.
+		final List<Map.Entry<Object, Tally<?>>> entries = new ArrayList<Map.Entry<Object, Tally<?>>>(
+				(Collection<Map.Entry<Object, Tally<?>>>) (Collection<?>) counts
+						.entrySet());
+		final Comparator<Map.Entry<Object, Tally<?>>> order = (Comparator<Map.Entry<Object, Tally<?>>>) (Comparator<?>) counts
+				.entryOrder();
+		final String filter = filterField.getText();
+		final int n = topModel.getNumber().intValue();
+		statusLabel.setText("Sorting " + entries.size() + " types...");
+		new SwingWorker<List<Map.Entry<Object, Tally<?>>>, Void>() {
+			@Override
+			protected List<Map.Entry<Object, Tally<?>>> doInBackground() {
+				return rows(entries, order, filter, n);
+			}
+
+			@Override
+			protected void done() {
+				if (refresh != generation)
+					return;
+				try {
+					List<Map.Entry<Object, Tally<?>>> rows = get();
+					tableModel.setRows(rows);
+					statusLabel.setText("Showing " + rows.size() + " of "
+							+ entries.size() + " types");
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					logger.error("Could not sort counts", e.getCause());
+					statusLabel.setText("Error sorting counts");
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * The entries to display.
+	 * 
+	 * @param entries
+	 *            category count entries
+	 * @param order
+	 *            the display order
+	 * @param filter
+	 *            only keep types whose string forms contain this
+	 * @param n
+	 *            only keep the first n entries, or all of them if this is 0
+	 * @return the entries passing the filter, sorted
+	 */
+	static <E extends Map.Entry<?, ?>> List<E> rows(Collection<E> entries,
+			Comparator<? super E> order, String filter, int n) {
+		List<E> rows;
+		if (n > 0) {
+			TopN<E> top = new TopN<E>(n, order);
+			for (E entry : entries)
+				if (matches(entry, filter))
+					top.add(entry);
+			rows = top.toList();
+		} else {
+			rows = new ArrayList<E>();
+			for (E entry : entries)
+				if (matches(entry, filter))
+					rows.add(entry);
+			Collections.sort(rows, order);
+		}
+		return rows;
+	}
+
+	private static boolean matches(Map.Entry<?, ?> entry, String filter) {
+		return filter.length() == 0
+				|| entry.getKey().toString().contains(filter);
+	}
+
+	/**
+	 * The categories of a tally on a single line, e.g. "NN 3, VB 2".
+	 */
+	static <K extends Comparable<K>> String categories(Tally<K> tally) {
+		StringBuilder s = new StringBuilder();
+		for (K key : tally.topK(tally.size())) {
+			if (s.length() > 0)
+				s.append(", ");
+			s.append(key).append(' ').append(tally.getCount(key));
+		}
+		return s.toString();
+	}
 }
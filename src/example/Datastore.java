@@ -1,5 +1,7 @@
 package example;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -7,7 +9,11 @@ import org.apache.log4j.Logger;
 import gate.Corpus;
 import gate.DataStore;
 import gate.Factory;
+import gate.Document;
 import gate.FeatureMap;
+import gate.corpora.SerialCorpusImpl;
+import gate.creole.ResourceInstantiationException;
+import gate.persist.SerialDataStore;
 import gate.util.GateException;
 
 /**
@@ -43,16 +49,70 @@ public class Datastore {
 		List<String> lrids = dataStore
 				.getLrIds("gate.corpora.SerialCorpusImpl");
 		// Find the LRID corresponding to the corpus name.
-		String lrid;
-		try {
-			lrid = lrids.get(names.indexOf(corpusName));
-		} catch (ArrayIndexOutOfBoundsException e) {
+		int index = names.indexOf(corpusName);
+		if (index < 0)
 			throw new GateException("Datastore does not contain corpus "
 					+ corpusName);
-		}
+		String lrid = lrids.get(index);
 		params.put(DataStore.DATASTORE_FEATURE_NAME, dataStore);
 		params.put(DataStore.LR_ID_FEATURE_NAME, lrid);
 		return (Corpus) Factory.createResource("gate.corpora.SerialCorpusImpl",
 				params);
 	}
+
+	/**
+	 * Load a document from a data store by persistence id.
+	 * 
+	 * It is the caller's responsibility to call Factory.deleteResource() on the
+	 * value returned by this function.
+	 * 
+	 * @param dataStore
+	 *            the data store
+	 * @param lrid
+	 *            the document's persistence id
+	 * @return a document
+	 * @throws ResourceInstantiationException
+	 */
+	public static Document loadDocumentFromDatastore(DataStore dataStore,
+			Object lrid) throws ResourceInstantiationException {
+		FeatureMap params = Factory.newFeatureMap();
+		params.put(DataStore.DATASTORE_FEATURE_NAME, dataStore);
+		params.put(DataStore.LR_ID_FEATURE_NAME, lrid);
+		return (Document) Factory.createResource("gate.corpora.DocumentImpl",
+				params);
+	}
+
+	/**
+	 * References to the documents in a data store corpus.
+	 * 
+	 * This does not load the documents. Document sizes are estimated from the
+	 * sizes of their files in a serial data store.
+	 * 
+	 * @param dataStore
+	 *            the data store
+	 * @param corpus
+	 *            a corpus loaded from the data store
+	 * @return references to the documents in the corpus
+	 * @throws GateException
+	 */
+	public static List<CorpusDocument> getCorpusDocuments(DataStore dataStore,
+			Corpus corpus) throws GateException {
+		if (!(corpus instanceof SerialCorpusImpl))
+			throw new GateException("Corpus " + corpus.getName()
+					+ " is not stored in a data store.");
+		SerialCorpusImpl serialCorpus = (SerialCorpusImpl) corpus;
+		File documentDir = null;
+		if (dataStore instanceof SerialDataStore)
+			documentDir = new File(
+					((SerialDataStore) dataStore).getStorageDir(),
+					"gate.corpora.DocumentImpl");
+		List<CorpusDocument> documents = new ArrayList<CorpusDocument>();
+		for (int i = 0; i < serialCorpus.size(); i++) {
+			Object lrid = serialCorpus.getDocumentPersistentID(i);
+			long size = null == documentDir ? -1 : new File(documentDir,
+					lrid.toString()).length();
+			documents.add(CorpusDocument.fromDatastore(dataStore, lrid, size));
+		}
+		return documents;
+	}
 }
@@ -0,0 +1,206 @@
+package example;
+
+import gate.Document;
+import gate.Factory;
+import gate.creole.ResourceInstantiationException;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Loads a sequence of documents ahead of the thread that processes them.
+ * 
+ * A background thread loads up to a fixed number of documents beyond the one
+ * being processed, so reading documents from disk overlaps with processing
+ * them. Only those documents are in memory at once, however large the corpus.
+ * The caller deletes each document when it is done with it.
+ * 
+ * This class is meant to be used from a single thread.
+ * 
+ * @author W.P. McNeill
+ */
+public class DocumentPrefetcher {
+	static Logger logger = Logger
+			.getLogger(DocumentPrefetcher.class.getName());
+
+	private final List<CorpusDocument> documents;
+	private final int depth;
+	/**
+	 * Documents being loaded, in order
+	 */
+	private final LinkedList<Load> pending = new LinkedList<Load>();
+	private ExecutorService loader = null;
+	private int next = 0;
+	private CorpusDocument current = null;
+
+	/**
+	 * @param documents
+	 *            the documents to load, in the order they will be returned
+	 * @param depth
+	 *            the largest number of documents to load ahead
+	 */
+	public DocumentPrefetcher(List<CorpusDocument> documents, int depth) {
+		if (depth < 1)
+			throw new IllegalArgumentException("Invalid prefetch depth "
+					+ depth);
+		this.documents = documents;
+		this.depth = depth;
+	}
+
+	/**
+	 * @return are there more documents?
+	 */
+	public boolean hasNext() {
+		return next < documents.size();
+	}
+
+	/**
+	 * The next document.
+	 * 
+	 * It is the caller's responsibility to call {@link #unload(Document)} on
+	 * the value returned by this function.
+	 * 
+	 * @return the next document
+	 * @throws ResourceInstantiationException
+	 *             if the document could not be loaded
+	 */
+	public Document next() throws ResourceInstantiationException {
+		if (!hasNext())
+			throw new IllegalStateException("No more documents.");
+		if (null == loader)
+			loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Document prefetcher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		while (pending.size() <= depth
+				&& next + pending.size() < documents.size()) {
+			Load load = new Load(documents.get(next + pending.size()));
+			load.future = loader.submit(load);
+			pending.add(load);
+		}
+		current = documents.get(next++);
+		try {
+			return pending.removeFirst().future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceInstantiationException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ResourceInstantiationException)
+				throw (ResourceInstantiationException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new ResourceInstantiationException((Exception) cause);
+		}
+	}
+
+	/**
+	 * @return the reference the last document returned by {@link #next()}
+	 *         was loaded from
+	 */
+	public CorpusDocument getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Delete a document returned by {@link #next()}.
+	 * 
+	 * This is also called by {@link #close()} for the documents that were
+	 * loaded but not returned.
+	 * 
+	 * @param document
+	 *            a loaded document
+	 */
+	public void unload(Document document) {
+		Factory.deleteResource(document);
+	}
+
+	/**
+	 * Stop loading and unload the documents that were loaded but not
+	 * returned.
+	 * 
+	 * Loads that have not started are skipped. A load that has started is
+	 * waited for, so that its document can be unloaded. A document that
+	 * cannot be unloaded is logged and does not stop the others from being
+	 * unloaded.
+	 */
+	public void close() {
+		if (null == loader)
+			return;
+		// Skip everything that can be skipped before waiting for anything, so
+		// that the loader does not start another load in the meantime.
+		List<Load> started = new LinkedList<Load>();
+		for (Load load : pending)
+			if (!load.skip())
+				started.add(load);
+		pending.clear();
+		boolean interrupted = false;
+		for (Load load : started) {
+			Document document = null;
+			while (true)
+				try {
+					document = load.future.get();
+					break;
+				} catch (InterruptedException e) {
+					// Finish the unloading and then restore the interrupt.
+					interrupted = true;
+				} catch (ExecutionException e) {
+					// The document was not loaded.
+					break;
+				}
+			if (null != document)
+				try {
+					unload(document);
+				} catch (RuntimeException e) {
+					logger.warn("Could not unload " + load.source, e);
+				}
+		}
+		loader.shutdown();
+		loader = null;
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Loads a document on the loader thread unless it is skipped first.
+	 */
+	private static class Load implements Callable<Document> {
+		private final CorpusDocument source;
+		/**
+		 * Set by the loader when the load starts or by {@link #skip()},
+		 * whichever comes first
+		 */
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		private Future<Document> future;
+
+		Load(CorpusDocument source) {
+			this.source = source;
+		}
+
+		public Document call() throws ResourceInstantiationException {
+			if (!claimed.compareAndSet(false, true))
+				return null;
+			logger.debug("Loading " + source);
+			return source.load();
+		}
+
+		/**
+		 * @return true if the load had not started and now never will
+		 */
+		boolean skip() {
+			return claimed.compareAndSet(false, true);
+		}
+	}
+}
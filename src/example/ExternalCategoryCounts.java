@@ -0,0 +1,508 @@
+package example;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Type frequencies that are too large to hold in memory.
+ * 
+ * Counts are accumulated in memory until their estimated size reaches a
+ * budget. They are then spilled to a run file on disk sorted by type, and
+ * counting starts again with an empty table. The model is produced by a
+ * streaming k-way merge of the runs that writes each type to a
+ * {@link ModelWriter} as soon as all of its counts have been read, so the
+ * whole vocabulary is never in memory at once. Only the category totals are
+ * kept across runs. If there are more runs than can be merged at once, groups
+ * of them are first merged into larger runs. The read and write buffers of a
+ * merge share the memory budget.
+ * 
+ * Run files are written and read through NIO channels with large buffers.
+ * Each type in a run is a varint-length UTF-8 string, a varint number of
+ * categories and that many varint category ids and varint counts.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author W.P. McNeill
+ */
+public class ExternalCategoryCounts implements
+		CountsAccumulator<String, String>, Closeable {
+	static Logger logger = Logger.getLogger(ExternalCategoryCounts.class
+			.getName());
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	/**
+	 * Estimated heap cost of a type in the in-memory table, not counting the
+	 * characters of its string or its category counts: a 32-byte hash map
+	 * entry and about 8 bytes of its table, a 40-byte {@link Tally} and the
+	 * 32 bytes of its array headers, and a 40-byte string and array header,
+	 * with compressed references
+	 */
+	static final long TYPE_BYTES = 152;
+	/**
+	 * Estimated heap cost of a category count in the in-memory table: an int
+	 * id and a long count in the tally's arrays, doubled for their spare
+	 * capacity
+	 */
+	static final long CATEGORY_BYTES = 24;
+	/**
+	 * Largest number of runs merged at once, which bounds the number of open
+	 * files
+	 */
+	static final int MERGE_FAN_IN = 64;
+
+	private final File directory;
+	private final long memoryBudget;
+	/**
+	 * Categories seen in any run, indexed by the ids used in the run files
+	 */
+	private final SymbolTable<String> categories = new SymbolTable<String>();
+	private final Tally<String> categoryTotals = new Tally<String>(categories);
+	private final List<File> runs = new ArrayList<File>();
+	private CategoryCounts<String, String> counts = new CategoryCounts<String, String>();
+	private long estimatedSize = 0;
+	private int mergeFanIn = MERGE_FAN_IN;
+
+	/**
+	 * @param directory
+	 *            directory in which to write run files
+	 * @param memoryBudget
+	 *            the estimated number of bytes of counts to hold in memory
+	 *            before spilling them to disk
+	 */
+	public ExternalCategoryCounts(File directory, long memoryBudget) {
+		this.directory = directory;
+		this.memoryBudget = memoryBudget;
+	}
+
+	public void addToken(String type, String category) {
+		add(type, category, 1);
+	}
+
+	/**
+	 * @throws ExternalStorageException
+	 *             if the counts cannot be spilled to disk
+	 */
+	public ExternalCategoryCounts addCategoryCounts(
+			CategoryCounts<String, String> categoryCounts) {
+		for (Map.Entry<String, Tally<String>> entry : categoryCounts
+				.entrySet()) {
+			Tally<String> tally = entry.getValue();
+			for (int i = 0; i < tally.size(); i++)
+				add(entry.getKey(), tally.keyAt(i), tally.countAt(i));
+		}
+		return this;
+	}
+
+	public String getMostCommonCategory() {
+		return categoryTotals.getLargestKey();
+	}
+
+	/**
+	 * @return the number of run files spilled so far
+	 */
+	public int getRunCount() {
+		return runs.size();
+	}
+
+	/**
+	 * @param mergeFanIn
+	 *            the largest number of runs to merge at once
+	 */
+	void setMergeFanIn(int mergeFanIn) {
+		if (mergeFanIn < 2)
+			throw new IllegalArgumentException("Invalid merge fan-in "
+					+ mergeFanIn);
+		this.mergeFanIn = mergeFanIn;
+	}
+
+	/**
+	 * Write the model to a file.
+	 * 
+	 * The in-memory counts are spilled as a final run and all the runs are
+	 * merged. The run files are deleted afterwards.
+	 * 
+	 * @param modelFile
+	 *            the model file to write
+	 * @throws IOException
+	 */
+	public void writeModel(File modelFile) throws IOException {
+		spill();
+		final ModelWriter writer = new ModelWriter(modelFile);
+		try {
+			merge(new MergeHandler() {
+				public void type(String type, String category)
+						throws IOException {
+					writer.write(type, category);
+				}
+			});
+			writer.setDefaultCategory(getMostCommonCategory());
+		} finally {
+			writer.close();
+			close();
+		}
+	}
+
+	/**
+	 * Merge the counts into an in-memory model.
+	 * 
+	 * This holds the whole vocabulary in memory, so it is only suitable for
+	 * small data. Use {@link #writeModel(File)} for large data.
+	 * 
+	 * @throws ExternalStorageException
+	 *             if the run files cannot be read
+	 */
+	public Model<String, String> toModel() {
+		final Map<String, String> category = new HashMap<String, String>();
+		try {
+			spill();
+			merge(new MergeHandler() {
+				public void type(String type, String c) {
+					category.put(type, c);
+				}
+			});
+		} catch (IOException e) {
+			throw new ExternalStorageException(e);
+		} finally {
+			close();
+		}
+		return new Model<String, String>(category, getMostCommonCategory());
+	}
+
+	/**
+	 * Delete the run files.
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() {
+		for (File run : runs)
+			if (!run.delete())
+				logger.warn("Cannot delete run file " + run);
+		runs.clear();
+	}
+
+	/**
+	 * Thrown by methods of {@link CountsAccumulator} that cannot throw an
+	 * IOException when reading or writing a run file fails.
+	 */
+	public static class ExternalStorageException extends RuntimeException {
+		private static final long serialVersionUID = -2911693735830470377L;
+
+		ExternalStorageException(IOException cause) {
+			super(cause);
+		}
+	}
+
+	private void add(String type, String category, long n) {
+		Tally<String> tally = counts.get(type);
+		int size = 0;
+		if (null == tally)
+			estimatedSize += TYPE_BYTES + 2 * type.length();
+		else
+			size = tally.size();
+		counts.addCount(type, category, n);
+		if (counts.get(type).size() > size)
+			estimatedSize += CATEGORY_BYTES;
+		categoryTotals.addToCount(category, n);
+		if (estimatedSize >= memoryBudget)
+			try {
+				spill();
+			} catch (IOException e) {
+				throw new ExternalStorageException(e);
+			}
+	}
+
+	/**
+	 * Write the in-memory counts to a run file sorted by type and clear them.
+	 */
+	private void spill() throws IOException {
+		if (counts.isEmpty())
+			return;
+		long start = System.currentTimeMillis();
+		List<String> types = new ArrayList<String>(counts.keySet());
+		Collections.sort(types);
+		File run = File.createTempFile("run", ".ntgr", directory);
+		runs.add(run);
+		RunWriter writer = new RunWriter(run, bufferSize(1));
+		try {
+			for (String type : types) {
+				Tally<String> tally = counts.get(type);
+				writer.writeString(type);
+				writer.writeVarint(tally.size());
+				for (int i = 0; i < tally.size(); i++) {
+					writer.writeVarint(categories.intern(tally.keyAt(i)));
+					writer.writeVarint(tally.countAt(i));
+				}
+			}
+		} finally {
+			writer.close();
+		}
+		logger.info("Spilled " + types.size() + " types to " + run + " in "
+				+ (System.currentTimeMillis() - start) + " ms");
+		counts = new CategoryCounts<String, String>();
+		estimatedSize = 0;
+	}
+
+	/**
+	 * Receives the types in order from a merge.
+	 */
+	private interface MergeHandler {
+		void type(String type, String category) throws IOException;
+	}
+
+	/**
+	 * Merge the runs, passing the most common category of each type to a
+	 * handler.
+	 * 
+	 * While there are more runs than the merge fan-in, the oldest runs are
+	 * merged into a new run, so that every type is read and written a
+	 * logarithmic number of times.
+	 */
+	private void merge(MergeHandler handler) throws IOException {
+		while (runs.size() > mergeFanIn) {
+			long start = System.currentTimeMillis();
+			List<File> inputs = new ArrayList<File>(runs.subList(0,
+					mergeFanIn));
+			File run = File.createTempFile("run", ".ntgr", directory);
+			runs.add(run);
+			int bufferSize = bufferSize(mergeFanIn + 1);
+			RunWriter writer = new RunWriter(run, bufferSize);
+			try {
+				mergeRuns(inputs, bufferSize, writer, null);
+			} finally {
+				writer.close();
+			}
+			runs.subList(0, mergeFanIn).clear();
+			for (File input : inputs)
+				if (!input.delete())
+					logger.warn("Cannot delete run file " + input);
+			logger.info("Merged " + mergeFanIn + " runs into " + run + " in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+		mergeRuns(runs, bufferSize(runs.size()), null, handler);
+	}
+
+	/**
+	 * The size of each of a number of buffers that share the memory budget.
+	 */
+	private int bufferSize(int buffers) {
+		return (int) Math.max(1, Math.min(BUFFER_SIZE, memoryBudget
+				/ Math.max(buffers, 1)));
+	}
+
+	/**
+	 * Merge runs, either writing the summed counts of each type to a run or
+	 * passing its most common category to a handler.
+	 * 
+	 * Ties are broken in the same way as in {@link Tally#getLargestKey()}.
+	 */
+	private void mergeRuns(List<File> inputs, int bufferSize,
+			RunWriter writer, MergeHandler handler) throws IOException {
+		PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math
+				.max(inputs.size(), 1), new Comparator<RunReader>() {
+			public int compare(RunReader r1, RunReader r2) {
+				return r1.type.compareTo(r2.type);
+			}
+		});
+		List<RunReader> readers = new ArrayList<RunReader>();
+		try {
+			for (File run : inputs) {
+				RunReader reader = new RunReader(run, bufferSize);
+				readers.add(reader);
+				if (reader.next())
+					queue.add(reader);
+			}
+			long[] totals = new long[categories.size()];
+			boolean[] seen = new boolean[categories.size()];
+			int[] touched = new int[categories.size()];
+			while (!queue.isEmpty()) {
+				String type = queue.peek().type;
+				int touchedCount = 0;
+				while (!queue.isEmpty() && queue.peek().type.equals(type)) {
+					RunReader reader = queue.poll();
+					for (int i = 0; i < reader.size; i++) {
+						int id = reader.categoryIds[i];
+						if (!seen[id]) {
+							seen[id] = true;
+							touched[touchedCount++] = id;
+						}
+						totals[id] += reader.counts[i];
+					}
+					if (reader.next())
+						queue.add(reader);
+				}
+				if (null != writer) {
+					writer.writeString(type);
+					writer.writeVarint(touchedCount);
+					for (int t = 0; t < touchedCount; t++) {
+						writer.writeVarint(touched[t]);
+						writer.writeVarint(totals[touched[t]]);
+					}
+				} else {
+					int best = -1;
+					for (int t = 0; t < touchedCount; t++) {
+						int id = touched[t];
+						if (best < 0
+								|| totals[id] > totals[best]
+								|| (totals[id] == totals[best] && categories
+										.get(id).compareTo(
+												categories.get(best)) < 0))
+							best = id;
+					}
+					handler.type(type, categories.get(best));
+				}
+				for (int t = 0; t < touchedCount; t++) {
+					totals[touched[t]] = 0;
+					seen[touched[t]] = false;
+				}
+			}
+		} finally {
+			for (RunReader reader : readers)
+				reader.close();
+		}
+	}
+
+	/**
+	 * Buffered sequential writer of a run file.
+	 */
+	private static final class RunWriter {
+		private final FileOutputStream out;
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+
+		/**
+		 * @param bufferSize
+		 *            size of the write buffer, which is made large enough
+		 *            for the longest varint
+		 */
+		RunWriter(File file, int bufferSize) throws IOException {
+			buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 10));
+			out = new FileOutputStream(file);
+			channel = out.getChannel();
+		}
+
+		void writeString(String s) throws IOException {
+			byte[] bytes = s.getBytes(ModelWriter.UTF8);
+			writeVarint(bytes.length);
+			for (int offset = 0; offset < bytes.length;) {
+				if (!buffer.hasRemaining())
+					flush();
+				int n = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.put(bytes, offset, n);
+				offset += n;
+			}
+		}
+
+		void writeVarint(long n) throws IOException {
+			if (buffer.remaining() < 10)
+				flush();
+			while ((n & ~0x7FL) != 0) {
+				buffer.put((byte) ((n & 0x7F) | 0x80));
+				n >>>= 7;
+			}
+			buffer.put((byte) n);
+		}
+
+		void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				out.close();
+			}
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Buffered sequential reader of a run file.
+	 */
+	private static final class RunReader {
+		private final FileInputStream in;
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		String type;
+		int size;
+		int[] categoryIds = new int[8];
+		long[] counts = new long[8];
+
+		RunReader(File file, int bufferSize) throws IOException {
+			in = new FileInputStream(file);
+			channel = in.getChannel();
+			buffer = ByteBuffer.allocateDirect(bufferSize);
+			buffer.limit(0);
+		}
+
+		/**
+		 * Read the next type.
+		 * 
+		 * @return false at the end of the file
+		 */
+		boolean next() throws IOException {
+			if (!buffer.hasRemaining() && !fill())
+				return false;
+			byte[] bytes = new byte[(int) readVarint()];
+			for (int offset = 0; offset < bytes.length;) {
+				if (!buffer.hasRemaining() && !fill())
+					throw new EOFException();
+				int n = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.get(bytes, offset, n);
+				offset += n;
+			}
+			type = new String(bytes, ModelWriter.UTF8);
+			size = (int) readVarint();
+			if (size > categoryIds.length) {
+				categoryIds = Arrays.copyOf(categoryIds, size);
+				counts = Arrays.copyOf(counts, size);
+			}
+			for (int i = 0; i < size; i++) {
+				categoryIds[i] = (int) readVarint();
+				counts[i] = readVarint();
+			}
+			return true;
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+
+		private long readVarint() throws IOException {
+			long n = 0;
+			for (int shift = 0;; shift += 7) {
+				if (!buffer.hasRemaining() && !fill())
+					throw new EOFException();
+				byte b = buffer.get();
+				n |= (long) (b & 0x7F) << shift;
+				if (b >= 0)
+					return n;
+			}
+		}
+
+		private boolean fill() throws IOException {
+			buffer.compact();
+			int n = channel.read(buffer);
+			buffer.flip();
+			return n > 0 || buffer.hasRemaining();
+		}
+	}
+}
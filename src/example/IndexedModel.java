@@ -0,0 +1,148 @@
+package example;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An in-memory model indexed for fast lookups.
+ * 
+ * The types are kept in an open-addressed hash table whose hash function is
+ * that of {@link String#hashCode()}, so a string type is hashed once using
+ * its cached hash code, and a span of text is hashed and compared in place
+ * without making a string. Categories are stored as ids into a small
+ * dictionary.
+ * 
+ * @author W.P. McNeill
+ */
+public class IndexedModel implements TextCategoryModel {
+	private final String[] types;
+	/**
+	 * Category ids of the types plus one, zero standing for a null category
+	 */
+	private final int[] categoryIds;
+	private final String[] categories;
+	private final String defaultCategory;
+	private final int mask;
+	private final int size;
+
+	/**
+	 * Index a model.
+	 * 
+	 * @param model
+	 *            a model
+	 */
+	public IndexedModel(Model<String, String> model) {
+		int length = 16;
+		while (length < 2 * model.size())
+			length <<= 1;
+		types = new String[length];
+		categoryIds = new int[length];
+		mask = length - 1;
+		size = model.size();
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		for (Entry<String, String> entry : model.entrySet()) {
+			int id = 0;
+			if (null != entry.getValue()) {
+				Integer i = ids.get(entry.getValue());
+				if (null == i) {
+					i = ids.size() + 1;
+					ids.put(entry.getValue(), i);
+				}
+				id = i;
+			}
+			String type = entry.getKey();
+			int slot = spread(type.hashCode()) & mask;
+			while (null != types[slot])
+				slot = (slot + 1) & mask;
+			types[slot] = type;
+			categoryIds[slot] = id;
+		}
+		categories = new String[ids.size() + 1];
+		for (Entry<String, Integer> entry : ids.entrySet())
+			categories[entry.getValue()] = entry.getKey();
+		defaultCategory = model.getDefaultCategory();
+	}
+
+	public String getCategory(String type) {
+		int slot = spread(type.hashCode()) & mask;
+		for (String t; null != (t = types[slot]); slot = (slot + 1) & mask)
+			if (t.equals(type))
+				return categories[categoryIds[slot]];
+		return defaultCategory;
+	}
+
+	/**
+	 * The span is hashed and compared in place, so no objects are allocated.
+	 * 
+	 * @see TextCategoryModel#getCategory(CharSequence, int, int)
+	 */
+	public String getCategory(CharSequence text, int start, int end) {
+		int slot = find(text, start, end);
+		return slot < 0 ? defaultCategory : categories[categoryIds[slot]];
+	}
+
+	public int getCategories(String[] types, int count, String[] categories) {
+		int known = 0;
+		for (int i = 0; i < count; i++) {
+			String type = types[i];
+			int slot = spread(type.hashCode()) & mask;
+			String t;
+			while (null != (t = this.types[slot]) && !t.equals(type))
+				slot = (slot + 1) & mask;
+			if (null == t)
+				categories[i] = defaultCategory;
+			else {
+				categories[i] = this.categories[categoryIds[slot]];
+				known++;
+			}
+		}
+		return known;
+	}
+
+	public String getDefaultCategory() {
+		return defaultCategory;
+	}
+
+	/**
+	 * @return the number of types in the model
+	 */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "Indexed model of " + size + " types, default category: "
+				+ defaultCategory;
+	}
+
+	/**
+	 * The slot of a span of text, or -1 if it is not in the model.
+	 */
+	private int find(CharSequence text, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = 31 * h + text.charAt(i);
+		int length = end - start;
+		for (int slot = spread(h) & mask;; slot = (slot + 1) & mask) {
+			String t = types[slot];
+			if (null == t)
+				return -1;
+			if (t.length() == length && matches(t, text, start))
+				return slot;
+		}
+	}
+
+	private static boolean matches(String type, CharSequence text, int start) {
+		for (int i = 0; i < type.length(); i++)
+			if (type.charAt(i) != text.charAt(start + i))
+				return false;
+		return true;
+	}
+
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
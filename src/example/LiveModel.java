@@ -0,0 +1,189 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A model that can absorb new category counts while it is being used.
+ * 
+ * The model keeps the counts it was built from. Adding a table of counts, for
+ * example the {@link TaggerTrainer#CATEGORY_COUNTS} feature of a newly
+ * annotated document, recomputes the predictions of only the types in that
+ * table and the default category.
+ * 
+ * Readers see immutable snapshots. A snapshot is a stack of immutable maps of
+ * predictions, newest first, each overriding the ones below it. An update
+ * pushes a new map of just the predictions it changes, and merges it into the
+ * maps below it while they are less than a few times its size, much as a
+ * binary counter carries. A map of n types has therefore been copied about
+ * log n times by the time it is merged into the bottom, so the amortized cost
+ * of an update is proportional to the number of types it touches times a
+ * logarithmic factor, and a lookup checks a logarithmic number of maps. Any
+ * number of threads may read from the model while another updates it, and
+ * every lookup sees the state before or after a whole update.
+ * 
+ * T is the type class. C is the category class.
+ * 
+ * @author W.P. McNeill
+ */
+public class LiveModel<T extends Comparable<T>, C extends Comparable<C>>
+		implements CategoryModel<T, C> {
+	/**
+	 * A new map is merged into the one below it if it is at least this
+	 * fraction of its size.
+	 */
+	private static final int MERGE_RATIO = 4;
+
+	/**
+	 * An immutable set of predictions.
+	 */
+	private static final class Snapshot<T, C> {
+		/**
+		 * Maps of predictions, newest first
+		 */
+		final List<Map<T, C>> layers;
+		final int size;
+		final C defaultCategory;
+
+		Snapshot(List<Map<T, C>> layers, int size, C defaultCategory) {
+			this.layers = layers;
+			this.size = size;
+			this.defaultCategory = defaultCategory;
+		}
+
+		C getCategory(T type) {
+			for (int i = 0; i < layers.size(); i++) {
+				Map<T, C> layer = layers.get(i);
+				C category = layer.get(type);
+				if (null != category || layer.containsKey(type))
+					return category;
+			}
+			return defaultCategory;
+		}
+
+		boolean contains(T type) {
+			for (int i = 0; i < layers.size(); i++)
+				if (layers.get(i).containsKey(type))
+					return true;
+			return false;
+		}
+	}
+
+	private final CategoryCounts<T, C> counts;
+	/**
+	 * Total counts of each category across all types
+	 */
+	private final Tally<C> categoryTotals = new Tally<C>();
+	private volatile Snapshot<T, C> snapshot;
+
+	/**
+	 * Create an empty model.
+	 */
+	public LiveModel() {
+		this(new CategoryCounts<T, C>());
+	}
+
+	/**
+	 * Create a model from a table of category counts.
+	 * 
+	 * @param counts
+	 *            the counts, which the model takes ownership of
+	 * @see Model#Model(CategoryCounts)
+	 */
+	public LiveModel(CategoryCounts<T, C> counts) {
+		this.counts = counts;
+		Map<T, C> predictions = new HashMap<T, C>(counts.size() * 4 / 3 + 1);
+		for (Entry<T, Tally<C>> entry : counts.entrySet()) {
+			predictions.put(entry.getKey(), entry.getValue().getLargestKey());
+			categoryTotals.addTally(entry.getValue());
+		}
+		snapshot = new Snapshot<T, C>(Collections.singletonList(predictions),
+				predictions.size(), categoryTotals.getLargestKey());
+	}
+
+	public C getCategory(T type) {
+		return snapshot.getCategory(type);
+	}
+
+	public C getDefaultCategory() {
+		return snapshot.defaultCategory;
+	}
+
+	/**
+	 * Add counts to the model.
+	 * 
+	 * The predictions for the types in the counts and the default category
+	 * are recomputed. Updates are serialized with respect to each other but
+	 * do not block readers.
+	 * 
+	 * @param delta
+	 *            counts to add, which are not modified
+	 */
+	public synchronized void update(CategoryCounts<T, C> delta) {
+		counts.addCategoryCounts(delta);
+		Snapshot<T, C> current = snapshot;
+		Map<T, C> changes = new HashMap<T, C>(delta.size() * 4 / 3 + 1);
+		for (Entry<T, Tally<C>> entry : delta.entrySet()) {
+			T type = entry.getKey();
+			categoryTotals.addTally(entry.getValue());
+			C category = counts.get(type).getLargestKey();
+			if (!current.contains(type)
+					|| !equal(category, current.getCategory(type)))
+				changes.put(type, category);
+		}
+		List<Map<T, C>> layers = current.layers;
+		if (!changes.isEmpty()) {
+			int merged = 0;
+			while (merged < layers.size()
+					&& changes.size() * MERGE_RATIO >= layers.get(merged)
+							.size()) {
+				Map<T, C> below = new HashMap<T, C>(layers.get(merged));
+				below.putAll(changes);
+				changes = below;
+				merged++;
+			}
+			List<Map<T, C>> newLayers = new ArrayList<Map<T, C>>(
+					layers.size() - merged + 1);
+			newLayers.add(changes);
+			newLayers.addAll(layers.subList(merged, layers.size()));
+			layers = Collections.unmodifiableList(newLayers);
+		}
+		snapshot = new Snapshot<T, C>(layers, counts.size(), categoryTotals
+				.getLargestKey());
+	}
+
+	/**
+	 * @return the number of types with predictions
+	 */
+	public int size() {
+		return snapshot.size;
+	}
+
+	/**
+	 * @return the number of maps a lookup may check
+	 */
+	int getLayerCount() {
+		return snapshot.layers.size();
+	}
+
+	/**
+	 * Copy the current predictions into an ordinary model.
+	 * 
+	 * @return a model that makes the same predictions as this one does now
+	 */
+	public Model<T, C> toModel() {
+		Snapshot<T, C> current = snapshot;
+		Map<T, C> predictions = new HashMap<T, C>(current.size * 4 / 3 + 1);
+		for (int i = current.layers.size() - 1; i >= 0; i--)
+			predictions.putAll(current.layers.get(i));
+		return new Model<T, C>(predictions, current.defaultCategory);
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return null == a ? null == b : a.equals(b);
+	}
+}
@@ -0,0 +1,642 @@
+package example;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A tagging model answered directly from a memory-mapped index file.
+ * 
+ * The index is a minimal perfect hash over the UTF-8 bytes of the model's
+ * types built with the hash and displace algorithm. Looking up a type hashes
+ * it once, reads its bucket's displacement to find its slot, and compares the
+ * stored bytes to tell a hit from a miss. Nothing but the small category
+ * dictionary is copied onto the heap, so opening an index takes constant time
+ * and processes that map the same file share its pages through the operating
+ * system's page cache.
+ * 
+ * All numbers in the file are big-endian. The file begins with a header:
+ * 
+ * <pre>
+ * int magic number "NTGX"
+ * int format version
+ * int number of types
+ * int number of buckets
+ * int number of categories
+ * int default category id
+ * int offset of the bucket displacements
+ * int offset of the slot string offsets
+ * int offset of the slot category ids
+ * int offset of the string pool
+ * </pre>
+ * 
+ * It is followed by the category dictionary (a short length and UTF-8 bytes
+ * per category), one int displacement per bucket, one int offset into the
+ * string pool per slot plus a final end offset, one unsigned byte category id
+ * per slot, and the pool of type bytes in slot order. Category id 255 stands
+ * for a null category. Indexes must be smaller than 2GB.
+ * 
+ * @author W.P. McNeill
+ */
+public class MappedModel implements TextCategoryModel {
+	/**
+	 * "NTGX"
+	 */
+	static final int MAGIC = 0x4E544758;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 40;
+	private static final int NULL_CATEGORY = 0xFF;
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+	private final ByteBuffer buffer;
+	private final int typeCount;
+	private final int bucketCount;
+	private final String[] categories;
+	private final int defaultCategoryId;
+	private final String defaultCategory;
+	private final int displacementOffset;
+	private final int slotOffset;
+	private final int categoryOffset;
+	private final int poolOffset;
+
+	/**
+	 * Map an index file.
+	 * 
+	 * @param indexFile
+	 *            an index written by {@link #write(ModelReader, File)}
+	 * @throws IOException
+	 */
+	public MappedModel(File indexFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(indexFile + " is too large.");
+			MappedByteBuffer mapped = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer = mapped;
+		} finally {
+			// The mapping remains valid after the file is closed.
+			file.close();
+		}
+		if (buffer.getInt(0) != MAGIC)
+			throw new IOException(indexFile + " is not a model index.");
+		int version = buffer.getInt(4);
+		if (version != VERSION)
+			throw new IOException("Unsupported model index version " + version
+					+ ".");
+		typeCount = buffer.getInt(8);
+		bucketCount = buffer.getInt(12);
+		categories = new String[buffer.getInt(16)];
+		defaultCategoryId = buffer.getInt(20);
+		displacementOffset = buffer.getInt(24);
+		slotOffset = buffer.getInt(28);
+		categoryOffset = buffer.getInt(32);
+		poolOffset = buffer.getInt(36);
+		int position = HEADER_SIZE;
+		for (int i = 0; i < categories.length; i++) {
+			byte[] bytes = new byte[buffer.getShort(position) & 0xFFFF];
+			position += 2;
+			for (int j = 0; j < bytes.length; j++)
+				bytes[j] = buffer.get(position++);
+			categories[i] = new String(bytes, ModelWriter.UTF8);
+		}
+		defaultCategory = category(defaultCategoryId);
+	}
+
+	/**
+	 * The model's type assignment to the token.
+	 * 
+	 * This returns the default category if the model has no entry for this
+	 * token.
+	 * 
+	 * @param type
+	 *            a type to tag, e.g. "bank"
+	 * @return the category of the type, e.g. "NN"
+	 */
+	public String getCategory(String type) {
+		return getCategory(type, 0, type.length());
+	}
+
+	/**
+	 * The category of a span of characters.
+	 * 
+	 * The span is hashed and compared in place, so no objects are allocated.
+	 * 
+	 * @param text
+	 *            characters containing the type
+	 * @param start
+	 *            offset of the first character of the type
+	 * @param end
+	 *            offset after the last character of the type
+	 * @return the category of the type, e.g. "NN"
+	 */
+	public String getCategory(CharSequence text, int start, int end) {
+		int slot = find(text, start, end);
+		return slot < 0 ? defaultCategory : category(buffer.get(categoryOffset
+				+ slot) & 0xFF);
+	}
+
+	/**
+	 * The category of a type given as UTF-8 bytes.
+	 * 
+	 * The bytes are hashed and compared in place, so no objects are
+	 * allocated.
+	 * 
+	 * @param bytes
+	 *            array containing the type's UTF-8 encoding
+	 * @param offset
+	 *            offset of the first byte of the type
+	 * @param length
+	 *            number of bytes in the type
+	 * @return the category of the type, e.g. "NN"
+	 */
+	public String getCategory(byte[] bytes, int offset, int length) {
+		return category(getCategoryId(bytes, offset, length));
+	}
+
+	/**
+	 * The id of the category of a type given as UTF-8 bytes.
+	 * 
+	 * @return an id that can be passed to {@link #category(int)}
+	 * @see #getCategory(byte[], int, int)
+	 */
+	int getCategoryId(byte[] bytes, int offset, int length) {
+		if (typeCount == 0)
+			return defaultCategoryId;
+		int slot = slot(hash(bytes, offset, length));
+		int position = buffer.getInt(slotOffset + 4 * slot);
+		if (buffer.getInt(slotOffset + 4 * slot + 4) - position != length)
+			return defaultCategoryId;
+		position += poolOffset;
+		for (int i = 0; i < length; i++)
+			if (buffer.get(position + i) != bytes[offset + i])
+				return defaultCategoryId;
+		return buffer.get(categoryOffset + slot) & 0xFF;
+	}
+
+	public int getCategories(String[] types, int count, String[] categories) {
+		int known = 0;
+		for (int i = 0; i < count; i++) {
+			int slot = find(types[i], 0, types[i].length());
+			if (slot < 0)
+				categories[i] = defaultCategory;
+			else {
+				categories[i] = category(buffer.get(categoryOffset + slot) & 0xFF);
+				known++;
+			}
+		}
+		return known;
+	}
+
+	public String getDefaultCategory() {
+		return defaultCategory;
+	}
+
+	/**
+	 * @return the number of types in the model
+	 */
+	public int size() {
+		return typeCount;
+	}
+
+	@Override
+	public String toString() {
+		return "Mapped model of " + typeCount + " types, default category: "
+				+ defaultCategory;
+	}
+
+	/**
+	 * The slot of a span of text, or -1 if it is not in the model.
+	 */
+	private int find(CharSequence text, int start, int end) {
+		if (typeCount == 0)
+			return -1;
+		int slot = slot(hash(text, start, end));
+		int offset = buffer.getInt(slotOffset + 4 * slot);
+		int length = buffer.getInt(slotOffset + 4 * slot + 4) - offset;
+		return matches(text, start, end, poolOffset + offset, length) ? slot
+				: -1;
+	}
+
+	/**
+	 * The category with a given id, null for the null category id.
+	 */
+	String category(int id) {
+		return id == NULL_CATEGORY ? null : categories[id];
+	}
+
+	/**
+	 * The slot of a type with a given hash.
+	 */
+	private int slot(long hash) {
+		int displacement = buffer.getInt(displacementOffset + 4
+				* bucket(hash, bucketCount));
+		return slot(hash, displacement, typeCount);
+	}
+
+	private static int bucket(long hash, int bucketCount) {
+		return (int) ((hash >>> 1) % bucketCount);
+	}
+
+	/**
+	 * Negative displacements place a type directly in a slot. Others are
+	 * seeds that rehash the type.
+	 */
+	private static int slot(long hash, int displacement, int typeCount) {
+		if (displacement < 0)
+			return -displacement - 1;
+		return (int) ((mix(hash + displacement * GOLDEN) >>> 1) % typeCount);
+	}
+
+	/**
+	 * Does a span of characters encode to the bytes at a position in the
+	 * index?
+	 */
+	private boolean matches(CharSequence text, int start, int end,
+			int position, int length) {
+		int limit = position + length;
+		for (int i = start; i < end; i++) {
+			int c = text.charAt(i);
+			if (c >= 0x80) {
+				if (Character.isHighSurrogate((char) c) && i + 1 < end
+						&& Character.isLowSurrogate(text.charAt(i + 1)))
+					c = Character.toCodePoint((char) c, text.charAt(++i));
+				else if (c >= Character.MIN_SURROGATE
+						&& c <= Character.MAX_SURROGATE)
+					c = '?';
+			}
+			int n = utf8Length(c);
+			if (position + n > limit)
+				return false;
+			for (int k = 0; k < n; k++)
+				if (buffer.get(position++) != utf8Byte(c, n, k))
+					return false;
+		}
+		return position == limit;
+	}
+
+	/**
+	 * Hash the UTF-8 encoding of a span of characters without encoding it.
+	 * 
+	 * This agrees with {@link #hash(byte[], int, int)} on the bytes returned
+	 * by {@link String#getBytes}, which encodes unpaired surrogates as '?'.
+	 */
+	static long hash(CharSequence text, int start, int end) {
+		long h = 0xCBF29CE484222325L;
+		for (int i = start; i < end; i++) {
+			int c = text.charAt(i);
+			if (c < 0x80) {
+				h = (h ^ c) * 0x100000001B3L;
+				continue;
+			}
+			if (Character.isHighSurrogate((char) c) && i + 1 < end
+					&& Character.isLowSurrogate(text.charAt(i + 1)))
+				c = Character.toCodePoint((char) c, text.charAt(++i));
+			else if (c >= Character.MIN_SURROGATE
+					&& c <= Character.MAX_SURROGATE)
+				c = '?';
+			int n = utf8Length(c);
+			for (int k = 0; k < n; k++)
+				h = (h ^ (utf8Byte(c, n, k) & 0xFF)) * 0x100000001B3L;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * Hash UTF-8 bytes.
+	 */
+	static long hash(byte[] bytes, int offset, int length) {
+		long h = 0xCBF29CE484222325L;
+		for (int i = offset; i < offset + length; i++)
+			h = (h ^ (bytes[i] & 0xFF)) * 0x100000001B3L;
+		return mix(h);
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	/**
+	 * The number of UTF-8 bytes in the encoding of a code point.
+	 */
+	private static int utf8Length(int c) {
+		if (c < 0x80)
+			return 1;
+		if (c < 0x800)
+			return 2;
+		if (c < 0x10000)
+			return 3;
+		return 4;
+	}
+
+	/**
+	 * Byte k of the n byte UTF-8 encoding of a code point.
+	 */
+	private static byte utf8Byte(int c, int n, int k) {
+		if (k == 0) {
+			switch (n) {
+			case 1:
+				return (byte) c;
+			case 2:
+				return (byte) (0xC0 | (c >> 6));
+			case 3:
+				return (byte) (0xE0 | (c >> 12));
+			default:
+				return (byte) (0xF0 | (c >> 18));
+			}
+		}
+		return (byte) (0x80 | ((c >> (6 * (n - 1 - k))) & 0x3F));
+	}
+
+	/**
+	 * Build an index file from a model.
+	 * 
+	 * @param model
+	 *            the model
+	 * @param indexFile
+	 *            file to write
+	 * @throws IOException
+	 */
+	public static void write(Model<String, String> model, File indexFile)
+			throws IOException {
+		Builder builder = new Builder();
+		for (Entry<String, String> entry : model.entrySet())
+			builder.add(entry.getKey(), entry.getValue());
+		builder.write(model.getDefaultCategory(), indexFile);
+	}
+
+	/**
+	 * Build an index file from a binary model file.
+	 * 
+	 * Only the type bytes are held in memory while the index is built.
+	 * 
+	 * @param reader
+	 *            a reader positioned at the start of a model file
+	 * @param indexFile
+	 *            file to write
+	 * @throws IOException
+	 */
+	public static void write(ModelReader reader, File indexFile)
+			throws IOException {
+		Builder builder = new Builder();
+		while (reader.next())
+			builder.add(reader.getType(), reader.getCategory());
+		builder.write(reader.getDefaultCategory(), indexFile);
+	}
+
+	/**
+	 * Build an index file from a binary or serialized model file.
+	 * 
+	 * @param modelFile
+	 *            a model file
+	 * @param indexFile
+	 *            file to write
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static void write(File modelFile, File indexFile)
+			throws IOException, ClassNotFoundException {
+		if (ModelFile.isSerialized(modelFile))
+			write(ModelFile.load(modelFile), indexFile);
+		else {
+			ModelReader reader = new ModelReader(modelFile);
+			try {
+				write(reader, indexFile);
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Accumulates types and builds the perfect hash.
+	 */
+	private static final class Builder {
+		private final List<byte[]> types = new ArrayList<byte[]>();
+		private byte[] typeCategories = new byte[1024];
+		private final Map<String, Integer> categoryIds = new HashMap<String, Integer>();
+		private final List<String> categories = new ArrayList<String>();
+
+		void add(String type, String category) throws IOException {
+			if (types.size() == typeCategories.length)
+				typeCategories = Arrays.copyOf(typeCategories,
+						2 * typeCategories.length);
+			typeCategories[types.size()] = (byte) categoryId(category);
+			types.add(type.getBytes(ModelWriter.UTF8));
+		}
+
+		private int categoryId(String category) throws IOException {
+			if (null == category)
+				return NULL_CATEGORY;
+			Integer id = categoryIds.get(category);
+			if (null == id) {
+				id = categories.size();
+				if (id == NULL_CATEGORY)
+					throw new IOException("More than " + NULL_CATEGORY
+							+ " categories.");
+				categories.add(category);
+				categoryIds.put(category, id);
+			}
+			return id;
+		}
+
+		void write(String defaultCategory, File indexFile) throws IOException {
+			int defaultCategoryId = categoryId(defaultCategory);
+			int n = types.size();
+			int bucketCount = n / 3 + 1;
+			int[] displacements = new int[bucketCount];
+			int[] typeSlots = place(n, bucketCount, displacements);
+
+			// Lay out the file.
+			byte[][] dictionary = new byte[categories.size()][];
+			int position = HEADER_SIZE;
+			for (int i = 0; i < dictionary.length; i++) {
+				dictionary[i] = categories.get(i).getBytes(ModelWriter.UTF8);
+				position += 2 + dictionary[i].length;
+			}
+			long displacementOffset = position;
+			long slotOffset = displacementOffset + 4L * bucketCount;
+			long categoryOffset = slotOffset + 4L * (n + 1);
+			long poolOffset = categoryOffset + n;
+			int[] slotTypes = new int[n];
+			for (int i = 0; i < n; i++)
+				slotTypes[typeSlots[i]] = i;
+			long poolSize = 0;
+			for (byte[] type : types)
+				poolSize += type.length;
+			if (poolOffset + poolSize > Integer.MAX_VALUE)
+				throw new IOException("Model is too large to index.");
+
+			FileOutputStream out = new FileOutputStream(indexFile);
+			try {
+				FileChannel channel = out.getChannel();
+				ByteBuffer b = ByteBuffer.allocate(1 << 16);
+				b.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(bucketCount);
+				b.putInt(dictionary.length).putInt(defaultCategoryId);
+				b.putInt((int) displacementOffset).putInt((int) slotOffset);
+				b.putInt((int) categoryOffset).putInt((int) poolOffset);
+				for (byte[] category : dictionary) {
+					b.putShort((short) category.length);
+					b = put(channel, b, category);
+				}
+				for (int displacement : displacements)
+					b = putInt(channel, b, displacement);
+				int offset = 0;
+				for (int slot = 0; slot < n; slot++) {
+					b = putInt(channel, b, offset);
+					offset += types.get(slotTypes[slot]).length;
+				}
+				b = putInt(channel, b, offset);
+				for (int slot = 0; slot < n; slot++) {
+					if (!b.hasRemaining())
+						drain(channel, b);
+					b.put(typeCategories[slotTypes[slot]]);
+				}
+				for (int slot = 0; slot < n; slot++)
+					b = put(channel, b, types.get(slotTypes[slot]));
+				drain(channel, b);
+			} finally {
+				out.close();
+			}
+		}
+
+		/**
+		 * Assign every type a distinct slot, filling in the bucket
+		 * displacements.
+		 * 
+		 * Buckets are placed largest first. Multi-type buckets search for a
+		 * seed that sends all their types to free slots. Single-type buckets
+		 * are put directly into the remaining free slots.
+		 * 
+		 * @return the slot of each type
+		 */
+		private int[] place(int n, int bucketCount, int[] displacements)
+				throws IOException {
+			long[] hashes = new long[n];
+			int[] bucketSizes = new int[bucketCount + 1];
+			for (int i = 0; i < n; i++) {
+				byte[] type = types.get(i);
+				hashes[i] = hash(type, 0, type.length);
+				bucketSizes[bucket(hashes[i], bucketCount) + 1]++;
+			}
+			// Group the types by bucket.
+			int[] bucketStarts = new int[bucketCount + 1];
+			for (int b = 0; b < bucketCount; b++)
+				bucketStarts[b + 1] = bucketStarts[b] + bucketSizes[b + 1];
+			int[] members = new int[n];
+			int[] fill = bucketStarts.clone();
+			for (int i = 0; i < n; i++)
+				members[fill[bucket(hashes[i], bucketCount)]++] = i;
+			// Order the buckets by decreasing size.
+			int maxSize = 0;
+			for (int b = 0; b < bucketCount; b++)
+				maxSize = Math.max(maxSize, bucketSizes[b + 1]);
+			int[] bySize = new int[maxSize + 2];
+			for (int b = 0; b < bucketCount; b++)
+				bySize[maxSize - bucketSizes[b + 1] + 1]++;
+			for (int s = 0; s <= maxSize; s++)
+				bySize[s + 1] += bySize[s];
+			int[] order = new int[bucketCount];
+			for (int b = 0; b < bucketCount; b++)
+				order[bySize[maxSize - bucketSizes[b + 1]]++] = b;
+
+			boolean[] occupied = new boolean[n];
+			int[] typeSlots = new int[n];
+			int[] candidate = new int[maxSize];
+			int nextFree = 0;
+			for (int b : order) {
+				int start = bucketStarts[b];
+				int size = bucketStarts[b + 1] - start;
+				if (size == 0)
+					break;
+				if (size == 1) {
+					while (occupied[nextFree])
+						nextFree++;
+					occupied[nextFree] = true;
+					typeSlots[members[start]] = nextFree;
+					displacements[b] = -nextFree - 1;
+					continue;
+				}
+				int seed = 0;
+				search: while (true) {
+					if (++seed == Integer.MAX_VALUE)
+						throw new IOException("Cannot build perfect hash.");
+					for (int k = 0; k < size; k++) {
+						int slot = slot(hashes[members[start + k]], seed, n);
+						if (occupied[slot])
+							continue search;
+						for (int j = 0; j < k; j++)
+							if (candidate[j] == slot)
+								continue search;
+						candidate[k] = slot;
+					}
+					break;
+				}
+				displacements[b] = seed;
+				for (int k = 0; k < size; k++) {
+					occupied[candidate[k]] = true;
+					typeSlots[members[start + k]] = candidate[k];
+				}
+			}
+			return typeSlots;
+		}
+
+		private static ByteBuffer putInt(FileChannel channel, ByteBuffer b,
+				int n) throws IOException {
+			if (b.remaining() < 4)
+				drain(channel, b);
+			return b.putInt(n);
+		}
+
+		private static ByteBuffer put(FileChannel channel, ByteBuffer b,
+				byte[] bytes) throws IOException {
+			if (b.remaining() < bytes.length)
+				drain(channel, b);
+			if (b.remaining() < bytes.length) {
+				channel.write(ByteBuffer.wrap(bytes));
+				return b;
+			}
+			return b.put(bytes);
+		}
+
+		private static void drain(FileChannel channel, ByteBuffer b)
+				throws IOException {
+			b.flip();
+			while (b.hasRemaining())
+				channel.write(b);
+			b.clear();
+		}
+	}
+
+	/**
+	 * Build an index file from a model file.
+	 * 
+	 * @param args
+	 *            model file and index file paths
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static void main(String[] args) throws IOException,
+			ClassNotFoundException {
+		if (args.length != 2) {
+			System.err.println("MappedModel model-file index-file");
+			System.exit(-1);
+		}
+		write(new File(args[0]), new File(args[1]));
+	}
+}
@@ -1,33 +1,37 @@
 package example;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * A mapping of types to categories.
  * 
  * T is the type class. C is the category class.
  * 
+ * Models are immutable once constructed, so a single instance may be shared by
+ * any number of threads.
+ * 
  * @author W.P. McNeill
  */
-public class Model<T extends Comparable<T>, C extends Comparable<C>> implements Serializable {
+public class Model<T extends Comparable<T>, C extends Comparable<C>>
+		implements CategoryModel<T, C>, Serializable {
 	private static final long serialVersionUID = 6153442941071347565L;
 
 	/**
 	 * A map of types to category predictions.
 	 */
-	private Map<T, C> category;
+	private final Map<T, C> category;
 	/**
 	 * The category predicted by types not in the category map.
 	 */
-	private C defaultCategory;
+	private final C defaultCategory;
 
 	/**
 	 * Construct a model from a table of category counts.
@@ -40,11 +44,25 @@ public class Model<T extends Comparable<T>, C extends Comparable<C>> implements
 	 */
 	public Model(CategoryCounts<T, C> categoryCounts) {
 		defaultCategory = categoryCounts.getMostCommonCategory();
-		category = new HashMap<T, C>();
+		category = new HashMap<T, C>(categoryCounts.size() * 4 / 3 + 1);
 		for (Entry<T, Tally<C>> entry : categoryCounts.entrySet())
 			category.put(entry.getKey(), entry.getValue().getLargestKey());
 	}
 
+	/**
+	 * Construct a model from a table of category predictions.
+	 * 
+	 * @param category
+	 *            a map of types to categories, which the model takes ownership
+	 *            of
+	 * @param defaultCategory
+	 *            the category predicted for types not in the map
+	 */
+	public Model(Map<T, C> category, C defaultCategory) {
+		this.category = category;
+		this.defaultCategory = defaultCategory;
+	}
+
 	/**
 	 * The model's type assignment to the token.
 	 * 
@@ -55,8 +73,55 @@ public class Model<T extends Comparable<T>, C extends Comparable<C>> implements
 	 * @return the category of the type, e.g. "NN"
 	 */
 	public C getCategory(T type) {
-		return category.containsKey(type) ? category.get(type)
-				: defaultCategory;
+		C c = category.get(type);
+		// Only a null prediction needs a second lookup.
+		return null != c || category.containsKey(type) ? c : defaultCategory;
+	}
+
+	/**
+	 * The categories of a batch of types.
+	 * 
+	 * @param types
+	 *            types to tag
+	 * @param count
+	 *            the number of types to tag, starting at the beginning of the
+	 *            array
+	 * @param categories
+	 *            receives the category of each type
+	 * @return the number of types that are in the model
+	 */
+	public int getCategories(T[] types, int count, C[] categories) {
+		int known = 0;
+		for (int i = 0; i < count; i++) {
+			C c = category.get(types[i]);
+			if (null != c || category.containsKey(types[i])) {
+				categories[i] = c;
+				known++;
+			} else
+				categories[i] = defaultCategory;
+		}
+		return known;
+	}
+
+	/**
+	 * @return the category predicted for unknown types
+	 */
+	public C getDefaultCategory() {
+		return defaultCategory;
+	}
+
+	/**
+	 * @return the number of types in the model
+	 */
+	public int size() {
+		return category.size();
+	}
+
+	/**
+	 * @return the type to category predictions, excluding the default
+	 */
+	public Set<Entry<T, C>> entrySet() {
+		return Collections.unmodifiableMap(category).entrySet();
 	}
 
 	/**
@@ -64,29 +129,29 @@ public class Model<T extends Comparable<T>, C extends Comparable<C>> implements
 	 */
 	@Override
 	public String toString() {
-		String s = "";
-		for (Entry<T, C> entry : category.entrySet()) {
-			s = s.concat(entry.getKey() + "\t\t" + entry.getValue() + "\n");
-		}
-		return s.concat("Default category: " + defaultCategory);
+		StringBuilder s = new StringBuilder();
+		for (Entry<T, C> entry : category.entrySet())
+			s.append(entry.getKey()).append("\t\t").append(entry.getValue())
+					.append('\n');
+		return s.append("Default category: ").append(defaultCategory)
+				.toString();
 	}
 
 	/**
-	 * Print a serialized model file.
+	 * Print a model file.
 	 * 
 	 * @param args
 	 *            command line arguments
 	 * @throws IOException
-	 * @throws FileNotFoundException
 	 * @throws ClassNotFoundException
+	 * @see ModelFile#load(File)
 	 */
-	public static void main(String[] args) throws FileNotFoundException,
-			IOException, ClassNotFoundException {
-		File modelFile = new File(args[0]);
-		ObjectInputStream in;
-		in = new ObjectInputStream(new FileInputStream(modelFile));
-		@SuppressWarnings("unchecked")
-		Model<String, String> model = (Model<String, String>) in.readObject();
-		System.out.println(model.toString());
+	public static void main(String[] args) throws IOException,
+			ClassNotFoundException {
+		Model<String, String> model = ModelFile.load(new File(args[0]));
+		CountsReportWriter writer = new CountsReportWriter(Channels
+				.newChannel(System.out), CountsReportWriter.Format.TSV);
+		writer.write(model);
+		writer.flush();
 	}
 }
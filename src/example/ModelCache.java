@@ -0,0 +1,237 @@
+package example;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A process-wide cache of tagging models.
+ * 
+ * Models are keyed by the canonical path of the model file together with its
+ * modification time and length, so a model file that is rewritten on disk is
+ * loaded afresh while processing resources that still hold the old version
+ * continue to use it. Every processing resource that asks for the same model
+ * file receives the same immutable model instance.
+ * 
+ * Cache entries are reference counted. Each call to {@link #acquire(String)}
+ * must be balanced by a call to {@link #release(CategoryModel)}. A model is dropped
+ * from the cache when its last reference is released.
+ * 
+ * The shared cache records the time taken to load each model in the
+ * {@link TaggerMetrics} of the {@link TaggerAnalyzer}. Requests answered from
+ * the cache do not change it.
+ * 
+ * @author W.P. McNeill
+ */
+public class ModelCache {
+	static Logger logger = Logger.getLogger(ModelCache.class.getName());
+
+	private static final ModelCache sharedCache = new ModelCache(TaggerMetrics
+			.forName(TaggerAnalyzer.class.getSimpleName()));
+
+	/**
+	 * The identity of a version of a model file.
+	 */
+	private static final class Key {
+		private final String path;
+		private final long lastModified;
+		private final long length;
+
+		Key(File modelFile) throws IOException {
+			path = modelFile.getCanonicalPath();
+			lastModified = modelFile.lastModified();
+			length = modelFile.length();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key key = (Key) o;
+			return path.equals(key.path) && lastModified == key.lastModified
+					&& length == key.length;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * path.hashCode() + (int) lastModified)
+					+ (int) length;
+		}
+
+		@Override
+		public String toString() {
+			return path;
+		}
+	}
+
+	/**
+	 * A cached model and the number of outstanding references to it.
+	 */
+	private static final class Entry {
+		private final Key key;
+		private TextCategoryModel model;
+		private int references = 0;
+
+		Entry(Key key) {
+			this.key = key;
+		}
+	}
+
+	private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+	private final Map<CategoryModel<String, String>, Entry> loaded = new IdentityHashMap<CategoryModel<String, String>, Entry>();
+	private long hits = 0;
+	private long misses = 0;
+	private long loadTime = 0;
+	private final TaggerMetrics metrics;
+
+	/**
+	 * Create a cache that does not record metrics.
+	 */
+	public ModelCache() {
+		this(null);
+	}
+
+	/**
+	 * @param metrics
+	 *            metrics to record the time taken to load each model in, or
+	 *            null
+	 */
+	public ModelCache(TaggerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return the cache shared by all the tagging resources in this process
+	 */
+	public static ModelCache getSharedCache() {
+		return sharedCache;
+	}
+
+	/**
+	 * Get the model stored in a file, loading it if it is not already cached.
+	 * 
+	 * Model index files are mapped rather than loaded.
+	 * 
+	 * Only one thread loads a given model file. Other threads asking for the
+	 * same file wait for it to finish, while requests for other models
+	 * proceed.
+	 * 
+	 * @param modelPath
+	 *            path to a model file
+	 * @return the model
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public TextCategoryModel acquire(String modelPath)
+			throws IOException, ClassNotFoundException {
+		Key key = new Key(new File(modelPath));
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (null == entry) {
+				entry = new Entry(key);
+				entries.put(key, entry);
+			}
+			entry.references++;
+		}
+		synchronized (entry) {
+			if (null != entry.model) {
+				synchronized (this) {
+					hits++;
+				}
+				return entry.model;
+			}
+			long start = System.nanoTime();
+			try {
+				entry.model = ModelFile.open(new File(key.path));
+			} catch (IOException e) {
+				abandon(entry);
+				throw e;
+			} catch (ClassNotFoundException e) {
+				abandon(entry);
+				throw e;
+			}
+			long elapsed = System.nanoTime() - start;
+			synchronized (this) {
+				misses++;
+				loadTime += elapsed;
+				loaded.put(entry.model, entry);
+			}
+			if (null != metrics)
+				metrics.setModelLoadTime(elapsed);
+			logger.info("Loaded model " + key + " in " + elapsed / 1000000
+					+ " ms");
+			return entry.model;
+		}
+	}
+
+	/**
+	 * Release a reference to a model obtained from {@link #acquire(String)}.
+	 * 
+	 * @param model
+	 *            a model returned by this cache
+	 */
+	public synchronized void release(CategoryModel<String, String> model) {
+		Entry entry = loaded.get(model);
+		if (null == entry)
+			throw new IllegalArgumentException("Model is not in the cache.");
+		if (--entry.references == 0) {
+			loaded.remove(model);
+			forget(entry);
+		}
+	}
+
+	/**
+	 * Drop a reference to an entry whose model could not be loaded.
+	 */
+	private synchronized void abandon(Entry entry) {
+		if (--entry.references == 0)
+			forget(entry);
+	}
+
+	/**
+	 * Remove an entry from the key table unless it has been superseded.
+	 */
+	private void forget(Entry entry) {
+		if (entries.get(entry.key) == entry)
+			entries.remove(entry.key);
+	}
+
+	/**
+	 * @return the number of requests answered with an already loaded model
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of requests that had to load a model
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return the total time spent loading models in milliseconds
+	 */
+	public synchronized long getLoadTime() {
+		return loadTime / 1000000;
+	}
+
+	/**
+	 * @return the number of models currently in the cache
+	 */
+	public synchronized int size() {
+		return loaded.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Models " + size() + ", hits " + hits + ", misses " + misses
+				+ ", load time " + getLoadTime() + " ms";
+	}
+}
@@ -0,0 +1,208 @@
+package example;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+
+/**
+ * Builds smaller models by leaving out entries that carry little information.
+ * 
+ * An entry that predicts the default category is redundant, because unknown
+ * types get the default category anyway. Entries for types seen fewer than a
+ * minimum number of times, or whose most common category accounts for less
+ * than a minimum fraction of their tokens, are unreliable and are also left
+ * out so that those types get the default category.
+ * 
+ * @author W.P. McNeill
+ */
+public class ModelCompactor {
+	static Logger logger = Logger.getLogger(ModelCompactor.class.getName());
+
+	private final long minCount;
+	private final double minConfidence;
+	private int typesBefore = 0;
+	private int typesAfter = 0;
+
+	/**
+	 * Create a compactor that only removes redundant entries.
+	 */
+	public ModelCompactor() {
+		this(0, 0);
+	}
+
+	/**
+	 * @param minCount
+	 *            the smallest number of tokens a type must have to be kept
+	 * @param minConfidence
+	 *            the smallest fraction of a type's tokens its most common
+	 *            category must have for the type to be kept
+	 */
+	public ModelCompactor(long minCount, double minConfidence) {
+		this.minCount = minCount;
+		this.minConfidence = minConfidence;
+	}
+
+	/**
+	 * Build a compact model from counts.
+	 * 
+	 * @param categoryCounts
+	 *            type counts
+	 * @return a model without the redundant and unreliable entries
+	 */
+	public <T extends Comparable<T>, C extends Comparable<C>> Model<T, C> compact(
+			CategoryCounts<T, C> categoryCounts) {
+		C defaultCategory = categoryCounts.getMostCommonCategory();
+		Map<T, C> category = new HashMap<T, C>();
+		for (Entry<T, Tally<C>> entry : categoryCounts.entrySet()) {
+			Tally<C> tally = entry.getValue();
+			C largest = tally.getLargestKey();
+			long total = tally.getTotalCount();
+			if (equal(largest, defaultCategory) || total < minCount
+					|| tally.getCount(largest) < minConfidence * total)
+				continue;
+			category.put(entry.getKey(), largest);
+		}
+		typesBefore = categoryCounts.size();
+		typesAfter = category.size();
+		logger.info("Compacted model from " + typesBefore + " to "
+				+ typesAfter + " types");
+		return new Model<T, C>(category, defaultCategory);
+	}
+
+	/**
+	 * Remove the redundant entries from a model.
+	 * 
+	 * Models do not have counts, so only the entries that predict the default
+	 * category are removed.
+	 * 
+	 * @param model
+	 *            a model
+	 * @return a model that makes the same predictions with fewer entries
+	 */
+	public <T extends Comparable<T>, C extends Comparable<C>> Model<T, C> compact(
+			Model<T, C> model) {
+		Map<T, C> category = new HashMap<T, C>();
+		for (Entry<T, C> entry : model.entrySet())
+			if (!equal(entry.getValue(), model.getDefaultCategory()))
+				category.put(entry.getKey(), entry.getValue());
+		typesBefore = model.size();
+		typesAfter = category.size();
+		return new Model<T, C>(category, model.getDefaultCategory());
+	}
+
+	/**
+	 * @return the number of types in the model before the last compaction
+	 */
+	public int getTypesBefore() {
+		return typesBefore;
+	}
+
+	/**
+	 * @return the number of types in the model after the last compaction
+	 */
+	public int getTypesAfter() {
+		return typesAfter;
+	}
+
+	/**
+	 * The fraction of tokens in a held-out corpus that a model tags
+	 * correctly.
+	 * 
+	 * @param model
+	 *            a model
+	 * @param heldOut
+	 *            counts of the categories of the held-out tokens
+	 * @return the accuracy of the model
+	 */
+	public static <T extends Comparable<T>, C extends Comparable<C>> double accuracy(
+			CategoryModel<T, C> model, CategoryCounts<T, C> heldOut) {
+		long correct = 0, total = 0;
+		for (Entry<T, Tally<C>> entry : heldOut.entrySet()) {
+			Tally<C> tally = entry.getValue();
+			correct += tally.getCount(model.getCategory(entry.getKey()));
+			total += tally.getTotalCount();
+		}
+		return 0 == total ? 1 : (double) correct / total;
+	}
+
+	/**
+	 * The fraction of tokens in a held-out corpus that two models tag the
+	 * same way.
+	 * 
+	 * @param model1
+	 *            a model
+	 * @param model2
+	 *            another model
+	 * @param heldOut
+	 *            counts of the held-out tokens
+	 * @return the agreement rate of the models
+	 */
+	public static <T extends Comparable<T>, C extends Comparable<C>> double agreement(
+			CategoryModel<T, C> model1, CategoryModel<T, C> model2,
+			CategoryCounts<T, C> heldOut) {
+		long agreeing = 0, total = 0;
+		for (Entry<T, Tally<C>> entry : heldOut.entrySet()) {
+			long n = entry.getValue().getTotalCount();
+			if (equal(model1.getCategory(entry.getKey()), model2
+					.getCategory(entry.getKey())))
+				agreeing += n;
+			total += n;
+		}
+		return 0 == total ? 1 : (double) agreeing / total;
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return null == a ? null == b : a.equals(b);
+	}
+
+	/**
+	 * Compact the counts in a training checkpoint into a model file.
+	 * 
+	 * If a checkpoint of held-out data is given, the accuracy of the full and
+	 * compact models on it is reported.
+	 * 
+	 * @param args
+	 *            checkpoint, model file, minimum count, minimum confidence
+	 *            and optional held-out checkpoint
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		BasicConfigurator.configure();
+		if (args.length < 4) {
+			System.err.println("ModelCompactor checkpoint model "
+					+ "min-count min-confidence [held-out-checkpoint]");
+			System.exit(-1);
+		}
+		CategoryCounts<String, String> categoryCounts = Checkpoint.read(
+				new File(args[0])).getCategoryCounts();
+		ModelCompactor compactor = new ModelCompactor(Long
+				.parseLong(args[2]), Double.parseDouble(args[3]));
+		Model<String, String> full = categoryCounts.toModel();
+		Model<String, String> compact = compactor.compact(categoryCounts);
+		File modelFile = new File(args[1]);
+		File fullFile = File.createTempFile("full", ".ntgm");
+		try {
+			ModelFile.save(full, fullFile);
+			ModelFile.save(compact, modelFile);
+			System.out.printf("Types: %d before, %d after%n", compactor
+					.getTypesBefore(), compactor.getTypesAfter());
+			System.out.printf("Bytes: %d before, %d after%n", fullFile
+					.length(), modelFile.length());
+		} finally {
+			fullFile.delete();
+		}
+		if (args.length > 4) {
+			CategoryCounts<String, String> heldOut = Checkpoint.read(
+					new File(args[4])).getCategoryCounts();
+			System.out.printf("Held-out accuracy: %.4f before, %.4f after%n",
+					accuracy(full, heldOut), accuracy(compact, heldOut));
+			System.out.printf("Held-out agreement: %.4f%n", agreement(full,
+					compact, heldOut));
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package example;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamConstants;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loading and saving of model files.
+ * 
+ * Models are stored in a compact binary format. All numbers are big-endian.
+ * The file begins with a fixed size header:
+ * 
+ * <pre>
+ * int  magic number "NTGM"
+ * int  format version
+ * long number of types
+ * int  number of categories
+ * int  default category id
+ * long offset of the category dictionary
+ * long CRC-32 of everything after the header
+ * </pre>
+ * 
+ * The header is followed by one record per type, consisting of the type's
+ * UTF-8 bytes and the id of its category, and then by the category dictionary
+ * of UTF-8 category names. Lengths and ids are written as unsigned varints.
+ * Category ids are indexes into the dictionary plus one, zero standing for a
+ * null category.
+ * 
+ * Models written with Java serialization by earlier versions of this package
+ * can still be loaded, and converted with {@link #main(String[])}. Models may
+ * also be converted to memory-mapped indexes with {@link MappedModel}.
+ * 
+ * @author W.P. McNeill
+ */
+public class ModelFile {
+	/**
+	 * "NTGM"
+	 */
+	static final int MAGIC = 0x4E54474D;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 40;
+
+	/**
+	 * Load a model file in either the binary or the serialized format.
+	 * 
+	 * @param modelFile
+	 *            the model file
+	 * @return the model
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static Model<String, String> load(File modelFile)
+			throws IOException, ClassNotFoundException {
+		if (isSerialized(modelFile))
+			return loadSerialized(modelFile);
+		ModelReader reader = new ModelReader(modelFile);
+		try {
+			Map<String, String> category = new HashMap<String, String>(
+					(int) Math.min(Integer.MAX_VALUE,
+							reader.getTypeCount() * 4 / 3 + 1));
+			while (reader.next())
+				category.put(reader.getType(), reader.getCategory());
+			return new Model<String, String>(category,
+					reader.getDefaultCategory());
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Write a model in the binary format.
+	 * 
+	 * @param model
+	 *            the model
+	 * @param modelFile
+	 *            file to write
+	 * @throws IOException
+	 */
+	public static void save(Model<String, String> model, File modelFile)
+			throws IOException {
+		ModelWriter writer = new ModelWriter(modelFile);
+		try {
+			writer.write(model);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Open a model file for tagging.
+	 * 
+	 * Index files built by {@link MappedModel} are mapped into memory. Other
+	 * model files are loaded onto the heap and indexed with
+	 * {@link IndexedModel}.
+	 * 
+	 * @param modelFile
+	 *            a model or model index file
+	 * @return the model
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static TextCategoryModel open(File modelFile) throws IOException,
+			ClassNotFoundException {
+		if (isIndex(modelFile))
+			return new MappedModel(modelFile);
+		return new IndexedModel(load(modelFile));
+	}
+
+	/**
+	 * Is this file an index built by {@link MappedModel}?
+	 */
+	static boolean isIndex(File modelFile) throws IOException {
+		return readMagic(modelFile) == MappedModel.MAGIC;
+	}
+
+	/**
+	 * Is this file a Java serialized object?
+	 */
+	static boolean isSerialized(File modelFile) throws IOException {
+		int magic = readMagic(modelFile) >>> 16;
+		return magic == (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF);
+	}
+
+	/**
+	 * The first four bytes of a file.
+	 */
+	private static int readMagic(File modelFile) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(
+				modelFile));
+		try {
+			return in.readInt();
+		} finally {
+			in.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Model<String, String> loadSerialized(File modelFile)
+			throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new FileInputStream(
+				modelFile));
+		try {
+			return (Model<String, String>) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Convert a model file to the current binary format.
+	 * 
+	 * @param args
+	 *            input and output model paths
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static void main(String[] args) throws IOException,
+			ClassNotFoundException {
+		if (args.length != 2) {
+			System.err.println("ModelFile input-model output-model");
+			System.exit(-1);
+		}
+		save(load(new File(args[0])), new File(args[1]));
+	}
+}
@@ -0,0 +1,208 @@
+package example;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Streaming reader for the binary model file format.
+ * 
+ * The reader steps through the types in a model file one at a time:
+ * 
+ * <pre>
+ * while (reader.next())
+ * 	process(reader.getType(), reader.getCategory());
+ * </pre>
+ * 
+ * The file checksum is verified once the last type has been read.
+ * 
+ * @author W.P. McNeill
+ * @see ModelFile
+ */
+public class ModelReader implements Closeable {
+	private final FileInputStream in;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+	private final CRC32 checksum = new CRC32();
+	private final long typeCount;
+	private final long expectedChecksum;
+	private final String[] categories;
+	private final String defaultCategory;
+	private byte[] bytes = new byte[64];
+	private long read = 0;
+	private String type;
+	private String category;
+
+	/**
+	 * Open a model file and read its header and category dictionary.
+	 * 
+	 * @param modelFile
+	 *            a binary model file
+	 * @throws IOException
+	 */
+	public ModelReader(File modelFile) throws IOException {
+		in = new FileInputStream(modelFile);
+		channel = in.getChannel();
+		try {
+			ByteBuffer header = ByteBuffer.allocate(ModelFile.HEADER_SIZE);
+			readFully(header, 0);
+			if (header.getInt() != ModelFile.MAGIC)
+				throw new IOException(modelFile + " is not a model file.");
+			int version = header.getInt();
+			if (version != ModelFile.VERSION)
+				throw new IOException("Unsupported model file version "
+						+ version + ".");
+			typeCount = header.getLong();
+			categories = new String[header.getInt()];
+			int defaultCategoryId = header.getInt();
+			long dictionaryOffset = header.getLong();
+			expectedChecksum = header.getLong();
+			// Read the dictionary, which is at the end of the file, then
+			// return to the start of the types.
+			buffer.limit(0);
+			channel.position(dictionaryOffset);
+			for (int i = 0; i < categories.length; i++)
+				categories[i] = readString();
+			defaultCategory = category(defaultCategoryId);
+			buffer.limit(0);
+			checksum.reset();
+			channel.position(ModelFile.HEADER_SIZE);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Advance to the next type in the file.
+	 * 
+	 * @return true if there was another type, false at the end of the file
+	 * @throws IOException
+	 *             if the file cannot be read or its checksum does not match
+	 */
+	public boolean next() throws IOException {
+		if (read >= typeCount) {
+			if (read++ == typeCount)
+				verifyChecksum();
+			type = category = null;
+			return false;
+		}
+		type = readString();
+		category = category(readVarint());
+		read++;
+		return true;
+	}
+
+	/**
+	 * @return the current type
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return the category of the current type
+	 */
+	public String getCategory() {
+		return category;
+	}
+
+	/**
+	 * @return the number of types in the file
+	 */
+	public long getTypeCount() {
+		return typeCount;
+	}
+
+	/**
+	 * @return the category predicted for types not in the model
+	 */
+	public String getDefaultCategory() {
+		return defaultCategory;
+	}
+
+	/**
+	 * @return the distinct categories predicted by the model
+	 */
+	public String[] getCategories() {
+		return categories.clone();
+	}
+
+	/**
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private String category(int id) throws IOException {
+		if (id < 0 || id > categories.length)
+			throw new IOException("Invalid category id " + id + ".");
+		return id == 0 ? null : categories[id - 1];
+	}
+
+	/**
+	 * Read the rest of the file and compare its checksum to the header.
+	 */
+	private void verifyChecksum() throws IOException {
+		while (fill())
+			buffer.position(buffer.limit());
+		if (checksum.getValue() != expectedChecksum)
+			throw new IOException("Model file checksum mismatch.");
+	}
+
+	private String readString() throws IOException {
+		int length = readVarint();
+		if (bytes.length < length)
+			bytes = new byte[Math.max(length, 2 * bytes.length)];
+		int n = 0;
+		while (n < length) {
+			if (!buffer.hasRemaining() && !fill())
+				throw new EOFException();
+			int chunk = Math.min(length - n, buffer.remaining());
+			buffer.get(bytes, n, chunk);
+			n += chunk;
+		}
+		return new String(bytes, 0, length, ModelWriter.UTF8);
+	}
+
+	private int readVarint() throws IOException {
+		int n = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			if (!buffer.hasRemaining() && !fill())
+				throw new EOFException();
+			byte b = buffer.get();
+			n |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return n;
+		}
+		throw new IOException("Malformed model file.");
+	}
+
+	/**
+	 * Refill the buffer from the channel, adding the new bytes to the
+	 * checksum.
+	 * 
+	 * @return false at the end of the file
+	 */
+	private boolean fill() throws IOException {
+		buffer.compact();
+		int n = channel.read(buffer);
+		buffer.flip();
+		if (n > 0)
+			checksum.update(buffer.array(), buffer.limit() - n, n);
+		return n > 0;
+	}
+
+	private void readFully(ByteBuffer b, long position) throws IOException {
+		while (b.hasRemaining())
+			if (channel.read(b, position + b.position()) < 0)
+				throw new EOFException();
+		b.flip();
+	}
+}
@@ -0,0 +1,174 @@
+package example;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+/**
+ * Streaming writer for the binary model file format.
+ * 
+ * Types are written one at a time as they are produced, so a model never has
+ * to be held in memory in order to be saved. The category dictionary and the
+ * header are filled in when the writer is closed.
+ * 
+ * @author W.P. McNeill
+ * @see ModelFile
+ */
+public class ModelWriter implements Closeable {
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final FileOutputStream out;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+	private final CRC32 checksum = new CRC32();
+	private final Map<String, Integer> categoryIds = new HashMap<String, Integer>();
+	private final List<String> categories = new ArrayList<String>();
+	private String defaultCategory;
+	private long typeCount = 0;
+	private long offset = ModelFile.HEADER_SIZE;
+	private boolean closed = false;
+
+	/**
+	 * Open a model file for writing.
+	 * 
+	 * @param modelFile
+	 *            file to write
+	 * @throws IOException
+	 */
+	public ModelWriter(File modelFile) throws IOException {
+		out = new FileOutputStream(modelFile);
+		channel = out.getChannel();
+		// Reserve space for the header.
+		channel.position(ModelFile.HEADER_SIZE);
+	}
+
+	/**
+	 * Write an entire model.
+	 * 
+	 * @param model
+	 *            the model to write
+	 * @throws IOException
+	 */
+	public void write(Model<String, String> model) throws IOException {
+		for (Entry<String, String> entry : model.entrySet())
+			write(entry.getKey(), entry.getValue());
+		setDefaultCategory(model.getDefaultCategory());
+	}
+
+	/**
+	 * Write a single type prediction.
+	 * 
+	 * @param type
+	 *            a type, e.g. "bank"
+	 * @param category
+	 *            its category, e.g. "NN"
+	 * @throws IOException
+	 */
+	public void write(String type, String category) throws IOException {
+		writeString(type);
+		writeVarint(categoryId(category));
+		typeCount++;
+	}
+
+	/**
+	 * @param defaultCategory
+	 *            the category predicted for types not in the model
+	 */
+	public void setDefaultCategory(String defaultCategory) {
+		this.defaultCategory = defaultCategory;
+	}
+
+	/**
+	 * Write the category dictionary and header and close the file.
+	 * 
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			int defaultCategoryId = categoryId(defaultCategory);
+			long dictionaryOffset = offset;
+			for (String category : categories)
+				writeString(category);
+			flush();
+			ByteBuffer header = ByteBuffer.allocate(ModelFile.HEADER_SIZE);
+			header.putInt(ModelFile.MAGIC);
+			header.putInt(ModelFile.VERSION);
+			header.putLong(typeCount);
+			header.putInt(categories.size());
+			header.putInt(defaultCategoryId);
+			header.putLong(dictionaryOffset);
+			header.putLong(checksum.getValue());
+			header.flip();
+			while (header.hasRemaining())
+				channel.write(header, header.position());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * The dictionary id of a category, adding it if necessary.
+	 * 
+	 * Ids are offset by one so that zero can stand for a null category.
+	 */
+	private int categoryId(String category) {
+		if (null == category)
+			return 0;
+		Integer id = categoryIds.get(category);
+		if (null == id) {
+			categories.add(category);
+			id = categories.size();
+			categoryIds.put(category, id);
+		}
+		return id;
+	}
+
+	private void writeString(String s) throws IOException {
+		byte[] bytes = s.getBytes(UTF8);
+		writeVarint(bytes.length);
+		if (buffer.remaining() < bytes.length)
+			flush();
+		if (buffer.remaining() < bytes.length) {
+			// Too large for the buffer, so write it directly.
+			checksum.update(bytes);
+			ByteBuffer b = ByteBuffer.wrap(bytes);
+			while (b.hasRemaining())
+				channel.write(b);
+		} else
+			buffer.put(bytes);
+		offset += bytes.length;
+	}
+
+	private void writeVarint(int n) throws IOException {
+		if (buffer.remaining() < 5)
+			flush();
+		while ((n & ~0x7F) != 0) {
+			buffer.put((byte) ((n & 0x7F) | 0x80));
+			n >>>= 7;
+			offset++;
+		}
+		buffer.put((byte) n);
+		offset++;
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		checksum.update(buffer.array(), 0, buffer.limit());
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+}
@@ -0,0 +1,220 @@
+package example;
+
+import gate.Corpus;
+import gate.CorpusController;
+import gate.Document;
+import gate.Factory;
+import gate.creole.ExecutionException;
+import gate.creole.ResourceInstantiationException;
+import gate.util.GateException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs a GATE application over a set of documents on several threads.
+ * 
+ * The application is duplicated once per worker thread, and each worker runs
+ * its own copy over a private one-document corpus. Workers take documents
+ * from a shared list sorted largest first, so the long documents are spread
+ * across the workers and the short ones fill in at the end.
+ * 
+ * @author W.P. McNeill
+ */
+public class ParallelCorpusProcessor {
+	static Logger logger = Logger.getLogger(ParallelCorpusProcessor.class
+			.getName());
+
+	/**
+	 * Receives each document after the application has run over it.
+	 */
+	public interface DocumentHandler {
+		/**
+		 * Handle a processed document.
+		 * 
+		 * Calls for the same worker are made from a single thread. The
+		 * document is deleted after this returns.
+		 * 
+		 * @param worker
+		 *            index of the worker that processed the document
+		 * @param source
+		 *            the reference the document was loaded from
+		 * @param document
+		 *            the processed document
+		 * @throws GateException
+		 */
+		void processed(int worker, CorpusDocument source, Document document)
+				throws GateException;
+	}
+
+	/**
+	 * Largest documents first. Documents of unknown size go last.
+	 */
+	private static final class LargestFirst implements
+			Comparator<CorpusDocument> {
+		public int compare(CorpusDocument d1, CorpusDocument d2) {
+			return d1.getSize() == d2.getSize() ? 0
+					: d1.getSize() > d2.getSize() ? -1 : 1;
+		}
+	}
+
+	private final List<CorpusController> controllers = new ArrayList<CorpusController>();
+
+	/**
+	 * Create the worker applications.
+	 * 
+	 * @param controller
+	 *            the application, which is used by the first worker
+	 * @param workers
+	 *            the number of worker threads
+	 * @throws ResourceInstantiationException
+	 */
+	public ParallelCorpusProcessor(CorpusController controller, int workers)
+			throws ResourceInstantiationException {
+		if (workers < 1)
+			throw new IllegalArgumentException("Need at least one worker.");
+		controllers.add(controller);
+		for (int i = 1; i < workers; i++)
+			controllers.add((CorpusController) Factory.duplicate(controller));
+	}
+
+	/**
+	 * @return the number of worker threads
+	 */
+	public int getWorkerCount() {
+		return controllers.size();
+	}
+
+	/**
+	 * @param worker
+	 *            index of a worker
+	 * @return the copy of the application run by the worker
+	 */
+	public CorpusController getController(int worker) {
+		return controllers.get(worker);
+	}
+
+	/**
+	 * Run the application over a set of documents.
+	 * 
+	 * If any worker fails, the others stop after their current document and
+	 * the first failure is thrown.
+	 * 
+	 * @param documents
+	 *            the documents to process
+	 * @param handler
+	 *            receives the processed documents
+	 * @throws GateException
+	 */
+	public void process(List<CorpusDocument> documents,
+			final DocumentHandler handler) throws GateException {
+		final List<CorpusDocument> queue = new ArrayList<CorpusDocument>(
+				documents);
+		Collections.sort(queue, new LargestFirst());
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		ExecutorService executor = Executors.newFixedThreadPool(controllers
+				.size());
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < controllers.size(); i++) {
+				final int worker = i;
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() throws GateException {
+						boolean succeeded = false;
+						try {
+							work(worker, queue, next, failed, handler);
+							succeeded = true;
+						} finally {
+							if (!succeeded)
+								failed.set(true);
+						}
+						return null;
+					}
+				}));
+			}
+			// Wait for all the workers before reporting a failure.
+			GateException failure = null;
+			for (Future<Void> future : futures)
+				try {
+					waitFor(future);
+				} catch (GateException e) {
+					if (null == failure)
+						failure = e;
+				}
+			if (null != failure)
+				throw failure;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Process documents from the queue until it is empty or a worker fails.
+	 */
+	@SuppressWarnings("unchecked")
+	private void work(int worker, List<CorpusDocument> queue,
+			AtomicInteger next, AtomicBoolean failed, DocumentHandler handler)
+			throws GateException {
+		CorpusController controller = controllers.get(worker);
+		Corpus corpus = Factory.newCorpus("Worker " + worker);
+		try {
+			controller.setCorpus(corpus);
+			for (int d = next.getAndIncrement(); d < queue.size()
+					&& !failed.get(); d = next.getAndIncrement()) {
+				CorpusDocument source = queue.get(d);
+				logger.info("Worker " + worker + " processing " + source);
+				Document document = source.load();
+				try {
+					corpus.add(document);
+					controller.execute();
+					handler.processed(worker, source, document);
+				} finally {
+					corpus.clear();
+					Factory.deleteResource(document);
+				}
+			}
+		} finally {
+			controller.setCorpus(null);
+			Factory.deleteResource(corpus);
+		}
+	}
+
+	/**
+	 * Delete the duplicated worker applications, leaving the original.
+	 */
+	public void cleanup() {
+		for (int i = 1; i < controllers.size(); i++)
+			Factory.deleteResource(controllers.get(i));
+		controllers.subList(1, controllers.size()).clear();
+	}
+
+	/**
+	 * Wait for a worker to finish, rethrowing its failure.
+	 */
+	private static void waitFor(Future<Void> future) throws GateException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExecutionException(e);
+		} catch (java.util.concurrent.ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof GateException)
+				throw (GateException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new ExecutionException((Exception) cause);
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package example;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Type frequencies stored as a sparse matrix of interned ids.
+ * 
+ * This holds the same information as {@link CategoryCounts} in much less
+ * memory. Types and categories are interned in symbol tables, and the counts
+ * are kept in a single open-addressed hash table from (type id, category id)
+ * pairs to counts, so a type costs a few words rather than a map entry plus a
+ * {@link Tally}.
+ * 
+ * T is the type class. C is the category class.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author W.P. McNeill
+ */
+public class SparseCategoryCounts<T extends Comparable<T>, C extends Comparable<C>>
+		implements CountsAccumulator<T, C> {
+	private static final long EMPTY = -1;
+
+	private final SymbolTable<T> types;
+	private final SymbolTable<C> categories = new SymbolTable<C>();
+	/**
+	 * (type id, category id) cells packed into longs, EMPTY for an unused
+	 * slot
+	 */
+	private long[] cells;
+	/**
+	 * Counts of the cells
+	 */
+	private long[] counts;
+	/**
+	 * Number of used cells
+	 */
+	private int size = 0;
+	/**
+	 * Total counts of each category id
+	 */
+	private long[] categoryTotals = new long[16];
+
+	public SparseCategoryCounts() {
+		this(1024);
+	}
+
+	/**
+	 * @param capacity
+	 *            the expected number of types
+	 */
+	public SparseCategoryCounts(int capacity) {
+		types = new SymbolTable<T>(capacity);
+		int length = 16;
+		while (length < 2 * capacity)
+			length <<= 1;
+		cells = new long[length];
+		Arrays.fill(cells, EMPTY);
+		counts = new long[length];
+	}
+
+	public void addToken(T type, C category) {
+		add(types.intern(type), categories.intern(category), 1);
+	}
+
+	public SparseCategoryCounts<T, C> addCategoryCounts(
+			CategoryCounts<T, C> categoryCounts) {
+		for (Entry<T, Tally<C>> entry : categoryCounts.entrySet()) {
+			int type = types.intern(entry.getKey());
+			Tally<C> tally = entry.getValue();
+			for (int i = 0; i < tally.size(); i++)
+				add(type, categories.intern(tally.keyAt(i)), tally.countAt(i));
+		}
+		return this;
+	}
+
+	/**
+	 * Add the counts from another sparse counts object into this one.
+	 * 
+	 * @param categoryCounts
+	 *            other counts
+	 * @return this object
+	 */
+	public SparseCategoryCounts<T, C> addCategoryCounts(
+			SparseCategoryCounts<T, C> categoryCounts) {
+		for (int slot = 0; slot < categoryCounts.cells.length; slot++) {
+			long cell = categoryCounts.cells[slot];
+			if (cell == EMPTY)
+				continue;
+			add(types.intern(categoryCounts.types.get(typeId(cell))),
+					categories.intern(categoryCounts.categories
+							.get(categoryId(cell))),
+					categoryCounts.counts[slot]);
+		}
+		return this;
+	}
+
+	/**
+	 * The count of a type in a category.
+	 * 
+	 * @param type
+	 *            a type, e.g. "bank"
+	 * @param category
+	 *            a category, e.g. "NN"
+	 * @return the number of times the type was seen in the category
+	 */
+	public long getCount(T type, C category) {
+		int typeId = types.getId(type);
+		int categoryId = categories.getId(category);
+		if (typeId < 0 || categoryId < 0)
+			return 0;
+		int slot = find(cell(typeId, categoryId));
+		return cells[slot] == EMPTY ? 0 : counts[slot];
+	}
+
+	/**
+	 * @return the number of distinct types
+	 */
+	public int size() {
+		return types.size();
+	}
+
+	public C getMostCommonCategory() {
+		int best = -1;
+		for (int c = 0; c < categories.size(); c++)
+			if (best < 0 || isBetter(c, categoryTotals[c], best,
+					categoryTotals[best]))
+				best = c;
+		return best < 0 ? null : categories.get(best);
+	}
+
+	/**
+	 * Create a model directly from the counts.
+	 * 
+	 * The model is the same as the one built from the equivalent
+	 * {@link CategoryCounts}.
+	 * 
+	 * @see Model#Model(CategoryCounts)
+	 */
+	public Model<T, C> toModel() {
+		int[] best = new int[types.size()];
+		long[] bestCounts = new long[types.size()];
+		Arrays.fill(best, -1);
+		for (int slot = 0; slot < cells.length; slot++) {
+			long cell = cells[slot];
+			if (cell == EMPTY)
+				continue;
+			int type = typeId(cell);
+			int category = categoryId(cell);
+			if (best[type] < 0
+					|| isBetter(category, counts[slot], best[type],
+							bestCounts[type])) {
+				best[type] = category;
+				bestCounts[type] = counts[slot];
+			}
+		}
+		Map<T, C> category = new HashMap<T, C>(types.size() * 4 / 3 + 1);
+		for (int type = 0; type < best.length; type++)
+			category.put(types.get(type),
+					best[type] < 0 ? null : categories.get(best[type]));
+		return new Model<T, C>(category, getMostCommonCategory());
+	}
+
+	/**
+	 * Is a category count larger than another, using the {@link Tally}
+	 * ordering?
+	 */
+	private boolean isBetter(int category, long count, int other,
+			long otherCount) {
+		if (count != otherCount)
+			return count > otherCount;
+		return categories.get(category).compareTo(categories.get(other)) < 0;
+	}
+
+	private void add(int type, int category, long n) {
+		long cell = cell(type, category);
+		int slot = find(cell);
+		if (cells[slot] == EMPTY) {
+			cells[slot] = cell;
+			if (++size * 4 > cells.length * 3) {
+				rehash();
+				slot = find(cell);
+			}
+		}
+		counts[slot] += n;
+		if (category >= categoryTotals.length)
+			categoryTotals = Arrays.copyOf(categoryTotals,
+					2 * categoryTotals.length);
+		categoryTotals[category] += n;
+	}
+
+	private int find(long cell) {
+		int mask = cells.length - 1;
+		int slot = hash(cell) & mask;
+		while (cells[slot] != EMPTY && cells[slot] != cell)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void rehash() {
+		long[] oldCells = cells;
+		long[] oldCounts = counts;
+		cells = new long[2 * oldCells.length];
+		Arrays.fill(cells, EMPTY);
+		counts = new long[cells.length];
+		for (int i = 0; i < oldCells.length; i++)
+			if (oldCells[i] != EMPTY) {
+				int slot = find(oldCells[i]);
+				cells[slot] = oldCells[i];
+				counts[slot] = oldCounts[i];
+			}
+	}
+
+	private static long cell(int type, int category) {
+		return ((long) type << 32) | category;
+	}
+
+	private static int typeId(long cell) {
+		return (int) (cell >>> 32);
+	}
+
+	private static int categoryId(long cell) {
+		return (int) cell;
+	}
+
+	private static int hash(long cell) {
+		long h = cell * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
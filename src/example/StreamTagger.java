@@ -0,0 +1,367 @@
+package example;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Tags line-oriented text with a model without going through GATE.
+ * 
+ * Input has one token per line. A line is either just the token, a CoNLL line
+ * whose tab-separated columns include the token, or any other tab-separated
+ * line with the token in a given column. Each line is written back unchanged
+ * with a tab and the token's category appended. Blank lines, which separate
+ * sentences, and CoNLL comment lines starting with '#' are copied through.
+ * 
+ * Lines are scanned as UTF-8 bytes in large buffers and looked up in a
+ * {@link MappedModel} directly from those bytes, so tagging a token does not
+ * allocate. A model that is not already an index is indexed into a temporary
+ * file first.
+ * 
+ * This class and the model classes it uses do not depend on GATE or log4j. A
+ * tagger is not thread-safe, but several taggers may share a model.
+ * 
+ * @author W.P. McNeill
+ */
+public class StreamTagger {
+	/**
+	 * Input line formats
+	 */
+	public enum Format {
+		/**
+		 * The whole line is the token.
+		 */
+		TOKEN(0),
+		/**
+		 * CoNLL columns with the token in the second column
+		 */
+		CONLL(1),
+		/**
+		 * Tab-separated columns with the token in the first column
+		 */
+		TSV(0);
+
+		private final int defaultColumn;
+
+		private Format(int defaultColumn) {
+			this.defaultColumn = defaultColumn;
+		}
+
+		/**
+		 * @return the column containing the token when none is specified
+		 */
+		public int getDefaultColumn() {
+			return defaultColumn;
+		}
+	}
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final byte[] EMPTY = new byte[0];
+
+	private final MappedModel model;
+	private final Format format;
+	private final int column;
+	/**
+	 * UTF-8 encodings of the model's categories indexed by category id
+	 */
+	private final byte[][] encodings = new byte[256][];
+	/**
+	 * Input and output buffers, kept from one call to {@link #tag} to the
+	 * next
+	 */
+	private ByteBuffer inputBuffer = null;
+	private ByteBuffer outputBuffer = null;
+	private long tokenCount = 0;
+
+	/**
+	 * Tag with the default column of a format.
+	 * 
+	 * @param model
+	 *            the model
+	 * @param format
+	 *            the input format
+	 */
+	public StreamTagger(MappedModel model, Format format) {
+		this(model, format, format.defaultColumn);
+	}
+
+	/**
+	 * @param model
+	 *            the model
+	 * @param format
+	 *            the input format
+	 * @param column
+	 *            zero-based tab-separated column containing the token,
+	 *            ignored for the {@link Format#TOKEN} format
+	 */
+	public StreamTagger(MappedModel model, Format format, int column) {
+		this.model = model;
+		this.format = format;
+		this.column = column(format, column);
+	}
+
+	/**
+	 * Tag all the lines from an input channel.
+	 * 
+	 * A final line without a newline is tagged and given one. The output
+	 * channel is not closed.
+	 * 
+	 * The buffers are reused by later calls, so tagging many small inputs
+	 * with one tagger does not allocate.
+	 * 
+	 * @param in
+	 *            input lines
+	 * @param out
+	 *            receives the tagged lines
+	 * @throws IOException
+	 */
+	public void tag(ReadableByteChannel in, WritableByteChannel out)
+			throws IOException {
+		tagLines(in, out, format, column);
+	}
+
+	/**
+	 * Tag all the lines from an input channel in a format other than the
+	 * tagger's own.
+	 * 
+	 * This lets one tagger, and its buffers, serve inputs in several formats.
+	 * 
+	 * @param in
+	 *            input lines
+	 * @param out
+	 *            receives the tagged lines
+	 * @param format
+	 *            the input format
+	 * @param column
+	 *            zero-based tab-separated column containing the token,
+	 *            ignored for the {@link Format#TOKEN} format
+	 * @throws IOException
+	 */
+	public void tag(ReadableByteChannel in, WritableByteChannel out,
+			Format format, int column) throws IOException {
+		tagLines(in, out, format, column(format, column));
+	}
+
+	private void tagLines(ReadableByteChannel in, WritableByteChannel out,
+			Format format, int column) throws IOException {
+		if (null == inputBuffer) {
+			inputBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+			outputBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+		ByteBuffer input = inputBuffer;
+		ByteBuffer output = outputBuffer;
+		input.clear();
+		output.clear();
+		boolean end = false;
+		while (!end) {
+			end = in.read(input) < 0;
+			byte[] bytes = input.array();
+			int limit = input.position();
+			int start = 0;
+			for (int i = 0; i < limit; i++)
+				if (bytes[i] == '\n') {
+					output = tagLine(bytes, start, i, format, column,
+							output, out);
+					start = i + 1;
+				}
+			if (end && start < limit) {
+				output = tagLine(bytes, start, limit, format, column,
+						output, out);
+				start = limit;
+			}
+			// Move the partial last line to the front of the buffer.
+			input.flip();
+			input.position(start);
+			input.compact();
+			if (!input.hasRemaining())
+				inputBuffer = input = grow(input);
+		}
+		outputBuffer = output;
+		drain(output, out);
+	}
+
+	/**
+	 * @return the number of tokens tagged so far
+	 */
+	public long getTokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * Write a line followed by its category.
+	 * 
+	 * @return the output buffer, which may have been replaced by a larger one
+	 */
+	private ByteBuffer tagLine(byte[] bytes, int start, int end,
+			Format format, int column, ByteBuffer output,
+			WritableByteChannel out) throws IOException {
+		if (end > start && bytes[end - 1] == '\r')
+			end--;
+		byte[] category = null;
+		if (end > start && !(format == Format.CONLL && bytes[start] == '#')) {
+			int tokenStart = start;
+			int tokenEnd = end;
+			if (format != Format.TOKEN) {
+				for (int c = 0; c < column && tokenStart < end; c++)
+					tokenStart = Math.min(indexOf(bytes, (byte) '\t',
+							tokenStart, end) + 1, end);
+				tokenEnd = indexOf(bytes, (byte) '\t', tokenStart, end);
+			}
+			category = encoding(model.getCategoryId(bytes, tokenStart,
+					tokenEnd - tokenStart));
+			tokenCount++;
+		}
+		int length = end - start + 1
+				+ (null == category ? 0 : category.length + 1);
+		if (output.remaining() < length) {
+			drain(output, out);
+			if (output.capacity() < length)
+				output = ByteBuffer.allocate(length);
+		}
+		output.put(bytes, start, end - start);
+		if (null != category) {
+			output.put((byte) '\t');
+			output.put(category);
+		}
+		output.put((byte) '\n');
+		return output;
+	}
+
+	/**
+	 * Check a token column, which is always 0 for the {@link Format#TOKEN}
+	 * format.
+	 */
+	private static int column(Format format, int column) {
+		if (column < 0)
+			throw new IllegalArgumentException("Invalid column " + column);
+		return format == Format.TOKEN ? 0 : column;
+	}
+
+	private byte[] encoding(int categoryId)
+			throws UnsupportedEncodingException {
+		byte[] encoding = encodings[categoryId];
+		if (null == encoding) {
+			String category = model.category(categoryId);
+			encoding = null == category ? EMPTY : category.getBytes("UTF-8");
+			encodings[categoryId] = encoding;
+		}
+		return encoding;
+	}
+
+	/**
+	 * The position of a byte in a range, or the end of the range if it does
+	 * not occur.
+	 */
+	private static int indexOf(byte[] bytes, byte b, int start, int end) {
+		for (int i = start; i < end; i++)
+			if (bytes[i] == b)
+				return i;
+		return end;
+	}
+
+	/**
+	 * Double the size of a full buffer to make room for a long line.
+	 */
+	private static ByteBuffer grow(ByteBuffer buffer) {
+		ByteBuffer larger = ByteBuffer.wrap(Arrays.copyOf(buffer.array(),
+				2 * buffer.capacity()));
+		larger.position(buffer.position());
+		return larger;
+	}
+
+	private static void drain(ByteBuffer buffer, WritableByteChannel out)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			out.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Open a model file as an index, building a temporary index if it is a
+	 * binary or serialized model.
+	 * 
+	 * @param modelFile
+	 *            a model file
+	 * @return the mapped model
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static MappedModel openIndex(File modelFile) throws IOException,
+			ClassNotFoundException {
+		if (ModelFile.isIndex(modelFile))
+			return new MappedModel(modelFile);
+		File indexFile = File.createTempFile("model", ".ntgi");
+		indexFile.deleteOnExit();
+		MappedModel.write(modelFile, indexFile);
+		return new MappedModel(indexFile);
+	}
+
+	private static void usage() {
+		System.err.println("StreamTagger [-format token|conll|tsv] "
+				+ "[-column n] [-output file] model [input-file...]");
+		System.exit(-1);
+	}
+
+	/**
+	 * Tag files, or standard input if no files are given, and write the
+	 * result to standard output or an output file.
+	 * 
+	 * @param args
+	 *            options, a model file, and input files
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static void main(String[] args) throws IOException,
+			ClassNotFoundException {
+		Format format = Format.TOKEN;
+		int column = -1;
+		String outputFile = null;
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("-"); i += 2) {
+			if (i + 1 == args.length)
+				usage();
+			if (args[i].equals("-format"))
+				format = Format.valueOf(args[i + 1].toUpperCase());
+			else if (args[i].equals("-column"))
+				column = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-output"))
+				outputFile = args[i + 1];
+			else
+				usage();
+		}
+		if (i == args.length)
+			usage();
+		MappedModel model = openIndex(new File(args[i++]));
+		StreamTagger tagger = column < 0 ? new StreamTagger(model, format)
+				: new StreamTagger(model, format, column);
+		WritableByteChannel out = null == outputFile ? Channels
+				.newChannel(System.out) : new FileOutputStream(outputFile)
+				.getChannel();
+		long start = System.nanoTime();
+		try {
+			if (i == args.length)
+				tagger.tag(Channels.newChannel(System.in), out);
+			for (; i < args.length; i++) {
+				FileInputStream in = new FileInputStream(args[i]);
+				try {
+					tagger.tag(in.getChannel(), out);
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("Tagged %d tokens in %.2fs (%.0f tokens/s)%n", tagger
+				.getTokenCount(), seconds, tagger.getTokenCount() / seconds);
+	}
+}
@@ -0,0 +1,139 @@
+package example;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A table that interns objects as small consecutive integer ids.
+ * 
+ * Ids are assigned in the order in which objects are first seen, starting at
+ * zero. The table is an open-addressed hash of ids, so it costs a few words
+ * per symbol and lookups do not allocate.
+ * 
+ * Symbols may not be null. This class is not thread-safe.
+ * 
+ * @author W.P. McNeill
+ * 
+ * @param <K>
+ *            the symbol class
+ */
+public class SymbolTable<K> implements Serializable {
+	private static final long serialVersionUID = 2749014586025373180L;
+
+	/**
+	 * Symbols indexed by id.
+	 */
+	private Object[] symbols;
+	private int size = 0;
+	/**
+	 * Hash table of ids plus one, zero marking an empty slot.
+	 */
+	private transient int[] table;
+
+	public SymbolTable() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity
+	 *            the expected number of symbols
+	 */
+	public SymbolTable(int capacity) {
+		symbols = new Object[Math.max(capacity, 1)];
+		table = new int[tableSize(capacity)];
+	}
+
+	/**
+	 * The id of a symbol, adding it to the table if necessary.
+	 * 
+	 * @param symbol
+	 *            a symbol
+	 * @return its id
+	 */
+	public int intern(K symbol) {
+		int slot = find(symbol);
+		if (table[slot] != 0)
+			return table[slot] - 1;
+		if (size == symbols.length)
+			symbols = Arrays.copyOf(symbols, 2 * size);
+		symbols[size] = symbol;
+		table[slot] = ++size;
+		if (2 * size > table.length)
+			rehash(2 * table.length);
+		return size - 1;
+	}
+
+	/**
+	 * The id of a symbol.
+	 * 
+	 * @param symbol
+	 *            a symbol
+	 * @return its id, or -1 if it is not in the table
+	 */
+	public int getId(Object symbol) {
+		return table[find(symbol)] - 1;
+	}
+
+	/**
+	 * The symbol with a given id.
+	 * 
+	 * @param id
+	 *            an id returned by {@link #intern(Object)}
+	 * @return the symbol
+	 */
+	@SuppressWarnings("unchecked")
+	public K get(int id) {
+		if (id >= size)
+			throw new IndexOutOfBoundsException("No symbol " + id);
+		return (K) symbols[id];
+	}
+
+	/**
+	 * @return the number of symbols in the table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The slot holding a symbol or the empty slot where it belongs.
+	 */
+	private int find(Object symbol) {
+		int mask = table.length - 1;
+		int slot = hash(symbol) & mask;
+		while (table[slot] != 0 && !symbols[table[slot] - 1].equals(symbol))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void rehash(int length) {
+		table = new int[length];
+		int mask = length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = hash(symbols[id]) & mask;
+			while (table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = id + 1;
+		}
+	}
+
+	private static int hash(Object symbol) {
+		int h = symbol.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int tableSize(int capacity) {
+		int length = 16;
+		while (length < 2 * capacity)
+			length <<= 1;
+		return length;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		rehash(tableSize(size));
+	}
+}
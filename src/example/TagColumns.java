@@ -0,0 +1,224 @@
+package example;
+
+import gate.Annotation;
+import gate.Document;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The categories of all the tokens in a document stored as columns.
+ * 
+ * This holds the same information as a category feature on every token
+ * annotation in a few primitive arrays: the ids and offsets of the tokens in
+ * document order and an id for each token's category in a small dictionary.
+ * It is stored as a single document feature, which is much cheaper to create
+ * and to persist than a feature map entry per token.
+ * 
+ * @author W.P. McNeill
+ */
+public class TagColumns implements Serializable {
+	private static final long serialVersionUID = -3496307271563284920L;
+
+	/**
+	 * The document feature that holds the columns
+	 */
+	public static final String FEATURE = "tagColumns";
+
+	private int size = 0;
+	private int[] annotationIds;
+	private long[] starts;
+	private long[] ends;
+	/**
+	 * Category ids plus one, zero standing for a null category
+	 */
+	private short[] categoryIds;
+	private String[] categories = new String[1];
+	private transient Map<String, Short> dictionary = new HashMap<String, Short>();
+
+	/**
+	 * @param capacity
+	 *            the expected number of tokens
+	 */
+	public TagColumns(int capacity) {
+		capacity = Math.max(capacity, 1);
+		annotationIds = new int[capacity];
+		starts = new long[capacity];
+		ends = new long[capacity];
+		categoryIds = new short[capacity];
+	}
+
+	/**
+	 * Add a token.
+	 * 
+	 * Tokens must be added in document order.
+	 * 
+	 * @param token
+	 *            a token annotation
+	 * @param category
+	 *            its category
+	 */
+	public void add(Annotation token, String category) {
+		long start = token.getStartNode().getOffset();
+		if (size > 0 && start < starts[size - 1])
+			throw new IllegalArgumentException("Token " + token.getId()
+					+ " is out of order.");
+		if (size == starts.length) {
+			annotationIds = Arrays.copyOf(annotationIds, 2 * size);
+			starts = Arrays.copyOf(starts, 2 * size);
+			ends = Arrays.copyOf(ends, 2 * size);
+			categoryIds = Arrays.copyOf(categoryIds, 2 * size);
+		}
+		annotationIds[size] = token.getId();
+		starts[size] = start;
+		ends[size] = token.getEndNode().getOffset();
+		categoryIds[size] = categoryId(category);
+		size++;
+	}
+
+	/**
+	 * @return the number of tokens
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the id of the i-th token's annotation
+	 */
+	public int getAnnotationId(int i) {
+		checkIndex(i);
+		return annotationIds[i];
+	}
+
+	/**
+	 * @return the start offset of the i-th token
+	 */
+	public long getStart(int i) {
+		checkIndex(i);
+		return starts[i];
+	}
+
+	/**
+	 * @return the end offset of the i-th token
+	 */
+	public long getEnd(int i) {
+		checkIndex(i);
+		return ends[i];
+	}
+
+	/**
+	 * @return the category of the i-th token
+	 */
+	public String getCategory(int i) {
+		checkIndex(i);
+		return categories[categoryIds[i]];
+	}
+
+	/**
+	 * The category of a token annotation.
+	 * 
+	 * @param token
+	 *            a token annotation
+	 * @return its category, or null if it was not tagged
+	 */
+	public String getCategory(Annotation token) {
+		int i = indexOf(token);
+		return i < 0 ? null : categories[categoryIds[i]];
+	}
+
+	/**
+	 * The index of a token annotation.
+	 * 
+	 * @param token
+	 *            a token annotation
+	 * @return the token's index, or -1 if it was not tagged
+	 */
+	public int indexOf(Annotation token) {
+		long start = token.getStartNode().getOffset();
+		int i = Arrays.binarySearch(starts, 0, size, start);
+		if (i < 0)
+			return -1;
+		// Several tokens may start at the same offset.
+		while (i > 0 && starts[i - 1] == start)
+			i--;
+		for (; i < size && starts[i] == start; i++)
+			if (annotationIds[i] == token.getId())
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Release unused capacity.
+	 */
+	public void trim() {
+		annotationIds = Arrays.copyOf(annotationIds, size);
+		starts = Arrays.copyOf(starts, size);
+		ends = Arrays.copyOf(ends, size);
+		categoryIds = Arrays.copyOf(categoryIds, size);
+	}
+
+	/**
+	 * The tag columns of a document.
+	 * 
+	 * @param document
+	 *            a document
+	 * @return its tag columns, or null if it has none
+	 */
+	public static TagColumns get(Document document) {
+		return (TagColumns) document.getFeatures().get(FEATURE);
+	}
+
+	/**
+	 * The category of a token, wherever it is stored.
+	 * 
+	 * This reads the document's tag columns if it has them and the token's
+	 * features otherwise, so code that reads tags works with either kind of
+	 * output.
+	 * 
+	 * @param document
+	 *            the document containing the token
+	 * @param token
+	 *            a token annotation
+	 * @param categoryFeatureName
+	 *            the token feature that holds categories
+	 * @return the token's category
+	 */
+	public static String getCategory(Document document, Annotation token,
+			String categoryFeatureName) {
+		TagColumns columns = get(document);
+		if (null != columns) {
+			int i = columns.indexOf(token);
+			if (i >= 0)
+				return columns.getCategory(i);
+		}
+		return (String) token.getFeatures().get(categoryFeatureName);
+	}
+
+	private short categoryId(String category) {
+		if (null == category)
+			return 0;
+		if (null == dictionary) {
+			dictionary = new HashMap<String, Short>();
+			for (short id = 1; id < categories.length; id++)
+				dictionary.put(categories[id], id);
+		}
+		Short id = dictionary.get(category);
+		if (null == id) {
+			if (categories.length > Short.MAX_VALUE)
+				throw new IllegalStateException("Too many categories.");
+			id = (short) categories.length;
+			categories = Arrays.copyOf(categories, categories.length + 1);
+			categories[id] = category;
+			dictionary.put(category, id);
+		}
+		return id;
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("No token " + i);
+	}
+}
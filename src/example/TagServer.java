@@ -0,0 +1,271 @@
+package example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server that tags with a model it keeps loaded.
+ * 
+ * This avoids the cost of starting a JVM, initializing GATE and loading the
+ * model for every tagging job. The server listens on the loopback interface
+ * and has these endpoints:
+ * 
+ * <dl>
+ * <dt>POST /tag</dt>
+ * <dd>Tag a batch of token sequences. The request body is UTF-8 text with one
+ * token per line and a blank line between sequences, and the response has
+ * each line followed by a tab and its category. The optional format and
+ * column query parameters select a {@link StreamTagger.Format} and the token
+ * column, e.g. /tag?format=conll.</dd>
+ * <dt>GET /health</dt>
+ * <dd>Reports that the server is up and which model it is using.</dd>
+ * <dt>GET /stats</dt>
+ * <dd>Request counts, throughput and latencies.</dd>
+ * </dl>
+ * 
+ * Requests are handled by a fixed pool of threads, each with its own
+ * {@link StreamTagger} for requests in every format, which all share a single
+ * {@link MappedModel}. Every token of a request is looked up straight from the
+ * request bytes, so a request of any size is tagged in one pass without
+ * allocating per token. The statistics are also published as the
+ * {@link TaggerMetrics} named TagServer.
+ * 
+ * @author W.P. McNeill
+ */
+public class TagServer {
+	static Logger logger = Logger.getLogger(TagServer.class.getName());
+
+	private static final String TEXT = "text/plain; charset=UTF-8";
+
+	private final MappedModel model;
+	private final String modelName;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final TaggerMetrics metrics = TaggerMetrics.forName("TagServer");
+	/**
+	 * A tagger for each request thread
+	 */
+	private final ThreadLocal<StreamTagger> taggers = new ThreadLocal<StreamTagger>();
+	private final AtomicInteger errors = new AtomicInteger();
+	private final long started = System.currentTimeMillis();
+
+	/**
+	 * Create a server. It does not accept requests until it is started.
+	 * 
+	 * @param modelFile
+	 *            a model or model index file
+	 * @param port
+	 *            the port to listen on, or 0 for any free port
+	 * @param threads
+	 *            number of request threads
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public TagServer(File modelFile, int port, int threads)
+			throws IOException, ClassNotFoundException {
+		long start = System.nanoTime();
+		model = StreamTagger.openIndex(modelFile);
+		metrics.setModelLoadTime(System.nanoTime() - start);
+		modelName = modelFile.getPath();
+		server = HttpServer.create(new InetSocketAddress(InetAddress
+				.getByName("127.0.0.1"), port), 0);
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger n = new AtomicInteger();
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Tag server "
+						+ n.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext("/tag", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				tag(exchange);
+			}
+		});
+		server.createContext("/health", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "OK " + model + " from " + modelName
+						+ "\n");
+			}
+		});
+		server.createContext("/stats", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, getStats() + "\n");
+			}
+		});
+	}
+
+	/**
+	 * Start accepting requests.
+	 */
+	public void start() {
+		server.start();
+		logger.info("Tagging with " + model + " on port " + getPort());
+	}
+
+	/**
+	 * Stop accepting requests and wait up to a second for the ones in
+	 * progress to finish.
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	/**
+	 * @return the port the server is listening on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return a summary of the requests handled so far
+	 */
+	public String getStats() {
+		return String.format("uptime %ds, %d requests, %d errors, "
+				+ "%d tokens, %.0f tokens/s, latency mean %.3fms "
+				+ "median %.3fms 99th %.3fms max %.3fms, model load %.1fms",
+				(System.currentTimeMillis() - started) / 1000, metrics
+						.getDocuments(), errors.get(), metrics.getTokens(),
+				metrics.getTokensPerSecond(), metrics.getMeanLatencyMillis(),
+				metrics.getMedianLatencyMillis(), metrics
+						.getLatency99thPercentileMillis(), metrics
+						.getMaxLatencyMillis(), metrics.getModelLoadMillis());
+	}
+
+	/**
+	 * Tag the body of a request, streaming the result back.
+	 */
+	private void tag(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				respond(exchange, 405, "Use POST.\n");
+				return;
+			}
+			StreamTagger.Format format = StreamTagger.Format.TOKEN;
+			int column = -1;
+			try {
+				String query = exchange.getRequestURI().getRawQuery();
+				if (null != query)
+					for (String parameter : query.split("&")) {
+						String[] nameValue = parameter.split("=", 2);
+						String value = nameValue.length > 1 ? nameValue[1] : "";
+						if ("format".equals(nameValue[0]))
+							format = StreamTagger.Format.valueOf(value
+									.toUpperCase());
+						else if ("column".equals(nameValue[0])) {
+							column = Integer.parseInt(value);
+							if (column < 0)
+								throw new IllegalArgumentException(
+										"Invalid column " + column);
+						} else
+							throw new IllegalArgumentException(
+									"Unknown parameter " + nameValue[0]);
+					}
+			} catch (IllegalArgumentException e) {
+				respond(exchange, 400, e.getMessage() + "\n");
+				return;
+			}
+			if (column < 0)
+				column = format.getDefaultColumn();
+			StreamTagger tagger = tagger();
+			long before = tagger.getTokenCount();
+			exchange.getResponseHeaders().set("Content-Type", TEXT);
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream body = exchange.getResponseBody();
+			tagger.tag(Channels.newChannel(exchange.getRequestBody()),
+					Channels.newChannel(body), format, column);
+			body.close();
+			metrics.recordDocument(tagger.getTokenCount() - before,
+					System.nanoTime() - start);
+		} catch (IOException e) {
+			errors.incrementAndGet();
+			throw e;
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * This thread's tagger, which is used for requests in every format so
+	 * that its buffers are reused.
+	 */
+	private StreamTagger tagger() {
+		StreamTagger tagger = taggers.get();
+		if (null == tagger) {
+			tagger = new StreamTagger(model, StreamTagger.Format.TOKEN);
+			taggers.set(tagger);
+		}
+		return tagger;
+	}
+
+	private static void respond(HttpExchange exchange, int status,
+			String text) throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", TEXT);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream body = exchange.getResponseBody();
+		body.write(bytes);
+		body.close();
+	}
+
+	/**
+	 * Serve a model until the process is killed.
+	 * 
+	 * @param args
+	 *            options and a model file
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static void main(String[] args) throws IOException,
+			ClassNotFoundException {
+		BasicConfigurator.configure();
+		int port = 8642;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int a = 0;
+		while (a < args.length && args[a].startsWith("-")) {
+			String option = args[a++];
+			if ("-port".equals(option))
+				port = Integer.parseInt(args[a++]);
+			else if ("-threads".equals(option))
+				threads = Integer.parseInt(args[a++]);
+			else {
+				System.err.println("Unknown option " + option);
+				System.exit(-1);
+			}
+		}
+		if (a != args.length - 1) {
+			System.err.println("TagServer [-port n] [-threads n] model");
+			System.exit(-1);
+		}
+		final TagServer server = new TagServer(new File(args[a]), port,
+				threads);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.stop();
+			}
+		});
+		server.start();
+	}
+}
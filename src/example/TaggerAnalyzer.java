@@ -1,17 +1,17 @@
 package example;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.util.Arrays;
 
 import gate.Annotation;
-import gate.FeatureMap;
+import gate.AnnotationSet;
 import gate.creole.ExecutionException;
 import gate.creole.metadata.CreoleParameter;
 import gate.creole.metadata.CreoleResource;
+import gate.creole.metadata.Optional;
 import gate.creole.metadata.RunTime;
+import gate.util.OffsetComparator;
 
 /**
  * A GATE language analyzer that assigns part-of-speech categories to tokens
@@ -23,56 +23,172 @@ import gate.creole.metadata.RunTime;
 public class TaggerAnalyzer extends TaggingMachineLearner {
 	private static final long serialVersionUID = -8136185449506503026L;
 
-	// Creole parameter
+	// Creole parameters
 	private String modelPath;
+	private Boolean columnarOutput;
 
 	/**
-	 * Load the tagging model from a path in a runtime parameter.
+	 * A model set by the caller, which overrides modelPath.
+	 */
+	private transient CategoryModel<String, String> suppliedModel;
+	/**
+	 * The model in use, shared with the other analyzers in this process.
+	 */
+	private transient CategoryModel<String, String> model;
+	/**
+	 * Tokens, types and categories of the batch being tagged
+	 */
+	private transient Annotation[] batchTokens;
+	private transient String[] batchTypes;
+	private transient String[] batchCategories;
+	/**
+	 * The path from which model was acquired.
+	 */
+	private transient String acquiredModelPath;
+	/**
+	 * The modification time of the model file when model was acquired.
+	 */
+	private transient long acquiredModelVersion;
+
+	/**
+	 * Get the tagging model from a path in a runtime parameter.
+	 * 
+	 * The model is taken from the shared {@link ModelCache}, so it is read from
+	 * disk once and then reused for every document and by every copy of this
+	 * resource. A new model is acquired if the path or the file changes.
+	 * 
+	 * A model set with {@link #setModel(CategoryModel)} is used instead.
 	 * 
 	 * @return the tagging model
 	 * @throws ExecutionException
 	 */
-	@SuppressWarnings("unchecked")
-	private Model<String, String> loadModel() throws ExecutionException {
-		Model<String, String> model;
-
+	private CategoryModel<String, String> getModel()
+			throws ExecutionException {
+		if (null != suppliedModel)
+			return suppliedModel;
 		if (null == modelPath || "".equals(modelPath))
 			throw new ExecutionException("Model path not set.");
 		File modelFile = new File(modelPath);
-		ObjectInputStream in;
-		try {
-			in = new ObjectInputStream(new FileInputStream(modelFile));
-		} catch (FileNotFoundException e) {
+		if (null != model && modelPath.equals(acquiredModelPath)
+				&& modelFile.lastModified() == acquiredModelVersion)
+			return model;
+		releaseModel();
+		if (!modelFile.exists())
 			throw new ExecutionException(modelPath + " does not exist.");
-		} catch (IOException e) {
-			throw new ExecutionException("Cannot open " + modelPath + ".");
-		}
 		try {
-			model = (Model<String, String>) in.readObject();
+			model = ModelCache.getSharedCache().acquire(modelPath);
 		} catch (IOException e) {
 			throw new ExecutionException("Cannot read from " + modelPath + ".");
 		} catch (ClassNotFoundException e) {
 			throw new ExecutionException("Cannot deserialize " + modelPath
 					+ ".");
 		}
+		acquiredModelPath = modelPath;
+		acquiredModelVersion = modelFile.lastModified();
 		return model;
 	}
 
+	/**
+	 * Return the model in use to the shared cache.
+	 */
+	private void releaseModel() {
+		if (null != model) {
+			ModelCache.getSharedCache().release(model);
+			model = null;
+			acquiredModelPath = null;
+		}
+	}
+
 	/**
 	 * Iterate over tokens in a document adding a category feature.
 	 * 
+	 * All the tokens are tagged with a single call to the model if it supports
+	 * batches. The arrays are kept between documents, so tagging does not
+	 * allocate once they are large enough.
+	 * 
+	 * With columnar output the categories are written to a single
+	 * {@link TagColumns} document feature instead of to each token.
+	 * 
+	 * The document's latency and the number of tokens with unknown types are
+	 * recorded in the {@link TaggerMetrics}.
+	 * 
 	 * @see gate.creole.AbstractProcessingResource#execute()
 	 */
 	@Override
 	public void execute() throws ExecutionException {
+		long start = System.nanoTime();
 		super.execute();
-		Model<String, String> model = loadModel();
-		for (Annotation tokenAnnotation : getTokenAnnotations()) {
-			FeatureMap annotationFeatures = tokenAnnotation.getFeatures();
-			String type = getType(annotationFeatures);
-			String category = model.getCategory(type);
-			annotationFeatures.put(categoryFeatureName, category);
+		CategoryModel<String, String> model = getModel();
+		AnnotationSet tokenAnnotations = getTokenAnnotations();
+		int n = tokenAnnotations.size();
+		if (null == batchTokens || batchTokens.length < n) {
+			batchTokens = new Annotation[n];
+			batchTypes = new String[n];
+			batchCategories = new String[n];
+		}
+		try {
+			int i = 0;
+			for (Annotation tokenAnnotation : tokenAnnotations)
+				batchTokens[i++] = tokenAnnotation;
+			boolean columnar = null != columnarOutput && columnarOutput;
+			if (columnar)
+				Arrays.sort(batchTokens, 0, n, new OffsetComparator());
+			for (i = 0; i < n; i++)
+				batchTypes[i] = getType(batchTokens[i].getFeatures());
+			// Other models do not say which types they know.
+			int known = -1;
+			if (model instanceof TextCategoryModel)
+				known = ((TextCategoryModel) model).getCategories(batchTypes,
+						n, batchCategories);
+			else if (model instanceof Model)
+				known = ((Model<String, String>) model).getCategories(
+						batchTypes, n, batchCategories);
+			else
+				for (i = 0; i < n; i++)
+					batchCategories[i] = model.getCategory(batchTypes[i]);
+			if (known >= 0)
+				getMetrics().recordLookups(n, n - known);
+			if (columnar) {
+				TagColumns columns = new TagColumns(n);
+				for (i = 0; i < n; i++)
+					columns.add(batchTokens[i], batchCategories[i]);
+				document.getFeatures().put(TagColumns.FEATURE, columns);
+			} else
+				for (i = 0; i < n; i++)
+					batchTokens[i].getFeatures().put(categoryFeatureName,
+							batchCategories[i]);
+		} finally {
+			// Do not hold on to the document.
+			Arrays.fill(batchTokens, 0, n, null);
+			Arrays.fill(batchTypes, 0, n, null);
+			Arrays.fill(batchCategories, 0, n, null);
 		}
+		getMetrics().recordDocument(n, System.nanoTime() - start);
+	}
+
+	/**
+	 * Release the tagging model.
+	 * 
+	 * @see gate.creole.AbstractResource#cleanup()
+	 */
+	@Override
+	public void cleanup() {
+		releaseModel();
+		super.cleanup();
+	}
+
+	/**
+	 * Use a model held in memory instead of one read from modelPath.
+	 * 
+	 * This lets a long-running application tag with a {@link LiveModel} that
+	 * it updates as new training data arrives.
+	 * 
+	 * @param model
+	 *            the model, or null to go back to reading modelPath
+	 */
+	public void setModel(CategoryModel<String, String> model) {
+		releaseModel();
+		suppliedModel = model;
 	}
 
 	/**
@@ -91,4 +207,24 @@ public class TaggerAnalyzer extends TaggingMachineLearner {
 	public void setModelPath(String modelPath) {
 		this.modelPath = modelPath;
 	}
+
+	/**
+	 * @return whether tags are written as a {@link TagColumns} document
+	 *         feature
+	 */
+	public Boolean getColumnarOutput() {
+		return columnarOutput;
+	}
+
+	/**
+	 * @param columnarOutput
+	 *            whether to write tags as a {@link TagColumns} document
+	 *            feature instead of a feature on each token
+	 */
+	@Optional
+	@RunTime
+	@CreoleParameter(comment = "Write the tags as one document feature instead of a feature per token.", defaultValue = "false")
+	public void setColumnarOutput(Boolean columnarOutput) {
+		this.columnarOutput = columnarOutput;
+	}
 }
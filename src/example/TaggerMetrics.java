@@ -0,0 +1,267 @@
+package example;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Counters, gauges and a latency histogram for the tagging processing
+ * resources, published through JMX.
+ * 
+ * There is one set of metrics per name in a process, shared by every copy of
+ * a processing resource, and registered as the MBean
+ * <code>example:type=TaggerMetrics,name=</code><i>name</i>. Recording a
+ * document takes a handful of atomic additions and does not lock or
+ * allocate, so the metrics can be left on in production.
+ * 
+ * The metrics can also be written to the log at a fixed interval.
+ * 
+ * @author W.P. McNeill
+ */
+public class TaggerMetrics implements TaggerMetricsMBean {
+	static Logger logger = Logger.getLogger(TaggerMetrics.class.getName());
+
+	private static final ConcurrentMap<String, TaggerMetrics> metrics = new ConcurrentHashMap<String, TaggerMetrics>();
+	private static final ScheduledExecutorService logTimer = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Tagger metrics log");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final String name;
+	private final AtomicLong documents = new AtomicLong();
+	private final AtomicLong tokens = new AtomicLong();
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong unknownTokens = new AtomicLong();
+	private final AtomicLong totalNanoseconds = new AtomicLong();
+	private final AtomicLong maxNanoseconds = new AtomicLong();
+	/**
+	 * Document counts by latency, bucket b holding latencies in [2^(b-1),
+	 * 2^b) nanoseconds
+	 */
+	private final AtomicLongArray latencies = new AtomicLongArray(64);
+	private volatile long modelLoadNanoseconds = 0;
+	private volatile long countedTypes = 0;
+	private volatile long logIntervalSeconds = 0;
+	private ScheduledFuture<?> logTask = null;
+
+	/**
+	 * Create unregistered metrics.
+	 * 
+	 * @param name
+	 *            a name for the metrics
+	 */
+	TaggerMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * The metrics with a given name, creating and registering them if
+	 * necessary.
+	 * 
+	 * @param name
+	 *            a name, e.g. the class of a processing resource
+	 * @return the metrics
+	 */
+	public static TaggerMetrics forName(String name) {
+		TaggerMetrics m = metrics.get(name);
+		if (null != m)
+			return m;
+		m = new TaggerMetrics(name);
+		TaggerMetrics existing = metrics.putIfAbsent(name, m);
+		if (null != existing)
+			return existing;
+		m.register();
+		return m;
+	}
+
+	/**
+	 * Publish the metrics through the platform MBean server.
+	 * 
+	 * Failure to register is logged and otherwise ignored, since metrics are
+	 * not essential to tagging.
+	 */
+	private void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(
+					"example:type=TaggerMetrics,name=" + name);
+			if (!server.isRegistered(objectName))
+				server.registerMBean(this, objectName);
+		} catch (JMException e) {
+			logger.warn("Cannot register metrics " + name, e);
+		}
+	}
+
+	/**
+	 * Record a processed document.
+	 * 
+	 * @param tokenCount
+	 *            the number of tokens in the document
+	 * @param nanoseconds
+	 *            the time taken to process it
+	 */
+	public void recordDocument(long tokenCount, long nanoseconds) {
+		documents.incrementAndGet();
+		tokens.addAndGet(tokenCount);
+		totalNanoseconds.addAndGet(nanoseconds);
+		latencies.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(
+				nanoseconds, 0)) & 63);
+		long max = maxNanoseconds.get();
+		while (nanoseconds > max
+				&& !maxNanoseconds.compareAndSet(max, nanoseconds))
+			max = maxNanoseconds.get();
+	}
+
+	/**
+	 * Record model lookups.
+	 * 
+	 * @param lookupCount
+	 *            the number of tokens looked up
+	 * @param unknownCount
+	 *            the number of them whose type was not in the model
+	 */
+	public void recordLookups(long lookupCount, long unknownCount) {
+		lookups.addAndGet(lookupCount);
+		unknownTokens.addAndGet(unknownCount);
+	}
+
+	/**
+	 * @param nanoseconds
+	 *            time taken to load the current model
+	 */
+	public void setModelLoadTime(long nanoseconds) {
+		modelLoadNanoseconds = nanoseconds;
+	}
+
+	/**
+	 * @param types
+	 *            the number of distinct types in the accumulated counts
+	 */
+	public void setCountedTypes(long types) {
+		countedTypes = types;
+	}
+
+	public long getDocuments() {
+		return documents.get();
+	}
+
+	public long getTokens() {
+		return tokens.get();
+	}
+
+	public double getTokensPerSecond() {
+		long nanoseconds = totalNanoseconds.get();
+		return 0 == nanoseconds ? 0 : tokens.get() * 1e9 / nanoseconds;
+	}
+
+	public double getUnknownTokenRate() {
+		long n = lookups.get();
+		return 0 == n ? 0 : unknownTokens.get() / (double) n;
+	}
+
+	public double getMeanLatencyMillis() {
+		long n = documents.get();
+		return 0 == n ? 0 : totalNanoseconds.get() / 1e6 / n;
+	}
+
+	public double getMedianLatencyMillis() {
+		return getLatencyPercentileMillis(0.5);
+	}
+
+	public double getLatency99thPercentileMillis() {
+		return getLatencyPercentileMillis(0.99);
+	}
+
+	/**
+	 * A percentile of the document processing time.
+	 * 
+	 * @param fraction
+	 *            the fraction of documents, e.g. 0.99
+	 * @return the upper bound of the histogram bucket containing the
+	 *         percentile, in milliseconds
+	 */
+	public double getLatencyPercentileMillis(double fraction) {
+		long[] counts = new long[latencies.length()];
+		long total = 0;
+		for (int b = 0; b < counts.length; b++)
+			total += counts[b] = latencies.get(b);
+		if (0 == total)
+			return 0;
+		long rank = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		int b = 0;
+		while (b < counts.length - 1 && (seen += counts[b]) < rank)
+			b++;
+		return Math.min(1L << b, maxNanoseconds.get()) / 1e6;
+	}
+
+	public double getMaxLatencyMillis() {
+		return maxNanoseconds.get() / 1e6;
+	}
+
+	public double getModelLoadMillis() {
+		return modelLoadNanoseconds / 1e6;
+	}
+
+	public long getCountedTypes() {
+		return countedTypes;
+	}
+
+	public long getLogIntervalSeconds() {
+		return logIntervalSeconds;
+	}
+
+	public synchronized void setLogIntervalSeconds(long seconds) {
+		if (seconds == logIntervalSeconds)
+			return;
+		if (null != logTask)
+			logTask.cancel(false);
+		logTask = null;
+		logIntervalSeconds = Math.max(seconds, 0);
+		if (logIntervalSeconds > 0)
+			logTask = logTimer.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					logger.info(TaggerMetrics.this);
+				}
+			}, logIntervalSeconds, logIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	public void reset() {
+		documents.set(0);
+		tokens.set(0);
+		lookups.set(0);
+		unknownTokens.set(0);
+		totalNanoseconds.set(0);
+		maxNanoseconds.set(0);
+		for (int b = 0; b < latencies.length(); b++)
+			latencies.set(b, 0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d documents, %d tokens, %.0f tokens/s, "
+				+ "%.2f%% unknown, latency mean %.2fms median %.2fms "
+				+ "99th %.2fms max %.2fms, model load %.1fms, %d types", name,
+				getDocuments(), getTokens(), getTokensPerSecond(),
+				100 * getUnknownTokenRate(), getMeanLatencyMillis(),
+				getMedianLatencyMillis(), getLatency99thPercentileMillis(),
+				getMaxLatencyMillis(), getModelLoadMillis(), getCountedTypes());
+	}
+}
@@ -0,0 +1,78 @@
+package example;
+
+/**
+ * The JMX view of {@link TaggerMetrics}.
+ * 
+ * Latencies are per document. Percentiles are the upper bounds of power of
+ * two histogram buckets, so they are accurate to within a factor of two.
+ * 
+ * @author W.P. McNeill
+ */
+public interface TaggerMetricsMBean {
+	/**
+	 * @return the number of documents processed
+	 */
+	long getDocuments();
+
+	/**
+	 * @return the number of tokens processed
+	 */
+	long getTokens();
+
+	/**
+	 * @return tokens processed per second of processing time
+	 */
+	double getTokensPerSecond();
+
+	/**
+	 * @return the fraction of looked up tokens whose type was not in the
+	 *         model
+	 */
+	double getUnknownTokenRate();
+
+	/**
+	 * @return mean document processing time in milliseconds
+	 */
+	double getMeanLatencyMillis();
+
+	/**
+	 * @return median document processing time in milliseconds
+	 */
+	double getMedianLatencyMillis();
+
+	/**
+	 * @return 99th percentile document processing time in milliseconds
+	 */
+	double getLatency99thPercentileMillis();
+
+	/**
+	 * @return longest document processing time in milliseconds
+	 */
+	double getMaxLatencyMillis();
+
+	/**
+	 * @return time taken to acquire the current model in milliseconds
+	 */
+	double getModelLoadMillis();
+
+	/**
+	 * @return the number of distinct types in the accumulated counts
+	 */
+	long getCountedTypes();
+
+	/**
+	 * @return seconds between log messages, or 0 if they are not logged
+	 */
+	long getLogIntervalSeconds();
+
+	/**
+	 * @param seconds
+	 *            seconds between log messages, or 0 to stop logging
+	 */
+	void setLogIntervalSeconds(long seconds);
+
+	/**
+	 * Set all the counters and histograms back to zero.
+	 */
+	void reset();
+}
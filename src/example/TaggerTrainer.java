@@ -1,9 +1,15 @@
 package example;
 
 import gate.Annotation;
+import gate.Controller;
 import gate.FeatureMap;
 import gate.creole.ExecutionException;
+import gate.creole.metadata.CreoleParameter;
 import gate.creole.metadata.CreoleResource;
+import gate.creole.metadata.Optional;
+import gate.creole.metadata.RunTime;
+
+import java.util.Arrays;
 
 /**
  * A GATE language analyzer that counts the frequency of part-of-speech
@@ -12,6 +18,11 @@ import gate.creole.metadata.CreoleResource;
  * Running this produces a {@link TaggerTrainer} for a document. These objects
  * can then be combined to produce a {@link Model}.
  * 
+ * If an accumulator is set, the counts of every document are added straight
+ * into it, and are only also stored in the document if storeDocumentCounts is
+ * true. Without an accumulator the counts are always stored in the document
+ * under {@link #CATEGORY_COUNTS}.
+ * 
  * @author W.P. McNeill
  */
 @CreoleResource(name = "Tagging Trainer", comment = "Counts the POS categories for each type")
@@ -19,24 +30,150 @@ public class TaggerTrainer extends TaggingMachineLearner {
 	private static final long serialVersionUID = 1025580530531040398L;
 	public static final String CATEGORY_COUNTS = "categoryCounts";
 
+	// Creole parameters
+	private Boolean storeDocumentCounts;
+
+	/**
+	 * Counts for the whole run set by the caller
+	 */
+	private transient CountsAccumulator<String, String> accumulator;
+	/**
+	 * Types and categories of the current document's tokens, reused from one
+	 * document to the next
+	 */
+	private transient String[] tokenTypes = null;
+	private transient String[] tokenCategories = null;
+	private transient int tokens = 0;
+
 	/**
 	 * Counts the part of speech categories for each type.
 	 * 
 	 * Tokens are read from string features of Token annotations. Types are read
 	 * from category features.
 	 * 
+	 * The types and categories of all a document's tokens are read first,
+	 * and then added to the accumulator under the accumulator's lock, so the
+	 * copies of this resource in a parallel run may share one. A document
+	 * whose tokens cannot all be read adds nothing to the accumulator.
+	 * 
 	 * @see gate.creole.AbstractProcessingResource#execute()
 	 */
 	@Override
 	public void execute() throws ExecutionException {
+		long start = System.nanoTime();
 		super.execute();
-		CategoryCounts<String, String> categoryCounts = new CategoryCounts<String, String>();
+		try {
+			readTokens();
+			if (null != accumulator)
+				synchronized (accumulator) {
+					count(accumulator);
+					if (accumulator instanceof CategoryCounts)
+						getMetrics().setCountedTypes(
+								((CategoryCounts<?, ?>) accumulator).size());
+				}
+			if (null == accumulator
+					|| Boolean.TRUE.equals(storeDocumentCounts)) {
+				CategoryCounts<String, String> categoryCounts = new CategoryCounts<String, String>();
+				count(categoryCounts);
+				document.getFeatures().put(CATEGORY_COUNTS, categoryCounts);
+			}
+			getMetrics().recordDocument(tokens, System.nanoTime() - start);
+		} finally {
+			// Do not keep the document's strings until the next one.
+			Arrays.fill(tokenTypes, 0, tokens, null);
+			Arrays.fill(tokenCategories, 0, tokens, null);
+			tokens = 0;
+		}
+	}
+
+	/**
+	 * Read the type and category of each of the document's tokens into
+	 * tokenTypes and tokenCategories, setting tokens to their number.
+	 */
+	private void readTokens() throws ExecutionException {
+		if (null == tokenTypes) {
+			tokenTypes = new String[1024];
+			tokenCategories = new String[1024];
+		}
 		for (Annotation tokenAnnotation : getTokenAnnotations()) {
 			FeatureMap annotationFeatures = tokenAnnotation.getFeatures();
-			String type = getType(annotationFeatures);
-			String category = getCategory(annotationFeatures);
-			categoryCounts.addToken(type, category);
+			if (tokens == tokenTypes.length) {
+				tokenTypes = Arrays.copyOf(tokenTypes, 2 * tokens);
+				tokenCategories = Arrays.copyOf(tokenCategories, 2 * tokens);
+			}
+			tokenTypes[tokens] = getType(annotationFeatures);
+			tokenCategories[tokens] = getCategory(annotationFeatures);
+			tokens++;
 		}
-		document.getFeatures().put(CATEGORY_COUNTS, categoryCounts);
+	}
+
+	/**
+	 * Add the tokens read by {@link #readTokens()} to counts.
+	 */
+	private void count(CountsAccumulator<String, String> counts) {
+		for (int i = 0; i < tokens; i++)
+			counts.addToken(tokenTypes[i], tokenCategories[i]);
+	}
+
+	/**
+	 * Add the counts of the documents processed from now on into an
+	 * accumulator.
+	 * 
+	 * @param accumulator
+	 *            counts for the run, or null to go back to storing counts in
+	 *            the documents
+	 */
+	public void setAccumulator(CountsAccumulator<String, String> accumulator) {
+		this.accumulator = accumulator;
+	}
+
+	/**
+	 * @return the accumulator, or null if none is set
+	 */
+	public CountsAccumulator<String, String> getAccumulator() {
+		return accumulator;
+	}
+
+	/**
+	 * Set the accumulator of every trainer in an application.
+	 * 
+	 * @param controller
+	 *            an application
+	 * @param accumulator
+	 *            counts for the run, or null
+	 * @throws IllegalArgumentException
+	 *             if the application has no trainer
+	 */
+	static void setAccumulator(Controller controller,
+			CountsAccumulator<String, String> accumulator) {
+		boolean found = false;
+		for (Object pr : controller.getPRs())
+			if (pr instanceof TaggerTrainer) {
+				((TaggerTrainer) pr).setAccumulator(accumulator);
+				found = true;
+			}
+		if (!found)
+			throw new IllegalArgumentException(controller.getName()
+					+ " has no Tagging Trainer.");
+	}
+
+	/**
+	 * @return whether counts are stored in the document when there is an
+	 *         accumulator
+	 */
+	public Boolean getStoreDocumentCounts() {
+		return storeDocumentCounts;
+	}
+
+	/**
+	 * @param storeDocumentCounts
+	 *            whether to also store counts in the document when there is an
+	 *            accumulator
+	 */
+	@Optional
+	@RunTime
+	@CreoleParameter(comment = "Store the counts in the document feature map as well as in the accumulator.", defaultValue = "false")
+	public void setStoreDocumentCounts(Boolean storeDocumentCounts) {
+		this.storeDocumentCounts = storeDocumentCounts;
 	}
 }
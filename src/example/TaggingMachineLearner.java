@@ -24,6 +24,9 @@ public abstract class TaggingMachineLearner extends AbstractLanguageAnalyser {
 	protected String annotationSetName;
 	protected String typeFeatureName;
 	protected String categoryFeatureName;
+	protected Integer metricsLogInterval;
+
+	private transient TaggerMetrics metrics;
 
 	/**
 	 * Get a set of token annotations from the document.
@@ -74,6 +77,19 @@ public abstract class TaggingMachineLearner extends AbstractLanguageAnalyser {
 		return category;
 	}
 
+	/**
+	 * The metrics of this kind of processing resource.
+	 * 
+	 * All copies of a processing resource class share the same metrics.
+	 * 
+	 * @return the metrics
+	 */
+	protected TaggerMetrics getMetrics() {
+		if (null == metrics)
+			metrics = TaggerMetrics.forName(getClass().getSimpleName());
+		return metrics;
+	}
+
 	/**
 	 * Verify that a document is specified.
 	 * 
@@ -83,6 +99,12 @@ public abstract class TaggingMachineLearner extends AbstractLanguageAnalyser {
 	public void execute() throws ExecutionException {
 		if (null == document)
 			throw new ExecutionException("Document not set.");
+		// Read the volatile interval first so that documents do not contend
+		// for the metrics lock when it has not changed.
+		if (null != metricsLogInterval
+				&& getMetrics().getLogIntervalSeconds() != Math.max(
+						metricsLogInterval, 0))
+			getMetrics().setLogIntervalSeconds(metricsLogInterval);
 	}
 
 	/**
@@ -138,4 +160,22 @@ public abstract class TaggingMachineLearner extends AbstractLanguageAnalyser {
 	public void setCategoryFeatureName(String categoryFeatureName) {
 		this.categoryFeatureName = categoryFeatureName;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @return the metricsLogInterval
+	 */
+	public Integer getMetricsLogInterval() {
+		return metricsLogInterval;
+	}
+
+	/**
+	 * @param metricsLogInterval
+	 *            the metricsLogInterval to set
+	 */
+	@Optional
+	@RunTime
+	@CreoleParameter(comment = "Seconds between logging the metrics, 0 not to log them.", defaultValue = "0")
+	public void setMetricsLogInterval(Integer metricsLogInterval) {
+		this.metricsLogInterval = metricsLogInterval;
+	}
+}
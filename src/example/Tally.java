@@ -1,6 +1,12 @@
 package example;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -8,7 +14,6 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * The number of objects of a given type.
@@ -16,6 +21,17 @@ import java.util.Map.Entry;
  * This keeps a tally of the number of objects of a given type. Missing objects
  * have a count of zero.
  * 
+ * Objects are interned in a {@link SymbolTable}. A tally keeps the ids of just
+ * the objects it contains in a sorted primitive array, with their counts in a
+ * parallel array, so it costs a few words per object it has seen rather than
+ * one per symbol in the table, and incrementing an existing count does not
+ * allocate. Tallies of the same kind of object, for example the category
+ * tallies in a {@link CategoryCounts}, should share a symbol table. This makes
+ * them cheaper to add together.
+ * 
+ * The tally keeps track of its largest key as counts are added, so finding it
+ * does not require looking at the other keys.
+ * 
  * @author W.P. McNeill
  */
 /**
@@ -26,23 +42,58 @@ import java.util.Map.Entry;
 public class Tally<K extends Comparable<K>> implements Serializable {
 
 	private static final long serialVersionUID = -5914227115281257970L;
-	private Map<K, Long> map;
+	/**
+	 * Tallies are serialized as a map of objects to counts, as they were
+	 * before they were backed by arrays.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField(
+			"map", Map.class) };
+
+	private transient SymbolTable<K> symbols;
+	/**
+	 * Ids of the objects in this tally in ascending order.
+	 */
+	private transient int[] keys;
+	/**
+	 * Counts of the objects in keys.
+	 */
+	private transient long[] counts;
+	private transient int size;
+	private transient long total;
+	/**
+	 * Id of the object with the largest count, or -1 if it must be found.
+	 */
+	private transient int largest = -1;
 
 	/**
-	 * The natural order of tally map entries.
+	 * The natural order of tally entries.
 	 * 
-	 * Sort by values in descending order then keys in ascending order.
+	 * Sort by counts in descending order then keys in ascending order. This
+	 * compares positions in the keys array.
 	 */
-	private final class TallyComparator implements
-			Comparator<Map.Entry<K, Long>> {
-		public int compare(Map.Entry<K, Long> e1, Map.Entry<K, Long> e2) {
-			int c = e2.getValue().compareTo(e1.getValue());
-			return c != 0 ? c : e1.getKey().compareTo(e2.getKey());
+	private final class TallyComparator implements Comparator<Integer> {
+		public int compare(Integer i1, Integer i2) {
+			return compareAt(i1, i2);
 		}
 	}
 
+	/**
+	 * Create a tally with its own symbol table.
+	 */
 	public Tally() {
-		map = new HashMap<K, Long>();
+		this(new SymbolTable<K>());
+	}
+
+	/**
+	 * Create a tally that interns its objects in a shared symbol table.
+	 * 
+	 * @param symbols
+	 *            a symbol table
+	 */
+	public Tally(SymbolTable<K> symbols) {
+		this.symbols = symbols;
+		keys = new int[1];
+		counts = new long[1];
 	}
 
 	/**
@@ -54,13 +105,14 @@ public class Tally<K extends Comparable<K>> implements Serializable {
 	@Override
 	public String toString() {
 		StringBuilder s = new StringBuilder();
-		List<Map.Entry<K, Long>> entries = new LinkedList<Map.Entry<K, Long>>(
-				map.entrySet());
+		List<Integer> entries = new LinkedList<Integer>();
+		for (int i = 0; i < size; i++)
+			entries.add(i);
 		Collections.sort(entries, new TallyComparator());
-		Iterator<Entry<K, Long>> i = entries.iterator();
+		Iterator<Integer> i = entries.iterator();
 		while (i.hasNext()) {
-			Entry<K, Long> entry = i.next();
-			s.append(entry.getKey() + "\t" + entry.getValue());
+			int position = i.next();
+			s.append(symbols.get(keys[position]) + "\t" + counts[position]);
 			if (i.hasNext())
 				s.append("\n");
 		}
@@ -77,7 +129,11 @@ public class Tally<K extends Comparable<K>> implements Serializable {
 	 * @return the count of key
 	 */
 	public long getCount(K key) {
-		return map.containsKey(key) ? map.get(key) : 0;
+		int id = symbols.getId(key);
+		if (id < 0)
+			return 0;
+		int i = indexOf(id);
+		return i < 0 ? 0 : counts[i];
 	}
 
 	/**
@@ -86,9 +142,6 @@ public class Tally<K extends Comparable<K>> implements Serializable {
 	 * @return the total number of counts in this tally
 	 */
 	public Long getTotalCount() {
-		long total = 0;
-		for (K key : map.keySet())
-			total += map.get(key);
 		return total;
 	}
 
@@ -102,9 +155,7 @@ public class Tally<K extends Comparable<K>> implements Serializable {
 	 * @return the incremented count
 	 */
 	public long addToCount(K key, long n) {
-		if (!map.containsKey(key))
-			map.put(key, (long) 0);
-		return map.put(key, map.get(key) + n);
+		return addToId(symbols.intern(key), n);
 	}
 
 	/**
@@ -114,8 +165,13 @@ public class Tally<K extends Comparable<K>> implements Serializable {
 	 * @return this object
 	 */
 	public Tally<K> addTally(Tally<K> tally) {
-		for (K key : tally.map.keySet()) {
-			addToCount(key, tally.getCount(key));
+		for (int i = 0; i < tally.size; i++) {
+			int id = tally.keys[i];
+			long n = tally.counts[i];
+			if (tally.symbols == symbols)
+				addToId(id, n);
+			else
+				addToCount(tally.symbols.get(id), n);
 		}
 		return this;
 	}
@@ -124,16 +180,159 @@ public class Tally<K extends Comparable<K>> implements Serializable {
 	 * The object with the largest count.
 	 * 
 	 * This is the first object in the natural order of the tally's map entries.
+	 * It is maintained as counts are added, so this takes constant time unless
+	 * the largest count has been decremented.
 	 * 
 	 * @return object with the largest count
 	 * @see TallyComparator
 	 */
 	public K getLargestKey() {
-		if (map.isEmpty())
+		if (size == 0)
 			return null;
-		List<Map.Entry<K, Long>> entries = new LinkedList<Map.Entry<K, Long>>(
-				map.entrySet());
-		Collections.sort(entries, new TallyComparator());
-		return entries.get(0).getKey();
+		if (largest < 0) {
+			int best = 0;
+			for (int i = 1; i < size; i++)
+				if (compareAt(i, best) < 0)
+					best = i;
+			largest = keys[best];
+		}
+		return symbols.get(largest);
+	}
+
+	/**
+	 * The objects with the largest counts.
+	 * 
+	 * The objects are selected without sorting the whole tally.
+	 * 
+	 * @param k
+	 *            the number of objects to return
+	 * @return the first k objects in the natural order of the tally's map
+	 *         entries, or all of them if there are fewer than k
+	 * @see TallyComparator
+	 */
+	public List<K> topK(int k) {
+		List<K> top = new ArrayList<K>(Math.min(k, size));
+		if (k == 1 && size > 0)
+			top.add(getLargestKey());
+		else if (k > 0) {
+			TopN<Integer> positions = new TopN<Integer>(k,
+					new TallyComparator());
+			for (int i = 0; i < size; i++)
+				positions.add(i);
+			for (int i : positions.toList())
+				top.add(symbols.get(keys[i]));
+		}
+		return top;
+	}
+
+	/**
+	 * @return the number of objects in this tally
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The i-th object in this tally, in symbol id order.
+	 */
+	K keyAt(int i) {
+		return symbols.get(keys[i]);
+	}
+
+	/**
+	 * The count of the i-th object in this tally.
+	 */
+	long countAt(int i) {
+		return counts[i];
+	}
+
+	/**
+	 * Increment the count of an interned object.
+	 */
+	private long addToId(int id, long n) {
+		int i = indexOf(id);
+		if (i < 0) {
+			i = -i - 1;
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, 2 * size);
+				counts = Arrays.copyOf(counts, 2 * size);
+			}
+			System.arraycopy(keys, i, keys, i + 1, size - i);
+			System.arraycopy(counts, i, counts, i + 1, size - i);
+			keys[i] = id;
+			counts[i] = 0;
+			size++;
+		}
+		total += n;
+		counts[i] += n;
+		if (n < 0 && id == largest)
+			largest = -1;
+		else if (largest >= 0 && id != largest
+				&& compareAt(i, indexOf(largest)) < 0)
+			largest = id;
+		else if (size == 1)
+			largest = id;
+		return counts[i];
+	}
+
+	/**
+	 * Add the counts in this tally to an array indexed by the ids of a symbol
+	 * table.
+	 * 
+	 * @param totals
+	 *            the array to add to, which is grown if necessary
+	 * @param table
+	 *            the symbol table that indexes the array
+	 * @return the array
+	 */
+	long[] addCountsTo(long[] totals, SymbolTable<K> table) {
+		for (int i = 0; i < size; i++) {
+			int id = table == symbols ? keys[i] : table.intern(symbols
+					.get(keys[i]));
+			if (id >= totals.length)
+				totals = Arrays.copyOf(totals, Math.max(id + 1,
+						2 * totals.length));
+			totals[id] += counts[i];
+		}
+		return totals;
+	}
+
+	/**
+	 * The position of an id in the keys array, or -(insertion point) - 1 if it
+	 * is not there.
+	 */
+	private int indexOf(int id) {
+		return Arrays.binarySearch(keys, 0, size, id);
+	}
+
+	/**
+	 * Order positions in the keys array by descending count then ascending
+	 * key.
+	 */
+	private int compareAt(int i1, int i2) {
+		long c1 = counts[i1], c2 = counts[i2];
+		if (c1 != c2)
+			return c1 > c2 ? -1 : 1;
+		return symbols.get(keys[i1]).compareTo(symbols.get(keys[i2]));
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		Map<K, Long> map = new HashMap<K, Long>();
+		for (int i = 0; i < size; i++)
+			map.put(symbols.get(keys[i]), counts[i]);
+		out.putFields().put("map", map);
+		out.writeFields();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		@SuppressWarnings("unchecked")
+		Map<K, Long> map = (Map<K, Long>) in.readFields().get("map", null);
+		symbols = new SymbolTable<K>();
+		largest = -1;
+		keys = new int[Math.max(map.size(), 1)];
+		counts = new long[Math.max(map.size(), 1)];
+		for (Map.Entry<K, Long> entry : map.entrySet())
+			addToCount(entry.getKey(), entry.getValue());
 	}
 }
@@ -0,0 +1,39 @@
+package example;
+
+/**
+ * A model of string types that can tag text without allocating.
+ * 
+ * Types can be looked up as spans of a larger piece of text, such as a
+ * document's content, so no string has to be made for each token, and many
+ * types can be looked up in one call.
+ * 
+ * @author W.P. McNeill
+ */
+public interface TextCategoryModel extends CategoryModel<String, String> {
+	/**
+	 * The category of a span of characters.
+	 * 
+	 * @param text
+	 *            characters containing the type
+	 * @param start
+	 *            offset of the first character of the type
+	 * @param end
+	 *            offset after the last character of the type
+	 * @return the category of the type, e.g. "NN"
+	 */
+	String getCategory(CharSequence text, int start, int end);
+
+	/**
+	 * The categories of a batch of types.
+	 * 
+	 * @param types
+	 *            types to tag
+	 * @param count
+	 *            the number of types to tag, starting at the beginning of the
+	 *            array
+	 * @param categories
+	 *            receives the category of each type
+	 * @return the number of types that are in the model
+	 */
+	int getCategories(String[] types, int count, String[] categories);
+}
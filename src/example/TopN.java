@@ -0,0 +1,79 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The first n of a stream of objects in some order.
+ * 
+ * The objects are kept in a heap of at most n elements whose root is the worst
+ * of them, so selecting n objects out of m takes O(m log n) time and O(n)
+ * space instead of sorting all m.
+ * 
+ * @author W.P. McNeill
+ * 
+ * @param <E>
+ *            the object class
+ */
+public class TopN<E> {
+	private final int n;
+	private final Comparator<? super E> order;
+	private final PriorityQueue<E> heap;
+
+	/**
+	 * @param n
+	 *            the number of objects to keep
+	 * @param order
+	 *            the order in which objects are ranked, best first
+	 */
+	public TopN(int n, final Comparator<? super E> order) {
+		if (n < 0)
+			throw new IllegalArgumentException("Negative size " + n);
+		this.n = n;
+		this.order = order;
+		// The heap is in reverse order so that its root is the worst object.
+		heap = new PriorityQueue<E>(Math.max(n, 1), new Comparator<E>() {
+			public int compare(E e1, E e2) {
+				return order.compare(e2, e1);
+			}
+		});
+	}
+
+	/**
+	 * Offer an object.
+	 * 
+	 * @param e
+	 *            an object
+	 * @return true if the object is currently among the first n
+	 */
+	public boolean add(E e) {
+		if (heap.size() < n) {
+			heap.add(e);
+			return true;
+		}
+		if (n == 0 || order.compare(e, heap.peek()) >= 0)
+			return false;
+		heap.poll();
+		heap.add(e);
+		return true;
+	}
+
+	/**
+	 * @return the number of objects kept
+	 */
+	public int size() {
+		return heap.size();
+	}
+
+	/**
+	 * @return the first n objects offered, best first
+	 */
+	public List<E> toList() {
+		List<E> list = new ArrayList<E>(heap);
+		Collections.sort(list, order);
+		return list;
+	}
+}
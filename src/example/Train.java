@@ -5,17 +5,19 @@ import gate.DataStore;
 import gate.Document;
 import gate.Factory;
 import gate.Gate;
+import gate.creole.ExecutionException;
 import gate.creole.SerialAnalyserController;
 import gate.util.GateException;
 import gate.util.persistence.PersistenceManager;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.net.URL;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.List;
+
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Logger;
 
@@ -28,6 +30,16 @@ import org.apache.log4j.Logger;
 public class Train {
 	static Logger logger = Logger.getLogger(TaggerTrainer.class.getName());
 
+	/**
+	 * Number of documents loaded ahead of the one being processed in a
+	 * serial run
+	 */
+	static final int PREFETCH_DEPTH = 4;
+	/**
+	 * Number of types logged at debug level
+	 */
+	static final int REPORT_TOP_N = 20;
+
 	/**
 	 * Train a model from a list of document URLs.
 	 * 
@@ -40,10 +52,63 @@ public class Train {
 	 * @throws GateException
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unchecked")
 	public static CategoryCounts<String, String> trainFromURLs(
 			String trainerGappPath, String modelPath, ArrayList<String> urls)
 			throws GateException, IOException {
+		List<CorpusDocument> documents = new ArrayList<CorpusDocument>();
+		for (String url : urls)
+			documents.add(CorpusDocument.fromURL(url));
+		return trainSerially(trainerGappPath, documents);
+	}
+
+	/**
+	 * Train a model from a corpus in a data store.
+	 * 
+	 * @param trainerGappPath
+	 *            saved Tagger Trainer GAPP file
+	 * @param modelPath
+	 *            location to write model file
+	 * @param dataStorePath
+	 *            location of the data store
+	 * @param corpusName
+	 *            the name of a corpus inside the data store
+	 * @throws GateException
+	 * @throws IOException
+	 */
+	public static CategoryCounts<String, String> trainFromDataStore(
+			String trainerGappPath, String modelPath, String dataStorePath,
+			String corpusName) throws GateException, IOException {
+		DataStore dataStore = Factory.openDataStore(
+				"gate.persist.SerialDataStore", new File(dataStorePath).toURI()
+						.toString());
+		try {
+			return trainSerially(trainerGappPath, getCorpusDocuments(
+					dataStore, corpusName));
+		} finally {
+			dataStore.close();
+		}
+	}
+
+	/**
+	 * Count categories in a set of documents on one thread.
+	 * 
+	 * The documents are put into a corpus one at a time to keep the memory
+	 * profile down. The next few documents are loaded in the background while
+	 * the current one is being counted. The trainer adds its counts straight
+	 * into the result.
+	 * 
+	 * @param trainerGappPath
+	 *            saved Tagger Trainer GAPP file
+	 * @param documents
+	 *            the training documents
+	 * @return type counts across all the documents
+	 * @throws GateException
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	static CategoryCounts<String, String> trainSerially(
+			String trainerGappPath, List<CorpusDocument> documents)
+			throws GateException, IOException {
 		// Create an accumulator for type counts across all the documents.
 		CategoryCounts<String, String> categoryCounts = new CategoryCounts<String, String>();
 		// Load the category counter plugin.
@@ -51,32 +116,86 @@ public class Train {
 				.loadObjectFromFile(new File(trainerGappPath));
 		// Create a dummy corpus to hold one document at a time.
 		Corpus corpus = Factory.newCorpus("Training Data");
+		DocumentPrefetcher prefetcher = new DocumentPrefetcher(documents,
+				PREFETCH_DEPTH);
+		TaggerMetrics metrics = TaggerMetrics.forName(TaggerTrainer.class
+				.getSimpleName());
 		try {
+			TaggerTrainer.setAccumulator(categoryCounter, categoryCounts);
 			categoryCounter.setCorpus(corpus);
-			// Iterate over documents, counting types in each. Put the documents
-			// into the corpus one at a time to keep the memory profile down.
-			for (String url : urls) {
-				logger.info("Processing " + url);
-				Document document = Factory.newDocument(new URL(url));
+			while (prefetcher.hasNext()) {
+				Document document = prefetcher.next();
+				logger.info("Processing " + prefetcher.getCurrent());
 				try {
 					corpus.add(document);
 					categoryCounter.execute();
-					CategoryCounts<String, String> documentCounts = (CategoryCounts<String, String>) document
-							.getFeatures().get(TaggerTrainer.CATEGORY_COUNTS);
-					categoryCounts.addCategoryCounts(documentCounts);
+					metrics.setCountedTypes(categoryCounts.size());
 				} finally {
 					corpus.clear();
-					Factory.deleteResource(document);
+					prefetcher.unload(document);
 				}
 			}
 		} finally {
+			prefetcher.close();
+			categoryCounter.setCorpus(null);
 			Factory.deleteResource(corpus);
+			Factory.deleteResource(categoryCounter);
 		}
 		return categoryCounts;
 	}
 
 	/**
-	 * Train a model from a corpus in a data store.
+	 * Train a model from a list of document URLs on several threads.
+	 * 
+	 * @param trainerGappPath
+	 *            saved Tagger Trainer GAPP file
+	 * @param modelPath
+	 *            location to write model file
+	 * @param urls
+	 *            URLs of documents to train from
+	 * @param threads
+	 *            number of worker threads
+	 * @throws GateException
+	 * @throws IOException
+	 */
+	public static CategoryCounts<String, String> trainFromURLs(
+			String trainerGappPath, String modelPath, ArrayList<String> urls,
+			int threads) throws GateException, IOException {
+		return trainFromURLs(trainerGappPath, modelPath, urls, threads, null);
+	}
+
+	/**
+	 * Train a model from a list of document URLs on several threads, saving
+	 * checkpoints as training proceeds.
+	 * 
+	 * @param trainerGappPath
+	 *            saved Tagger Trainer GAPP file
+	 * @param modelPath
+	 *            location to write model file
+	 * @param urls
+	 *            URLs of documents to train from
+	 * @param threads
+	 *            number of worker threads
+	 * @param checkpointer
+	 *            checkpointer for the run, or null to not save checkpoints
+	 * @throws GateException
+	 * @throws IOException
+	 */
+	public static CategoryCounts<String, String> trainFromURLs(
+			String trainerGappPath, String modelPath, ArrayList<String> urls,
+			int threads, Checkpointer checkpointer) throws GateException,
+			IOException {
+		if (threads <= 1 && null == checkpointer)
+			return trainFromURLs(trainerGappPath, modelPath, urls);
+		List<CorpusDocument> documents = new ArrayList<CorpusDocument>();
+		for (String url : urls)
+			documents.add(CorpusDocument.fromURL(url));
+		return trainInParallel(trainerGappPath, documents, threads,
+				checkpointer);
+	}
+
+	/**
+	 * Train a model from a corpus in a data store on several threads.
 	 * 
 	 * @param trainerGappPath
 	 *            saved Tagger Trainer GAPP file
@@ -86,50 +205,247 @@ public class Train {
 	 *            location of the data store
 	 * @param corpusName
 	 *            the name of a corpus inside the data store
+	 * @param threads
+	 *            number of worker threads
 	 * @throws GateException
 	 * @throws IOException
 	 */
 	public static CategoryCounts<String, String> trainFromDataStore(
 			String trainerGappPath, String modelPath, String dataStorePath,
-			String corpusName) throws GateException, IOException {
-		// Load the category counter plugin.
-		SerialAnalyserController categoryCounter = (SerialAnalyserController) PersistenceManager
-				.loadObjectFromFile(new File(trainerGappPath));
-		// Create an accumulator for type counts across all the documents.
-		CategoryCounts<String, String> categoryCounts = new CategoryCounts<String, String>();
-		// Open the data store.
+			String corpusName, int threads) throws GateException, IOException {
+		return trainFromDataStore(trainerGappPath, modelPath, dataStorePath,
+				corpusName, threads, null);
+	}
+
+	/**
+	 * Train a model from a corpus in a data store on several threads, saving
+	 * checkpoints as training proceeds.
+	 * 
+	 * @param trainerGappPath
+	 *            saved Tagger Trainer GAPP file
+	 * @param modelPath
+	 *            location to write model file
+	 * @param dataStorePath
+	 *            location of the data store
+	 * @param corpusName
+	 *            the name of a corpus inside the data store
+	 * @param threads
+	 *            number of worker threads
+	 * @param checkpointer
+	 *            checkpointer for the run, or null to not save checkpoints
+	 * @throws GateException
+	 * @throws IOException
+	 */
+	public static CategoryCounts<String, String> trainFromDataStore(
+			String trainerGappPath, String modelPath, String dataStorePath,
+			String corpusName, int threads, Checkpointer checkpointer)
+			throws GateException, IOException {
+		if (threads <= 1 && null == checkpointer)
+			return trainFromDataStore(trainerGappPath, modelPath,
+					dataStorePath, corpusName);
 		DataStore dataStore = Factory.openDataStore(
 				"gate.persist.SerialDataStore", new File(dataStorePath).toURI()
 						.toString());
 		try {
-			// Extract lists of corpus names and LRIDs from the data store.
-			// These lists have corresponding elements.
-			Corpus corpus = Datastore.loadCorpusFromDatastore(dataStore,
+			List<CorpusDocument> documents = getCorpusDocuments(dataStore,
 					corpusName);
-			try {
-				// Make category counts over all the documents in the corpus.
-				categoryCounter.setCorpus(corpus);
-				categoryCounter.execute();
-				// Iterate over documents in the corpus collecting counts.
-				for (@SuppressWarnings("rawtypes")
-				Iterator iterator = corpus.iterator(); iterator.hasNext();) {
-					Document document = (Document) iterator.next();
-					@SuppressWarnings("unchecked")
-					CategoryCounts<String, String> documentCounts = (CategoryCounts<String, String>) document
-							.getFeatures().get(TaggerTrainer.CATEGORY_COUNTS);
-					categoryCounts.addCategoryCounts(documentCounts);
-				}
-			} finally {
-				Factory.deleteResource(corpus);
-			}
+			return trainInParallel(trainerGappPath, documents, threads,
+					checkpointer);
 		} finally {
 			dataStore.close();
 		}
-		return categoryCounts;
 	}
 
 	/**
-	 * Generate a serialized model file from a set of training URLs.
+	 * Count categories in a set of documents on several threads.
+	 * 
+	 * Each worker runs its own copy of the trainer application, which adds the
+	 * document counts into the worker's own accumulator. The accumulators are
+	 * merged at the end. The result is the same as a serial run.
+	 * 
+	 * With a checkpointer, documents already in its checkpoint are skipped and
+	 * the counts the trainers store in each document are added to it
+	 * instead. If a worker fails, a final checkpoint of the documents that
+	 * were counted is still written before the failure is thrown.
+	 * 
+	 * @param trainerGappPath
+	 *            saved Tagger Trainer GAPP file
+	 * @param documents
+	 *            the training documents
+	 * @param threads
+	 *            number of worker threads
+	 * @param checkpointer
+	 *            checkpointer for the run, or null to not save checkpoints
+	 * @return type counts across all the documents
+	 * @throws GateException
+	 * @throws IOException
+	 */
+	static CategoryCounts<String, String> trainInParallel(
+			String trainerGappPath, List<CorpusDocument> documents,
+			int threads, final Checkpointer checkpointer) throws GateException,
+			IOException {
+		threads = Math.max(threads, 1);
+		if (null != checkpointer) {
+			documents = checkpointer.remaining(documents);
+			checkpointer.start();
+		}
+		SerialAnalyserController categoryCounter = (SerialAnalyserController) PersistenceManager
+				.loadObjectFromFile(new File(trainerGappPath));
+		final List<CategoryCounts<String, String>> workerCounts = new ArrayList<CategoryCounts<String, String>>();
+		for (int i = 0; i < threads; i++)
+			workerCounts.add(new CategoryCounts<String, String>());
+		ParallelCorpusProcessor processor = new ParallelCorpusProcessor(
+				categoryCounter, threads);
+		boolean processed = false;
+		try {
+			// Checkpoints need the counts of each document.
+			if (null == checkpointer)
+				for (int i = 0; i < threads; i++)
+					TaggerTrainer.setAccumulator(processor.getController(i),
+							workerCounts.get(i));
+			processor.process(documents,
+					new ParallelCorpusProcessor.DocumentHandler() {
+						@SuppressWarnings("unchecked")
+						public void processed(int worker,
+								CorpusDocument source, Document document) {
+							if (null == checkpointer)
+								return;
+							CategoryCounts<String, String> documentCounts = (CategoryCounts<String, String>) document
+									.getFeatures().get(
+											TaggerTrainer.CATEGORY_COUNTS);
+							checkpointer.add(worker, source.getId(),
+									documentCounts);
+						}
+					});
+			processed = true;
+		} finally {
+			processor.cleanup();
+			Factory.deleteResource(categoryCounter);
+			if (!processed && null != checkpointer)
+				abandon(checkpointer);
+		}
+		try {
+			if (null != checkpointer)
+				return checkpointer.finish();
+			return CategoryCounts.merge(workerCounts, threads);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExecutionException(e);
+		}
+	}
+
+	/**
+	 * Write a final checkpoint for a run that failed, so that the documents
+	 * it counted are not counted again when it is resumed.
+	 * 
+	 * Errors are logged rather than thrown so that they do not hide the
+	 * failure of the run.
+	 */
+	private static void abandon(Checkpointer checkpointer) {
+		try {
+			checkpointer.finish();
+		} catch (IOException e) {
+			logger.error("Cannot write the final checkpoint", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Count categories in a set of documents on several threads, adding the
+	 * counts of each document to a single accumulator.
+	 * 
+	 * The trainers add their counts straight into the accumulator. It is
+	 * locked while a document's counts are added to it, so it need not be
+	 * thread-safe.
+	 * 
+	 * @param trainerGappPath
+	 *            saved Tagger Trainer GAPP file
+	 * @param documents
+	 *            the training documents
+	 * @param threads
+	 *            number of worker threads
+	 * @param accumulator
+	 *            receives the counts
+	 * @throws GateException
+	 * @throws IOException
+	 */
+	static void trainInto(String trainerGappPath,
+			List<CorpusDocument> documents, int threads,
+			CountsAccumulator<String, String> accumulator)
+			throws GateException, IOException {
+		SerialAnalyserController categoryCounter = (SerialAnalyserController) PersistenceManager
+				.loadObjectFromFile(new File(trainerGappPath));
+		ParallelCorpusProcessor processor = new ParallelCorpusProcessor(
+				categoryCounter, Math.max(threads, 1));
+		try {
+			for (int i = 0; i < processor.getWorkerCount(); i++)
+				TaggerTrainer.setAccumulator(processor.getController(i),
+						accumulator);
+			processor.process(documents,
+					new ParallelCorpusProcessor.DocumentHandler() {
+						public void processed(int worker,
+								CorpusDocument source, Document document) {
+						}
+					});
+		} finally {
+			processor.cleanup();
+			Factory.deleteResource(categoryCounter);
+		}
+	}
+
+	/**
+	 * References to the documents of a corpus in a data store.
+	 */
+	private static List<CorpusDocument> getCorpusDocuments(
+			DataStore dataStore, String corpusName) throws GateException {
+		Corpus corpus = Datastore.loadCorpusFromDatastore(dataStore,
+				corpusName);
+		try {
+			return Datastore.getCorpusDocuments(dataStore, corpus);
+		} finally {
+			Factory.deleteResource(corpus);
+		}
+	}
+
+	/**
+	 * The most frequent types as tab-separated text.
+	 */
+	static String topTypes(CategoryCounts<String, String> categoryCounts,
+			int n) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CountsReportWriter report = new CountsReportWriter(Channels
+				.newChannel(bytes), CountsReportWriter.Format.TSV);
+		report.setTopN(n);
+		report.write(categoryCounts);
+		report.close();
+		return bytes.toString("UTF-8");
+	}
+
+	/**
+	 * Generate a model file from a set of training URLs.
+	 * 
+	 * The optional -threads N switch trains on N threads.
+	 * 
+	 * The -checkpoint FILE switch saves the counts to FILE every
+	 * -checkpoint-documents N documents and every -checkpoint-seconds S
+	 * seconds. If FILE exists, training resumes from it.
+	 * 
+	 * The -memory MB switch keeps about MB megabytes of counts in memory,
+	 * spilling the rest to disk next to the model file. The -approximate MB
+	 * switch instead counts approximately in about MB megabytes, giving rare
+	 * types the default category.
+	 * 
+	 * The -compact switch leaves entries that predict the default category
+	 * out of the model. -min-count N and -min-confidence X also leave out
+	 * types seen fewer than N times or whose most common category has less
+	 * than X of their tokens. -compact is not supported with -memory, and
+	 * -min-count and -min-confidence are not supported with -memory or
+	 * -approximate.
+	 * 
+	 * The -report FILE switch writes the counts of every type to FILE as
+	 * tab-separated text. It is not supported with -memory or -approximate.
+	 * The most frequent types are logged at debug level.
 	 * 
 	 * @param args
 	 *            command line arguments
@@ -140,37 +456,153 @@ public class Train {
 		BasicConfigurator.configure();
 		Gate.init();
 
-		String trainerGappPath = args[0];
-		String modelPath = args[1];
+		// Parse the command line options.
+		int threads = 1;
+		String checkpointPath = null;
+		int checkpointDocuments = 0;
+		long checkpointSeconds = 0;
+		long memoryBudget = 0;
+		long approximateBudget = 0;
+		boolean compact = false;
+		long minCount = 0;
+		double minConfidence = 0;
+		String reportPath = null;
+		int a = 0;
+		while (a < args.length && args[a].startsWith("-")) {
+			String option = args[a++];
+			if ("-threads".equals(option))
+				threads = Integer.parseInt(args[a++]);
+			else if ("-checkpoint".equals(option))
+				checkpointPath = args[a++];
+			else if ("-checkpoint-documents".equals(option))
+				checkpointDocuments = Integer.parseInt(args[a++]);
+			else if ("-checkpoint-seconds".equals(option))
+				checkpointSeconds = Long.parseLong(args[a++]);
+			else if ("-memory".equals(option))
+				memoryBudget = Long.parseLong(args[a++]) << 20;
+			else if ("-approximate".equals(option))
+				approximateBudget = Long.parseLong(args[a++]) << 20;
+			else if ("-compact".equals(option))
+				compact = true;
+			else if ("-min-count".equals(option)) {
+				compact = true;
+				minCount = Long.parseLong(args[a++]);
+			} else if ("-min-confidence".equals(option)) {
+				compact = true;
+				minConfidence = Double.parseDouble(args[a++]);
+			} else if ("-report".equals(option))
+				reportPath = args[a++];
+			else {
+				System.err.println("Unknown option " + option);
+				System.exit(-1);
+			}
+		}
+		if ((memoryBudget > 0 || approximateBudget > 0) && null != reportPath) {
+			System.err.println("-report is not supported with -memory or "
+					+ "-approximate.");
+			System.exit(-1);
+		}
+		if (memoryBudget > 0 && compact) {
+			System.err.println("-compact, -min-count and -min-confidence "
+					+ "are not supported with -memory.");
+			System.exit(-1);
+		}
+		if (approximateBudget > 0 && (minCount > 0 || minConfidence > 0)) {
+			System.err.println("-min-count and -min-confidence are not "
+					+ "supported with -approximate.");
+			System.exit(-1);
+		}
+		String trainerGappPath = args[a];
+		String modelPath = args[a + 1];
+		Checkpointer checkpointer = null;
+		if (null != checkpointPath) {
+			if (0 == checkpointDocuments && 0 == checkpointSeconds)
+				checkpointSeconds = 600;
+			checkpointer = new Checkpointer(new File(checkpointPath), Math.max(
+					threads, 1), checkpointDocuments, checkpointSeconds * 1000);
+			checkpointer.resume();
+		}
 
 		// TODO Get data store vs. URLs difference from a command line switch.
 		boolean fromDatastore = true;
+		if (memoryBudget > 0 || approximateBudget > 0) {
+			if (null != checkpointer)
+				logger.warn("Checkpoints are not saved with -memory or -approximate.");
+			File modelFile = new File(modelPath).getAbsoluteFile();
+			CountsAccumulator<String, String> accumulator;
+			if (memoryBudget > 0)
+				accumulator = new ExternalCategoryCounts(modelFile
+						.getParentFile(), memoryBudget);
+			else
+				accumulator = new ApproximateCategoryCounts<String, String>(
+						approximateBudget);
+			List<CorpusDocument> documents = new ArrayList<CorpusDocument>();
+			DataStore dataStore = null;
+			try {
+				if (fromDatastore) {
+					dataStore = Factory.openDataStore(
+							"gate.persist.SerialDataStore", new File(
+									args[a + 2]).toURI().toString());
+					documents = getCorpusDocuments(dataStore, args[a + 3]);
+				} else
+					for (int i = a + 2; i < args.length; i++)
+						documents.add(CorpusDocument.fromURL(args[i]));
+				trainInto(trainerGappPath, documents, threads, accumulator);
+			} finally {
+				if (null != dataStore)
+					dataStore.close();
+			}
+			// Large counts are merged straight to disk.
+			if (accumulator instanceof ExternalCategoryCounts)
+				((ExternalCategoryCounts) accumulator).writeModel(modelFile);
+			else if (compact)
+				ModelFile.save(new ModelCompactor().compact(accumulator
+						.toModel()), modelFile);
+			else
+				ModelFile.save(accumulator.toModel(), modelFile);
+			return;
+		}
 		CategoryCounts<String, String> categoryCounts;
 		if (fromDatastore) {
-			String dataStorePath = args[2];
-			String corpusName = args[3];
+			String dataStorePath = args[a + 2];
+			String corpusName = args[a + 3];
 			categoryCounts = trainFromDataStore(trainerGappPath, modelPath,
-					dataStorePath, corpusName);
+					dataStorePath, corpusName, threads, checkpointer);
 		} else {
 			// Parse the command line.
-			if (args.length < 3) {
+			if (args.length < a + 3) {
 				System.err.println("Incorrect number of arguments.");
 				System.exit(-1);
 			}
 			ArrayList<String> documentPaths = new ArrayList<String>();
-			for (int i = 2; i < args.length; i++)
+			for (int i = a + 2; i < args.length; i++)
 				documentPaths.add(args[i]);
 			// Collect counts from the training documents.
 			categoryCounts = trainFromURLs(trainerGappPath, modelPath,
-					documentPaths);
+					documentPaths, threads, checkpointer);
 		}
 
 		// Create a model from the counts and save it.
-		logger.info("Total type counts " + categoryCounts.toString());
-		Model<String, String> model = new Model<String, String>(categoryCounts);
-		FileOutputStream fos = new FileOutputStream(modelPath);
-		ObjectOutputStream out = new ObjectOutputStream(fos);
-		out.writeObject(model);
-		out.close();
+		logger.info("Counted " + categoryCounts.size() + " types");
+		if (logger.isDebugEnabled())
+			logger.debug("Most frequent types\n"
+					+ topTypes(categoryCounts, REPORT_TOP_N));
+		if (null != reportPath) {
+			CountsReportWriter report = new CountsReportWriter(
+					new FileOutputStream(reportPath).getChannel(),
+					CountsReportWriter.Format.TSV);
+			try {
+				report.write(categoryCounts);
+			} finally {
+				report.close();
+			}
+		}
+		Model<String, String> model;
+		if (compact)
+			model = new ModelCompactor(minCount, minConfidence)
+					.compact(categoryCounts);
+		else
+			model = new Model<String, String>(categoryCounts);
+		ModelFile.save(model, new File(modelPath));
 	}
 }
@@ -0,0 +1,64 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class ApproximateCategoryCountsTest {
+
+	/**
+	 * Test that frequent types are counted exactly and rare ones are not
+	 * kept.
+	 */
+	@Test
+	public void testAddToken() {
+		ApproximateCategoryCounts<String, String> counts = new ApproximateCategoryCounts<String, String>(
+				1024, 3, 100);
+		counts.addToken("rare", "VB");
+		for (int i = 0; i < 5; i++)
+			counts.addToken("bank", "NN");
+		counts.addToken("bank", "VB");
+		assertEquals(1, counts.size());
+		assertEquals(5, counts.getCount("bank", "NN"));
+		assertEquals(1, counts.getCount("bank", "VB"));
+		assertTrue(counts.getCount("rare", "VB") >= 1);
+		Model<String, String> model = counts.toModel();
+		assertEquals("NN", model.getCategory("bank"));
+		assertEquals("NN", model.getCategory("rare"));
+		assertEquals("NN", counts.getMostCommonCategory());
+	}
+
+	/**
+	 * Test that pruning keeps the exact table within its capacity and that
+	 * the approximate model agrees with the exact one on most tokens.
+	 */
+	@Test
+	public void testEvaluate() {
+		ApproximateCategoryCounts<String, String> approximate = new ApproximateCategoryCounts<String, String>(
+				1 << 14, 2, 2000);
+		CategoryCounts<String, String> exact = new CategoryCounts<String, String>();
+		Random random = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			// Roughly Zipfian types, each with a preferred category.
+			int t = (int) Math.exp(random.nextDouble() * Math.log(20000));
+			String type = "t" + t;
+			String category = random.nextInt(4) == 0 ? "C"
+					+ random.nextInt(3) : "C" + (t % 3);
+			approximate.addToken(type, category);
+			exact.addToken(type, category);
+		}
+		assertTrue(approximate.size() <= 2000);
+		assertTrue(approximate.getThreshold() > 2);
+		ApproximateCategoryCounts.Report report = approximate.evaluate(exact);
+		assertEquals(exact.size(), report.types);
+		assertEquals(100000, report.tokens);
+		assertTrue(report.toString(), report.getTokenAgreement() > 0.8);
+		assertTrue(report.getTokenAgreement() > report.getTypeAgreement());
+	}
+}
@@ -5,6 +5,9 @@ package example;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -66,4 +69,22 @@ public class CategoryCountsTest {
 		assertEquals("NN", bankRun.getMostCommonCategory());
 	}
 
+	/**
+	 * Test method for {@link example.CategoryCounts#merge(List, int)}.
+	 */
+	@Test
+	public void testMerge() throws Exception {
+		List<CategoryCounts<String, String>> parts = new ArrayList<CategoryCounts<String, String>>();
+		for (int i = 0; i < 5; i++) {
+			CategoryCounts<String, String> part = new CategoryCounts<String, String>();
+			part.addCategoryCounts(bankRun);
+			parts.add(part);
+		}
+		CategoryCounts<String, String> merged = CategoryCounts.merge(parts, 3);
+		assertEquals(5 * 3, merged.get("bank").getCount("NN"));
+		assertEquals(5 * 1, merged.get("run").getCount("VB"));
+		assertEquals("NN", merged.getMostCommonCategory());
+		assertEquals(0, CategoryCounts.<String, String> merge(
+				new ArrayList<CategoryCounts<String, String>>(), 2).size());
+	}
 }
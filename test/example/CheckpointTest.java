@@ -0,0 +1,134 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class CheckpointTest {
+
+	/**
+	 * {"bank" => {"NN" => 3, "VB" => 2}, {"run" => {"NN" => 2, "VB" => 1}}}
+	 */
+	private CategoryCounts<String, String> bankRun;
+	private File checkpointFile;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		bankRun = new CategoryCounts<String, String>();
+		bankRun.addCount("bank", "NN", 3);
+		bankRun.addCount("bank", "VB", 2);
+		bankRun.addCount("run", "NN", 2);
+		bankRun.addCount("run", "VB", 1);
+		checkpointFile = File.createTempFile("checkpoint", ".ntgc");
+		checkpointFile.delete();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		checkpointFile.delete();
+		Checkpoint.temporaryFile(checkpointFile).delete();
+	}
+
+	/**
+	 * Test method for {@link example.Checkpoint#write(File, CategoryCounts, java.util.Collection)}
+	 * and {@link example.Checkpoint#read(File)}.
+	 */
+	@Test
+	public void testWriteRead() throws Exception {
+		Checkpoint.write(checkpointFile, bankRun, Arrays.asList("d1", "d2"));
+		Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+		assertEquals(bankRun.toString(), checkpoint.getCategoryCounts()
+				.toString());
+		assertEquals(new HashSet<String>(Arrays.asList("d1", "d2")),
+				checkpoint.getDocumentIds());
+	}
+
+	/**
+	 * Test that a corrupt checkpoint is rejected.
+	 */
+	@Test(expected = java.io.IOException.class)
+	public void testChecksum() throws Exception {
+		Checkpoint.write(checkpointFile, bankRun, Arrays.asList("d1"));
+		RandomAccessFile file = new RandomAccessFile(checkpointFile, "rw");
+		file.seek(14);
+		file.write('x');
+		file.close();
+		Checkpoint.read(checkpointFile);
+	}
+
+	/**
+	 * Test that a run interrupted after a checkpoint can be resumed.
+	 */
+	@Test
+	public void testResume() throws Exception {
+		List<CorpusDocument> documents = new ArrayList<CorpusDocument>();
+		for (int i = 0; i < 10; i++)
+			documents.add(CorpusDocument.fromURL("file:/d" + i));
+		Checkpointer first = new Checkpointer(checkpointFile, 2, 4, 0);
+		first.start();
+		for (int i = 0; i < 6; i++)
+			first.add(i % 2, documents.get(i).getId(), bankRun);
+		first.finish();
+
+		Checkpointer second = new Checkpointer(checkpointFile, 2, 4, 0);
+		assertTrue(second.resume());
+		List<CorpusDocument> remaining = second.remaining(documents);
+		assertEquals(documents.subList(6, 10), remaining);
+		second.start();
+		for (int i = 0; i < remaining.size(); i++)
+			second.add(i % 2, remaining.get(i).getId(), bankRun);
+		CategoryCounts<String, String> total = second.finish();
+		assertEquals(10 * 3, total.get("bank").getCount("NN"));
+		assertEquals(10, second.getDocumentCount());
+		assertEquals(10, Checkpoint.read(checkpointFile).getDocumentIds()
+				.size());
+	}
+
+	/**
+	 * Test resuming from the temporary file left by a crash between deleting
+	 * the old checkpoint and renaming the new one.
+	 */
+	@Test
+	public void testResumeFromTemporary() throws Exception {
+		Checkpoint.write(checkpointFile, bankRun, Arrays.asList("d1", "d2"));
+		assertEquals(checkpointFile, Checkpoint.latest(checkpointFile));
+		assertTrue(checkpointFile.renameTo(Checkpoint
+				.temporaryFile(checkpointFile)));
+		Checkpointer checkpointer = new Checkpointer(checkpointFile, 1, 1, 0);
+		assertTrue(checkpointer.resume());
+		assertEquals(2, checkpointer.getDocumentCount());
+	}
+
+	/**
+	 * Test that an unfinished first checkpoint is ignored.
+	 */
+	@Test
+	public void testIncompleteTemporary() throws Exception {
+		File temporary = Checkpoint.temporaryFile(checkpointFile);
+		RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+		file.writeInt(Checkpoint.MAGIC);
+		file.close();
+		assertFalse(new Checkpointer(checkpointFile, 1, 1, 0).resume());
+		temporary.delete();
+		assertNull(Checkpoint.latest(checkpointFile));
+	}
+}
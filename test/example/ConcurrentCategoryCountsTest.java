@@ -0,0 +1,68 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class ConcurrentCategoryCountsTest {
+
+	/**
+	 * Test that counts added by many threads at once are all kept.
+	 */
+	@Test
+	public void testConcurrentAddToken() throws Exception {
+		final ConcurrentCategoryCounts<String, String> counts = new ConcurrentCategoryCounts<String, String>(
+				4, 64);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 20000; i++)
+						counts.addToken("t" + i % 100, "c" + i % 7);
+				}
+			});
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		CategoryCounts<String, String> expected = new CategoryCounts<String, String>();
+		for (int i = 0; i < 8 * 20000; i++)
+			expected.addToken("t" + i % 20000 % 100, "c" + i % 20000 % 7);
+		CategoryCounts<String, String> frozen = counts.toCategoryCounts();
+		assertEquals(expected.toString(), frozen.toString());
+		assertEquals(expected.getMostCommonCategory(),
+				counts.getMostCommonCategory());
+		Model<String, String> model = counts.toModel();
+		for (Map.Entry<String, String> entry : expected.toModel().entrySet())
+			assertEquals(entry.getValue(), model.getCategory(entry.getKey()));
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.ConcurrentCategoryCounts#addCategoryCounts(CategoryCounts)}
+	 * .
+	 */
+	@Test
+	public void testAddCategoryCounts() {
+		CategoryCounts<String, String> bankRun = new CategoryCounts<String, String>();
+		bankRun.addCount("bank", "NN", 3);
+		bankRun.addCount("bank", "VB", 2);
+		bankRun.addCount("run", "VB", 1);
+		ConcurrentCategoryCounts<String, String> counts = new ConcurrentCategoryCounts<String, String>();
+		counts.addCategoryCounts(bankRun).addCategoryCounts(bankRun);
+		CategoryCounts<String, String> frozen = counts.toCategoryCounts();
+		assertEquals(6, frozen.get("bank").getCount("NN"));
+		assertEquals(2, frozen.get("run").getCount("VB"));
+		assertEquals("NN", counts.getMostCommonCategory());
+	}
+}
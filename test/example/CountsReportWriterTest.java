@@ -0,0 +1,132 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class CountsReportWriterTest {
+
+	private CategoryCounts<String, String> counts;
+	private ByteArrayOutputStream bytes;
+
+	/**
+	 * Create {"bank" => {"NN" => 3, "VB" => 2}, "run" => {"VB" => 1},
+	 * "the" => {"DT" => 6}}
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		counts = new CategoryCounts<String, String>();
+		counts.addCount("bank", "NN", 3);
+		counts.addCount("bank", "VB", 2);
+		counts.addCount("run", "VB", 1);
+		counts.addCount("the", "DT", 6);
+		bytes = new ByteArrayOutputStream();
+	}
+
+	private CountsReportWriter writer(CountsReportWriter.Format format) {
+		return new CountsReportWriter(Channels.newChannel(bytes), format);
+	}
+
+	private String text() throws IOException {
+		return bytes.toString("UTF-8");
+	}
+
+	/**
+	 * Test a sorted TSV report of category counts.
+	 */
+	@Test
+	public void testTopCounts() throws IOException {
+		CountsReportWriter writer = writer(CountsReportWriter.Format.TSV);
+		writer.setTopN(2);
+		writer.write(counts);
+		writer.close();
+		assertEquals("the\t6\tDT\t6\nbank\t5\tNN\t3\tVB\t2\n", text());
+		assertEquals(2, writer.getEntryCount());
+	}
+
+	/**
+	 * Test an unsorted TSV report with a minimum count.
+	 */
+	@Test
+	public void testMinCount() throws IOException {
+		CountsReportWriter writer = writer(CountsReportWriter.Format.TSV);
+		writer.setMinCount(2);
+		writer.write(counts);
+		writer.close();
+		String[] lines = text().split("\n");
+		Arrays.sort(lines);
+		assertEquals("[bank\t5\tNN\t3\tVB\t2, the\t6\tDT\t6]", Arrays
+				.toString(lines));
+	}
+
+	/**
+	 * Test a tally report.
+	 */
+	@Test
+	public void testTally() throws IOException {
+		CountsReportWriter writer = writer(CountsReportWriter.Format.TSV);
+		writer.setTopN(5);
+		writer.setMinCount(3);
+		writer.write(counts.get("bank"));
+		writer.close();
+		assertEquals("NN\t3\n", text());
+	}
+
+	/**
+	 * Test a model report.
+	 */
+	@Test
+	public void testModel() throws IOException {
+		Map<String, String> category = new HashMap<String, String>();
+		category.put("the", "DT");
+		category.put("bank", "NN");
+		category.put("run", null);
+		CountsReportWriter writer = writer(CountsReportWriter.Format.TSV);
+		writer.setTopN(3);
+		writer.write(new Model<String, String>(category, "NN"));
+		writer.close();
+		assertEquals("#default\tNN\nbank\tNN\nrun\t\nthe\tDT\n", text());
+	}
+
+	/**
+	 * Test the binary encoding.
+	 */
+	@Test
+	public void testBinary() throws IOException {
+		CountsReportWriter writer = writer(CountsReportWriter.Format.BINARY);
+		writer.setTopN(1);
+		writer.write(counts);
+		writer.close();
+		assertEquals(Arrays.toString(new byte[] { 3, 't', 'h', 'e', 6, 1, 2,
+				'D', 'T', 6 }), Arrays.toString(bytes.toByteArray()));
+	}
+
+	/**
+	 * Test an entry larger than the buffer.
+	 */
+	@Test
+	public void testLongType() throws IOException {
+		char[] type = new char[100000];
+		Arrays.fill(type, 'a');
+		CategoryCounts<String, String> longCounts = new CategoryCounts<String, String>();
+		longCounts.addToken(new String(type), "NN");
+		CountsReportWriter writer = writer(CountsReportWriter.Format.TSV);
+		writer.write(longCounts);
+		writer.close();
+		assertEquals(new String(type) + "\t1\tNN\t1\n", text());
+	}
+}
@@ -0,0 +1,69 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class CountsViewerTest {
+
+	private CategoryCounts<String, String> counts;
+
+	/**
+	 * Create {"bank" => {"NN" => 3, "VB" => 2}, "run" => {"VB" => 1},
+	 * "banker" => {"NN" => 4}, "the" => {"DT" => 5}}
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		counts = new CategoryCounts<String, String>();
+		counts.addCount("bank", "NN", 3);
+		counts.addCount("bank", "VB", 2);
+		counts.addCount("run", "VB", 1);
+		counts.addCount("banker", "NN", 4);
+		counts.addCount("the", "DT", 5);
+	}
+
+	private static List<String> types(
+			List<Map.Entry<String, Tally<String>>> rows) {
+		List<String> types = new ArrayList<String>();
+		for (Map.Entry<String, Tally<String>> row : rows)
+			types.add(row.getKey());
+		return types;
+	}
+
+	private List<String> rows(String filter, int n) {
+		return types(CountsViewer.rows(counts.entrySet(), counts.entryOrder(),
+				filter, n));
+	}
+
+	/**
+	 * Test sorting, filtering and truncating rows.
+	 */
+	@Test
+	public void testRows() {
+		assertEquals("[bank, the, banker, run]", rows("", 0).toString());
+		assertEquals("[bank, the]", rows("", 2).toString());
+		assertEquals("[bank, banker]", rows("ban", 0).toString());
+		assertEquals("[bank]", rows("ban", 1).toString());
+		assertEquals("[]", rows("xyz", 0).toString());
+	}
+
+	/**
+	 * Test the category column.
+	 */
+	@Test
+	public void testCategories() {
+		assertEquals("NN 3, VB 2", CountsViewer.categories(counts.get("bank")));
+		assertEquals("", CountsViewer.categories(new Tally<String>()));
+	}
+}
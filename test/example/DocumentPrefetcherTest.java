@@ -0,0 +1,191 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import gate.Document;
+import gate.creole.ResourceInstantiationException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class DocumentPrefetcherTest {
+
+	/**
+	 * Ten documents, the sixth of which cannot be loaded
+	 */
+	private List<CorpusDocument> documents;
+	private AtomicInteger loaded;
+	/**
+	 * Names of the documents unloaded by the prefetchers
+	 */
+	private List<String> unloaded;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		loaded = new AtomicInteger();
+		unloaded = Collections.synchronizedList(new ArrayList<String>());
+		documents = new ArrayList<CorpusDocument>();
+		for (int i = 0; i < 10; i++)
+			documents.add(new CorpusDocument("doc" + i, 100) {
+				@Override
+				public Document load() throws ResourceInstantiationException {
+					loaded.incrementAndGet();
+					if (getId().equals("doc5"))
+						throw new ResourceInstantiationException("Bad "
+								+ getId());
+					return document(getId());
+				}
+			});
+	}
+
+	/**
+	 * A fake document whose name is its id.
+	 */
+	private static Document document(final String name) {
+		return (Document) Proxy.newProxyInstance(Document.class
+				.getClassLoader(), new Class<?>[] { Document.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("getName"))
+							return name;
+						if (method.getName().equals("toString"))
+							return name;
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * A prefetcher that records the documents it unloads instead of deleting
+	 * them, so that GATE is not needed. Unloading doc2 fails.
+	 */
+	private DocumentPrefetcher prefetcher(List<CorpusDocument> documents,
+			int depth) {
+		return new DocumentPrefetcher(documents, depth) {
+			@Override
+			public void unload(Document document) {
+				if (document.getName().equals("doc2"))
+					throw new IllegalStateException("Cannot unload doc2");
+				unloaded.add(document.getName());
+			}
+		};
+	}
+
+	/**
+	 * Documents are returned in order and loaded no more than the prefetch
+	 * depth ahead.
+	 */
+	@Test
+	public void testNext() throws Exception {
+		DocumentPrefetcher prefetcher = prefetcher(documents.subList(0,
+				5), 2);
+		try {
+			for (int i = 0; i < 5; i++) {
+				assertTrue(prefetcher.hasNext());
+				assertEquals("doc" + i, prefetcher.next().getName());
+				assertEquals("doc" + i, prefetcher.getCurrent().getId());
+				assertTrue(loaded.get() <= Math.min(i + 3, 5));
+			}
+			assertFalse(prefetcher.hasNext());
+		} finally {
+			prefetcher.close();
+		}
+		assertEquals(5, loaded.get());
+	}
+
+	/**
+	 * Load failures are thrown for the document that failed.
+	 */
+	@Test
+	public void testLoadFailure() throws Exception {
+		DocumentPrefetcher prefetcher = prefetcher(documents, 3);
+		try {
+			for (int i = 0; i < 5; i++)
+				prefetcher.next();
+			try {
+				prefetcher.next();
+				fail("Expected a load failure.");
+			} catch (ResourceInstantiationException e) {
+				assertEquals("Bad doc5", e.getMessage());
+			}
+			assertEquals("doc6", prefetcher.next().getName());
+		} finally {
+			prefetcher.close();
+		}
+		assertTrue(loaded.get() <= 10);
+	}
+
+	/**
+	 * Closing waits for a load that has started and skips those that have
+	 * not.
+	 */
+	@Test
+	public void testClose() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger finished = new AtomicInteger();
+		documents.set(1, new CorpusDocument("doc1", 100) {
+			@Override
+			public Document load() throws ResourceInstantiationException {
+				loaded.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				finished.incrementAndGet();
+				return document(getId());
+			}
+		});
+		DocumentPrefetcher prefetcher = prefetcher(documents, 5);
+		assertEquals("doc0", prefetcher.next().getName());
+		started.await();
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+				}
+				release.countDown();
+			}
+		}.start();
+		prefetcher.close();
+		assertEquals(1, finished.get());
+		assertEquals(2, loaded.get());
+		assertEquals(Arrays.asList("doc1"), unloaded);
+	}
+
+	/**
+	 * A document that cannot be unloaded does not stop the others from being
+	 * unloaded.
+	 */
+	@Test
+	public void testUnloadFailure() throws Exception {
+		DocumentPrefetcher prefetcher = prefetcher(documents, 3);
+		assertEquals("doc0", prefetcher.next().getName());
+		while (loaded.get() < 4)
+			Thread.sleep(1);
+		prefetcher.close();
+		assertEquals(Arrays.asList("doc1", "doc3"), unloaded);
+	}
+}
@@ -0,0 +1,121 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class ExternalCategoryCountsTest {
+
+	private File directory;
+	private File modelFile;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		modelFile = File.createTempFile("model", ".ntgm");
+		directory = modelFile.getParentFile();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		modelFile.delete();
+	}
+
+	/**
+	 * Test that spilling and merging gives the same model as counting in
+	 * memory.
+	 */
+	@Test
+	public void testWriteModel() throws Exception {
+		CategoryCounts<String, String> counts = new CategoryCounts<String, String>();
+		ExternalCategoryCounts external = new ExternalCategoryCounts(
+				directory, 20000);
+		Random random = new Random(0);
+		for (int i = 0; i < 20000; i++) {
+			String type = "t" + random.nextInt(2000);
+			String category = "C" + random.nextInt(3);
+			counts.addToken(type, category);
+			external.addToken(type, category);
+		}
+		assertTrue(external.getRunCount() > 1);
+		external.writeModel(modelFile);
+		assertEquals(0, external.getRunCount());
+		Model<String, String> expected = counts.toModel();
+		Model<String, String> model = ModelFile.load(modelFile);
+		assertEquals(expected.size(), model.size());
+		assertEquals(expected.getDefaultCategory(), model.getDefaultCategory());
+		for (int i = 0; i < 2000; i++)
+			assertEquals(expected.getCategory("t" + i), model.getCategory("t"
+					+ i));
+	}
+
+	/**
+	 * Test that more runs than the merge fan-in are merged in several passes
+	 * that give the same model and leave no run files behind.
+	 */
+	@Test
+	public void testMultiPassMerge() throws Exception {
+		File runDirectory = new File(directory, modelFile.getName() + ".runs");
+		assertTrue(runDirectory.mkdir());
+		try {
+			CategoryCounts<String, String> counts = new CategoryCounts<String, String>();
+			ExternalCategoryCounts external = new ExternalCategoryCounts(
+					runDirectory, 5000);
+			external.setMergeFanIn(3);
+			Random random = new Random(1);
+			for (int i = 0; i < 20000; i++) {
+				String type = "t" + random.nextInt(2000);
+				String category = "C" + random.nextInt(3);
+				counts.addToken(type, category);
+				external.addToken(type, category);
+			}
+			assertTrue(external.getRunCount() > 9);
+			external.writeModel(modelFile);
+			assertEquals(0, runDirectory.list().length);
+			Model<String, String> expected = counts.toModel();
+			Model<String, String> model = ModelFile.load(modelFile);
+			assertEquals(expected.size(), model.size());
+			assertEquals(expected.getDefaultCategory(), model
+					.getDefaultCategory());
+			for (int i = 0; i < 2000; i++)
+				assertEquals(expected.getCategory("t" + i), model
+						.getCategory("t" + i));
+		} finally {
+			runDirectory.delete();
+		}
+	}
+
+	/**
+	 * Test method for {@link example.ExternalCategoryCounts#toModel()}.
+	 */
+	@Test
+	public void testToModel() {
+		CategoryCounts<String, String> bankRun = new CategoryCounts<String, String>();
+		bankRun.addCount("bank", "NN", 3);
+		bankRun.addCount("bank", "VB", 2);
+		bankRun.addCount("run", "VB", 2);
+		bankRun.addCount("run", "NN", 2);
+		ExternalCategoryCounts external = new ExternalCategoryCounts(
+				directory, 1);
+		external.addCategoryCounts(bankRun).addCategoryCounts(bankRun);
+		Model<String, String> model = external.toModel();
+		assertEquals(2, model.size());
+		assertEquals("NN", model.getCategory("bank"));
+		assertEquals("NN", model.getCategory("run"));
+		assertEquals("NN", model.getDefaultCategory());
+	}
+}
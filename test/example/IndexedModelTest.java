@@ -0,0 +1,83 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class IndexedModelTest {
+
+	private static final String[] CATEGORIES = { "NN", "VB", "JJ", "DT" };
+
+	/**
+	 * 10,000 types, one with a null category, and a default of "NN"
+	 */
+	private Model<String, String> model;
+	private IndexedModel indexed;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Map<String, String> category = new HashMap<String, String>();
+		for (int i = 0; i < 10000; i++)
+			category.put("type" + i, CATEGORIES[i % CATEGORIES.length]);
+		category.put("caf\u00E9", "VB");
+		category.put("none", null);
+		model = new Model<String, String>(category, "NN");
+		indexed = new IndexedModel(model);
+	}
+
+	/**
+	 * Test method for {@link example.IndexedModel#getCategory(String)}.
+	 */
+	@Test
+	public void testGetCategory() {
+		assertEquals(model.size(), indexed.size());
+		for (Map.Entry<String, String> entry : model.entrySet())
+			assertEquals(entry.getKey(), entry.getValue(), indexed
+					.getCategory(entry.getKey()));
+		assertEquals("NN", indexed.getCategory("unknown"));
+		assertEquals("NN", indexed.getCategory(""));
+		assertNull(indexed.getCategory("none"));
+		assertEquals("NN", indexed.getDefaultCategory());
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.IndexedModel#getCategory(CharSequence, int, int)}.
+	 */
+	@Test
+	public void testGetCategorySpan() {
+		StringBuilder text = new StringBuilder("the type1 caf\u00E9 type14x");
+		assertEquals("VB", indexed.getCategory(text, 4, 9));
+		assertEquals("VB", indexed.getCategory(text, 10, 14));
+		assertEquals("JJ", indexed.getCategory(text, 15, 21));
+		assertEquals("NN", indexed.getCategory(text, 15, 22));
+		assertEquals("NN", indexed.getCategory(text, 0, 3));
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.IndexedModel#getCategories(String[], int, String[])}.
+	 */
+	@Test
+	public void testGetCategories() {
+		String[] types = { "type1", "unknown", "none", "type2" };
+		String[] categories = new String[types.length];
+		assertEquals(3, indexed.getCategories(types, types.length, categories));
+		assertArrayEquals(new String[] { "VB", "NN", null, "JJ" }, categories);
+		String[] modelCategories = new String[types.length];
+		assertEquals(3, model.getCategories(types, types.length,
+				modelCategories));
+		assertArrayEquals(categories, modelCategories);
+	}
+}
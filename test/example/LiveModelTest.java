@@ -0,0 +1,114 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class LiveModelTest {
+
+	/**
+	 * Model of {"bank" => {"NN" => 3, "VB" => 2}, {"run" => {"NN" => 2, "VB"
+	 * => 1}}}
+	 */
+	private LiveModel<String, String> bankRun;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		CategoryCounts<String, String> counts = new CategoryCounts<String, String>();
+		counts.addCount("bank", "NN", 3);
+		counts.addCount("bank", "VB", 2);
+		counts.addCount("run", "NN", 2);
+		counts.addCount("run", "VB", 1);
+		bankRun = new LiveModel<String, String>(counts);
+	}
+
+	/**
+	 * Test method for {@link example.LiveModel#update(CategoryCounts)}.
+	 */
+	@Test
+	public void testUpdate() {
+		assertEquals("NN", bankRun.getCategory("bank"));
+		assertEquals("NN", bankRun.getCategory("walk"));
+		CategoryCounts<String, String> delta = new CategoryCounts<String, String>();
+		delta.addCount("run", "VB", 2);
+		delta.addCount("walk", "VB", 3);
+		delta.addCount("swim", "VB", 1);
+		bankRun.update(delta);
+		assertEquals("NN", bankRun.getCategory("bank"));
+		assertEquals("VB", bankRun.getCategory("run"));
+		assertEquals("VB", bankRun.getCategory("walk"));
+		assertEquals("VB", bankRun.getDefaultCategory());
+		assertEquals("VB", bankRun.getCategory("fly"));
+		assertEquals(4, bankRun.size());
+		assertEquals(4, bankRun.toModel().size());
+		assertEquals("VB", bankRun.toModel().getCategory("run"));
+	}
+
+	/**
+	 * Test that a model built up by updates matches one built from all the
+	 * counts, including after the changes are folded into the predictions.
+	 */
+	@Test
+	public void testManyUpdates() {
+		LiveModel<String, String> live = new LiveModel<String, String>();
+		CategoryCounts<String, String> all = new CategoryCounts<String, String>();
+		for (int i = 0; i < 5000; i++) {
+			CategoryCounts<String, String> delta = new CategoryCounts<String, String>();
+			delta.addCount("t" + (i % 1500), i % 3 == 0 ? "NN" : "VB", i % 7);
+			live.update(delta);
+			all.addCategoryCounts(delta);
+		}
+		Model<String, String> model = all.toModel();
+		assertEquals(model.size(), live.size());
+		assertEquals(model.getDefaultCategory(), live.getDefaultCategory());
+		for (int i = 0; i < 1500; i++)
+			assertEquals(model.getCategory("t" + i), live.getCategory("t" + i));		// The maps of changes are merged logarithmically.
+		assertTrue(live.getLayerCount() <= 8);
+	}
+
+	/**
+	 * Test that readers see whole updates.
+	 */
+	@Test
+	public void testConcurrentReaders() throws Exception {
+		final LiveModel<String, String> live = new LiveModel<String, String>();
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicBoolean inconsistent = new AtomicBoolean(false);
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				while (!done.get()) {
+					// Both types always change together.
+					Model<String, String> model = live.toModel();
+					if (!equal(model.getCategory("a"), model.getCategory("b")))
+						inconsistent.set(true);
+				}
+			}
+		};
+		reader.start();
+		for (int i = 0; i < 2000; i++) {
+			CategoryCounts<String, String> delta = new CategoryCounts<String, String>();
+			String category = i % 2 == 0 ? "NN" : "VB";
+			delta.addCount("a", category, 2);
+			delta.addCount("b", category, 2);
+			live.update(delta);
+		}
+		done.set(true);
+		reader.join();
+		assertFalse(inconsistent.get());
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return null == a ? null == b : a.equals(b);
+	}
+}
@@ -0,0 +1,120 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class MappedModelTest {
+
+	private static final String[] CATEGORIES = { "NN", "VB", "JJ", "DT" };
+
+	/**
+	 * 10,000 types, including non-ASCII ones, and a default of "NN"
+	 */
+	private Model<String, String> model;
+	private File indexFile;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Map<String, String> category = new HashMap<String, String>();
+		for (int i = 0; i < 10000; i++)
+			category.put("type" + i, CATEGORIES[i % CATEGORIES.length]);
+		category.put("caf\u00E9", "NN");
+		category.put("\u6F22\u5B57", "VB");
+		category.put("\uD83D\uDE00", "JJ");
+		model = new Model<String, String>(category, "NN");
+		indexFile = File.createTempFile("model", ".ntgx");
+		MappedModel.write(model, indexFile);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		indexFile.delete();
+	}
+
+	/**
+	 * Test method for {@link example.MappedModel#getCategory(String)}.
+	 */
+	@Test
+	public void testGetCategory() throws Exception {
+		MappedModel mapped = new MappedModel(indexFile);
+		assertEquals(model.size(), mapped.size());
+		for (Map.Entry<String, String> entry : model.entrySet())
+			assertEquals(entry.getKey(), entry.getValue(),
+					mapped.getCategory(entry.getKey()));
+		assertEquals("NN", mapped.getCategory("unknown"));
+		assertEquals("NN", mapped.getCategory(""));
+		assertEquals("NN", mapped.getCategory("type1x"));
+		assertEquals("NN", mapped.getDefaultCategory());
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.MappedModel#getCategory(CharSequence, int, int)}.
+	 */
+	@Test
+	public void testGetCategorySpan() throws Exception {
+		MappedModel mapped = new MappedModel(indexFile);
+		String text = "the type1 caf\u00E9 \u6F22\u5B57";
+		assertEquals("VB", mapped.getCategory(text, 4, 9));
+		assertEquals("NN", mapped.getCategory(text, 10, 14));
+		assertEquals("VB", mapped.getCategory(text, 15, 17));
+		assertEquals("NN", mapped.getCategory(text, 0, 3));
+	}
+
+	/**
+	 * Test method for {@link example.MappedModel#getCategory(byte[], int, int)}.
+	 */
+	@Test
+	public void testGetCategoryBytes() throws Exception {
+		MappedModel mapped = new MappedModel(indexFile);
+		byte[] bytes = "the type1 caf\u00E9 \uD83D\uDE00 type10".getBytes("UTF-8");
+		assertEquals("VB", mapped.getCategory(bytes, 4, 5));
+		assertEquals("NN", mapped.getCategory(bytes, 10, 5));
+		assertEquals("JJ", mapped.getCategory(bytes, 16, 4));
+		assertEquals("JJ", mapped.getCategory(bytes, 21, 6));
+		assertEquals("VB", mapped.getCategory(bytes, 21, 5));
+		assertEquals("NN", mapped.getCategory(bytes, 0, 3));
+		assertEquals("NN", mapped.getCategory(bytes, 0, 0));
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.MappedModel#getCategories(String[], int, String[])}.
+	 */
+	@Test
+	public void testGetCategories() throws Exception {
+		MappedModel mapped = new MappedModel(indexFile);
+		String[] types = { "type1", "unknown", "caf\u00E9", "type3", "x" };
+		String[] categories = new String[types.length];
+		assertEquals(2, mapped.getCategories(types, 3, categories));
+		assertArrayEquals(new String[] { "VB", "NN", "NN", null, null },
+				categories);
+	}
+
+	/**
+	 * Test method for {@link example.ModelFile#open(File)}.
+	 */
+	@Test
+	public void testOpen() throws Exception {
+		CategoryModel<String, String> opened = ModelFile.open(indexFile);
+		assertTrue(opened instanceof MappedModel);
+		assertEquals("JJ", opened.getCategory("\uD83D\uDE00"));
+	}
+}
@@ -0,0 +1,74 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class ModelCompactorTest {
+
+	/**
+	 * {"bank" => {"NN" => 3, "VB" => 2}, "run" => {"VB" => 3, "NN" => 1},
+	 * "walk" => {"VB" => 1}, "swim" => {"VB" => 2, "NN" => 2, "JJ" => 1}}
+	 */
+	private CategoryCounts<String, String> counts;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		counts = new CategoryCounts<String, String>();
+		counts.addCount("bank", "NN", 3);
+		counts.addCount("bank", "VB", 2);
+		counts.addCount("run", "VB", 3);
+		counts.addCount("run", "NN", 1);
+		counts.addCount("walk", "VB", 1);
+		counts.addCount("swim", "VB", 2);
+		counts.addCount("swim", "NN", 2);
+		counts.addCount("swim", "JJ", 1);
+	}
+
+	/**
+	 * Test that redundant entries are removed without changing predictions.
+	 */
+	@Test
+	public void testCompactRedundant() {
+		ModelCompactor compactor = new ModelCompactor();
+		Model<String, String> full = counts.toModel();
+		Model<String, String> compact = compactor.compact(counts);
+		assertEquals("VB", compact.getDefaultCategory());
+		assertEquals(4, compactor.getTypesBefore());
+		assertEquals(2, compactor.getTypesAfter());
+		assertEquals(2, compact.size());
+		for (String type : new String[] { "bank", "run", "walk", "swim", "fly" })
+			assertEquals(full.getCategory(type), compact.getCategory(type));
+		assertEquals(2, compactor.compact(full).size());
+		assertEquals(1.0, ModelCompactor.agreement(full, compact, counts), 0);
+	}
+
+	/**
+	 * Test the count and confidence thresholds.
+	 */
+	@Test
+	public void testThresholds() {
+		assertEquals(1, new ModelCompactor(0, 0.5).compact(counts).size());
+		assertEquals(2, new ModelCompactor(5, 0).compact(counts).size());
+		assertEquals(0, new ModelCompactor(6, 0).compact(counts).size());
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.ModelCompactor#accuracy(CategoryModel, CategoryCounts)}.
+	 */
+	@Test
+	public void testAccuracy() {
+		Model<String, String> model = counts.toModel();
+		assertEquals((3 + 3 + 1 + 2) / 15.0, ModelCompactor.accuracy(model,
+				counts), 1e-9);
+	}
+}
@@ -0,0 +1,93 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class ModelFileTest {
+
+	/**
+	 * {"bank" => "NN", "run" => "NN", "walk" => "VB"}, default "NN"
+	 */
+	private Model<String, String> model;
+	private File modelFile;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		CategoryCounts<String, String> counts = new CategoryCounts<String, String>();
+		counts.addToken("bank", "NN");
+		counts.addToken("run", "NN");
+		counts.addToken("run", "NN");
+		counts.addToken("run", "VB");
+		counts.addToken("walk", "VB");
+		model = new Model<String, String>(counts);
+		modelFile = File.createTempFile("model", ".ntgm");
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		modelFile.delete();
+	}
+
+	/**
+	 * Test method for {@link example.ModelFile#save(Model, File)} and
+	 * {@link example.ModelFile#load(File)}.
+	 */
+	@Test
+	public void testSaveLoad() throws Exception {
+		ModelFile.save(model, modelFile);
+		Model<String, String> loaded = ModelFile.load(modelFile);
+		assertEquals(3, loaded.size());
+		assertEquals("NN", loaded.getCategory("bank"));
+		assertEquals("NN", loaded.getCategory("run"));
+		assertEquals("VB", loaded.getCategory("walk"));
+		assertEquals("NN", loaded.getCategory("unknown"));
+		assertEquals("NN", loaded.getDefaultCategory());
+	}
+
+	/**
+	 * Test method for {@link example.ModelFile#load(File)} with a serialized
+	 * model.
+	 */
+	@Test
+	public void testLoadSerialized() throws Exception {
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(
+				modelFile));
+		out.writeObject(model);
+		out.close();
+		Model<String, String> loaded = ModelFile.load(modelFile);
+		assertEquals(3, loaded.size());
+		assertEquals("VB", loaded.getCategory("walk"));
+	}
+
+	/**
+	 * Test that a corrupted model file is rejected.
+	 */
+	@Test(expected = IOException.class)
+	public void testChecksum() throws Exception {
+		ModelFile.save(model, modelFile);
+		RandomAccessFile file = new RandomAccessFile(modelFile, "rw");
+		file.seek(ModelFile.HEADER_SIZE + 1);
+		file.write('x');
+		file.close();
+		ModelFile.load(modelFile);
+	}
+}
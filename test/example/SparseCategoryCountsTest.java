@@ -0,0 +1,98 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class SparseCategoryCountsTest {
+
+	/**
+	 * Empty category counts
+	 */
+	private SparseCategoryCounts<String, String> empty;
+	/**
+	 * {"bank" => {"NN" => 3, "VB" => 2}, {"run" => {"NN" => 2, "VB" => 1}}}
+	 */
+	private SparseCategoryCounts<String, String> bankRun;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		empty = new SparseCategoryCounts<String, String>();
+		bankRun = new SparseCategoryCounts<String, String>();
+		for (int i = 0; i < 3; i++)
+			bankRun.addToken("bank", "NN");
+		for (int i = 0; i < 2; i++)
+			bankRun.addToken("bank", "VB");
+		for (int i = 0; i < 2; i++)
+			bankRun.addToken("run", "NN");
+		bankRun.addToken("run", "VB");
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.SparseCategoryCounts#getCount(Comparable, Comparable)}.
+	 */
+	@Test
+	public void testGetCount() {
+		assertEquals(0, empty.getCount("bank", "NN"));
+		assertEquals(3, bankRun.getCount("bank", "NN"));
+		assertEquals(1, bankRun.getCount("run", "VB"));
+		assertEquals(0, bankRun.getCount("run", "JJ"));
+		assertEquals(2, bankRun.size());
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.SparseCategoryCounts#getMostCommonCategory()}.
+	 */
+	@Test
+	public void testGetMostCommonCategory() {
+		assertEquals(null, empty.getMostCommonCategory());
+		assertEquals("NN", bankRun.getMostCommonCategory());
+	}
+
+	/**
+	 * Test that {@link example.SparseCategoryCounts#toModel()} builds the same
+	 * model as {@link example.CategoryCounts}.
+	 */
+	@Test
+	public void testToModel() {
+		Random random = new Random(17);
+		CategoryCounts<String, String> counts = new CategoryCounts<String, String>();
+		SparseCategoryCounts<String, String> sparse = new SparseCategoryCounts<String, String>(
+				4);
+		for (int i = 0; i < 100000; i++) {
+			String type = "t" + random.nextInt(5000);
+			String category = "c" + random.nextInt(6);
+			counts.addToken(type, category);
+			if (i % 2 == 0)
+				sparse.addToken(type, category);
+		}
+		CategoryCounts<String, String> odd = new CategoryCounts<String, String>();
+		random = new Random(17);
+		for (int i = 0; i < 100000; i++) {
+			String type = "t" + random.nextInt(5000);
+			String category = "c" + random.nextInt(6);
+			if (i % 2 == 1)
+				odd.addToken(type, category);
+		}
+		sparse.addCategoryCounts(odd);
+		Model<String, String> expected = counts.toModel();
+		Model<String, String> model = sparse.toModel();
+		assertEquals(expected.size(), model.size());
+		assertEquals(expected.getDefaultCategory(), model.getDefaultCategory());
+		for (Map.Entry<String, String> entry : expected.entrySet())
+			assertEquals(entry.getValue(), model.getCategory(entry.getKey()));
+	}
+}
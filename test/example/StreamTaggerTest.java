@@ -0,0 +1,135 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class StreamTaggerTest {
+
+	private File modelFile;
+	private MappedModel model;
+
+	/**
+	 * {"the" => "DT", "bank" => "NN", "caf\u00E9" => "NN", "run" => "VB"} with
+	 * a default of "NN"
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Map<String, String> category = new HashMap<String, String>();
+		category.put("the", "DT");
+		category.put("bank", "NN");
+		category.put("caf\u00E9", "NN");
+		category.put("run", "VB");
+		modelFile = File.createTempFile("model", ".ntgm");
+		ModelFile.save(new Model<String, String>(category, "NN"), modelFile);
+		model = StreamTagger.openIndex(modelFile);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		modelFile.delete();
+	}
+
+	private String tag(StreamTagger tagger, String input) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		tagger.tag(Channels.newChannel(new ByteArrayInputStream(input
+				.getBytes("UTF-8"))), Channels.newChannel(out));
+		return out.toString("UTF-8");
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.StreamTagger#tag(java.nio.channels.ReadableByteChannel, java.nio.channels.WritableByteChannel)}
+	 * .
+	 */
+	@Test
+	public void testTagTokens() throws Exception {
+		StreamTagger tagger = new StreamTagger(model,
+				StreamTagger.Format.TOKEN);
+		assertEquals("the\tDT\nrun\tVB\n\ncaf\u00E9\tNN\nzzz\tNN\n", tag(
+				tagger, "the\r\nrun\n\ncaf\u00E9\nzzz"));
+		assertEquals(4, tagger.getTokenCount());
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.StreamTagger#tag(java.nio.channels.ReadableByteChannel, java.nio.channels.WritableByteChannel)}
+	 * .
+	 */
+	@Test
+	public void testTagConll() throws Exception {
+		StreamTagger tagger = new StreamTagger(model,
+				StreamTagger.Format.CONLL);
+		assertEquals("# sent 1\n1\tthe\t_\tDT\n2\trun\t_\tVB\n\n3\tbank\tNN\n",
+				tag(tagger, "# sent 1\n1\tthe\t_\n2\trun\t_\n\n3\tbank\n"));
+		assertEquals(3, tagger.getTokenCount());
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.StreamTagger#tag(java.nio.channels.ReadableByteChannel, java.nio.channels.WritableByteChannel)}
+	 * .
+	 */
+	@Test
+	public void testTagColumn() throws Exception {
+		StreamTagger tagger = new StreamTagger(model, StreamTagger.Format.TSV,
+				2);
+		assertEquals("a\tb\trun\tVB\na\tb\tNN\n", tag(tagger,
+				"a\tb\trun\na\tb\n"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link example.StreamTagger#tag(java.nio.channels.ReadableByteChannel, java.nio.channels.WritableByteChannel, example.StreamTagger.Format, int)}
+	 * .
+	 */
+	@Test
+	public void testTagFormat() throws Exception {
+		StreamTagger tagger = new StreamTagger(model,
+				StreamTagger.Format.TOKEN);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		tagger.tag(Channels.newChannel(new ByteArrayInputStream(
+				"a\tb\trun\n".getBytes("UTF-8"))), Channels.newChannel(out),
+				StreamTagger.Format.TSV, 2);
+		assertEquals("a\tb\trun\tVB\n", out.toString("UTF-8"));
+		assertEquals("run\tVB\n", tag(tagger, "run\n"));
+		assertEquals(2, tagger.getTokenCount());
+	}
+
+	/**
+	 * Lines longer than the input buffer are tagged whole.
+	 */
+	@Test
+	public void testTagLongLines() throws Exception {
+		StringBuilder input = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 3; i++) {
+			StringBuilder line = new StringBuilder();
+			for (int j = 0; j < 500000; j++)
+				line.append("x");
+			input.append(line).append("\nrun\n");
+			expected.append(line).append("\tNN\nrun\tVB\n");
+		}
+		StreamTagger tagger = new StreamTagger(model,
+				StreamTagger.Format.TOKEN);
+		assertEquals(expected.toString(), tag(tagger, input.toString()));
+	}
+}
@@ -0,0 +1,138 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import gate.Annotation;
+import gate.Node;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class TagColumnsTest {
+
+	/**
+	 * "The bank runs": The/DT bank/NN runs/VB, with a second token at the
+	 * offset of "bank"
+	 */
+	private TagColumns columns;
+	private Annotation the, bank, bank2, runs;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		the = token(1, 0, 3);
+		bank = token(2, 4, 8);
+		bank2 = token(5, 4, 6);
+		runs = token(3, 9, 13);
+		columns = new TagColumns(2);
+		columns.add(the, "DT");
+		columns.add(bank, "NN");
+		columns.add(bank2, null);
+		columns.add(runs, "VB");
+	}
+
+	/**
+	 * Test the column accessors.
+	 */
+	@Test
+	public void testAccessors() {
+		assertEquals(4, columns.size());
+		assertEquals(2, columns.getAnnotationId(1));
+		assertEquals(4, columns.getStart(1));
+		assertEquals(8, columns.getEnd(1));
+		assertEquals("NN", columns.getCategory(1));
+		assertNull(columns.getCategory(2));
+	}
+
+	/**
+	 * Test method for {@link example.TagColumns#getCategory(Annotation)}.
+	 */
+	@Test
+	public void testGetCategoryOfToken() {
+		assertEquals("DT", columns.getCategory(the));
+		assertEquals("NN", columns.getCategory(bank));
+		assertNull(columns.getCategory(bank2));
+		assertEquals("VB", columns.getCategory(runs));
+		assertEquals(-1, columns.indexOf(token(4, 9, 13)));
+		assertEquals(-1, columns.indexOf(token(6, 5, 6)));
+	}
+
+	/**
+	 * Test that tokens must be added in order.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testOutOfOrder() {
+		columns.add(the, "DT");
+	}
+
+	/**
+	 * Test that the columns survive serialization.
+	 */
+	@Test
+	public void testSerialization() throws Exception {
+		columns.trim();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(columns);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		TagColumns copy = (TagColumns) in.readObject();
+		assertEquals(4, copy.size());
+		assertEquals("VB", copy.getCategory(runs));
+		copy.add(token(7, 14, 16), "NN");
+		copy.add(token(8, 17, 18), "JJ");
+		assertEquals("NN", copy.getCategory(4));
+		assertEquals("JJ", copy.getCategory(5));
+	}
+
+	/**
+	 * A token annotation with an id and offsets.
+	 */
+	private static Annotation token(final int id, long start, long end) {
+		final Node startNode = node(start);
+		final Node endNode = node(end);
+		return (Annotation) Proxy.newProxyInstance(Annotation.class
+				.getClassLoader(), new Class<?>[] { Annotation.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if ("getId".equals(method.getName()))
+							return id;
+						if ("getStartNode".equals(method.getName()))
+							return startNode;
+						if ("getEndNode".equals(method.getName()))
+							return endNode;
+						throw new UnsupportedOperationException(method
+								.getName());
+					}
+				});
+	}
+
+	private static Node node(final long offset) {
+		return (Node) Proxy.newProxyInstance(Node.class.getClassLoader(),
+				new Class<?>[] { Node.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if ("getOffset".equals(method.getName()))
+							return offset;
+						throw new UnsupportedOperationException(method
+								.getName());
+					}
+				});
+	}
+}
@@ -0,0 +1,117 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class TagServerTest {
+
+	private File modelFile;
+	private TagServer server;
+
+	/**
+	 * Serve {"the" => "DT", "bank" => "NN", "run" => "VB"} with a default of
+	 * "NN" on a free port.
+	 * 
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Map<String, String> category = new HashMap<String, String>();
+		category.put("the", "DT");
+		category.put("bank", "NN");
+		category.put("run", "VB");
+		modelFile = File.createTempFile("model", ".ntgm");
+		ModelFile.save(new Model<String, String>(category, "NN"), modelFile);
+		server = new TagServer(modelFile, 0, 2);
+		server.start();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		server.stop();
+		modelFile.delete();
+	}
+
+	private HttpURLConnection connect(String path) throws Exception {
+		return (HttpURLConnection) new URL("http://127.0.0.1:"
+				+ server.getPort() + path).openConnection();
+	}
+
+	private static String read(InputStream in) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int n; (n = in.read(buffer)) >= 0;)
+			bytes.write(buffer, 0, n);
+		in.close();
+		return bytes.toString("UTF-8");
+	}
+
+	private String post(String path, String body) throws Exception {
+		HttpURLConnection connection = connect(path);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		OutputStream out = connection.getOutputStream();
+		out.write(body.getBytes("UTF-8"));
+		out.close();
+		assertEquals(200, connection.getResponseCode());
+		return read(connection.getInputStream());
+	}
+
+	/**
+	 * Test tagging a batch of sequences.
+	 */
+	@Test
+	public void testTag() throws Exception {
+		assertEquals("the\tDT\nbank\tNN\n\nrun\tVB\nzzz\tNN\n", post("/tag",
+				"the\nbank\n\nrun\nzzz\n"));
+		assertEquals("the\tDT\n", post("/tag", "the\n"));
+		assertEquals("1\trun\t_\tVB\n", post("/tag?format=conll",
+				"1\trun\t_\n"));
+		assertEquals("a\trun\tVB\n", post("/tag?format=tsv&column=1",
+				"a\trun\n"));
+		assertEquals("run\tVB\n", post("/tag", "run\n"));
+	}
+
+	/**
+	 * Test that bad requests are refused.
+	 */
+	@Test
+	public void testBadRequest() throws Exception {
+		HttpURLConnection connection = connect("/tag?format=xml");
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.getOutputStream().close();
+		assertEquals(400, connection.getResponseCode());
+		assertEquals(405, connect("/tag").getResponseCode());
+	}
+
+	/**
+	 * Test the health and statistics endpoints.
+	 */
+	@Test
+	public void testHealthAndStats() throws Exception {
+		assertTrue(read(connect("/health").getInputStream()).startsWith("OK"));
+		post("/tag", "the\nbank\n");
+		String stats = read(connect("/stats").getInputStream());
+		assertTrue(stats, stats.contains("requests"));
+	}
+}
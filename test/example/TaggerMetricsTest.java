@@ -0,0 +1,104 @@
+package example;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author W.P. McNeill
+ * 
+ */
+public class TaggerMetricsTest {
+
+	/**
+	 * Three documents of 100, 200 and 300 tokens taking 1, 2 and 3
+	 * milliseconds, with 60 unknown tokens out of 600
+	 */
+	private TaggerMetrics metrics;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		metrics = new TaggerMetrics("test");
+		metrics.recordDocument(100, 1000000);
+		metrics.recordDocument(200, 2000000);
+		metrics.recordDocument(300, 3000000);
+		metrics.recordLookups(600, 60);
+	}
+
+	/**
+	 * Test the counters.
+	 */
+	@Test
+	public void testCounters() {
+		assertEquals(3, metrics.getDocuments());
+		assertEquals(600, metrics.getTokens());
+		assertEquals(100000, metrics.getTokensPerSecond(), 1e-6);
+		assertEquals(0.1, metrics.getUnknownTokenRate(), 1e-9);
+		assertEquals(2.0, metrics.getMeanLatencyMillis(), 1e-9);
+		assertEquals(3.0, metrics.getMaxLatencyMillis(), 1e-9);
+	}
+
+	/**
+	 * Percentiles are bucket upper bounds no larger than the maximum.
+	 */
+	@Test
+	public void testPercentiles() {
+		double median = metrics.getMedianLatencyMillis();
+		assertTrue(median >= 2.0 && median < 4.0);
+		assertEquals(3.0, metrics.getLatency99thPercentileMillis(), 1e-9);
+		assertEquals(1.048576, metrics.getLatencyPercentileMillis(0.1), 1e-9);
+	}
+
+	/**
+	 * Test method for {@link example.TaggerMetrics#reset()}.
+	 */
+	@Test
+	public void testReset() {
+		metrics.reset();
+		assertEquals(0, metrics.getDocuments());
+		assertEquals(0, metrics.getTokensPerSecond(), 0);
+		assertEquals(0, metrics.getMedianLatencyMillis(), 0);
+		assertEquals(0, metrics.getUnknownTokenRate(), 0);
+	}
+
+	/**
+	 * Test method for {@link example.TaggerMetrics#forName(String)}.
+	 */
+	@Test
+	public void testForName() {
+		TaggerMetrics m = TaggerMetrics.forName("TaggerMetricsTest");
+		assertSame(m, TaggerMetrics.forName("TaggerMetricsTest"));
+		assertNotSame(m, TaggerMetrics.forName("Other"));
+	}
+
+	/**
+	 * A model cache records the load time of the models it loads but not of
+	 * the requests it answers from the cache.
+	 */
+	@Test
+	public void testModelCacheLoadTime() throws Exception {
+		File modelFile = File.createTempFile("model", ".ntgm");
+		try {
+			ModelFile.save(new Model<String, String>(Collections
+					.singletonMap("the", "DT"), "NN"), modelFile);
+			ModelCache cache = new ModelCache(metrics);
+			CategoryModel<String, String> model = cache.acquire(modelFile
+					.getPath());
+			assertTrue(metrics.getModelLoadMillis() > 0);
+			metrics.setModelLoadTime(5000000);
+			cache.acquire(modelFile.getPath());
+			assertEquals(5.0, metrics.getModelLoadMillis(), 1e-9);
+			cache.release(model);
+			cache.release(model);
+		} finally {
+			modelFile.delete();
+		}
+	}
+}
@@ -2,6 +2,12 @@ package example;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -64,6 +70,31 @@ public class TallyTest {
 		assertEquals("A", azb.getLargestKey());		
 	}
 	
+	/**
+	 * Test that the largest key follows changing counts.
+	 */
+	@Test
+	public void testGetLargestKeyAfterUpdates() {
+		azb.addToCount("B", 2);
+		assertEquals("B", azb.getLargestKey());
+		azb.addToCount("Z", 2);
+		assertEquals("Z", azb.getLargestKey());
+		azb.addToCount("Z", -4);
+		assertEquals("B", azb.getLargestKey());
+	}
+
+	/**
+	 * Test method for {@link example.Tally#topK(int)}.
+	 */
+	@Test
+	public void testTopK() {
+		assertEquals(Arrays.asList(), empty.topK(2));
+		assertEquals(Arrays.asList("A"), azb.topK(1));
+		assertEquals(Arrays.asList("A", "Z"), azb.topK(2));
+		assertEquals(Arrays.asList("A", "Z", "B"), azb.topK(10));
+		assertEquals(Arrays.asList(), azb.topK(0));
+	}
+
 	/**
 	 * Test method for {@link example.TallyTest#toString()}.
 	 */
@@ -75,4 +106,62 @@ public class TallyTest {
 		// B	2
 		assertEquals("A\t3\n" + "Z\t3\n" + "B\t2", azb.toString());
 	}
+
+	/**
+	 * Test method for {@link example.Tally#addTally(Tally)}.
+	 */
+	@Test
+	public void testAddTally() {
+		SymbolTable<String> symbols = new SymbolTable<String>();
+		Tally<String> shared = new Tally<String>(symbols);
+		shared.addToCount("B", 3);
+		shared.addTally(azb).addTally(new Tally<String>(symbols).addTally(azb));
+		assertEquals(6, shared.getCount("A"));
+		assertEquals(7, shared.getCount("B"));
+		assertEquals(Long.valueOf(6 + 7 + 6), shared.getTotalCount());
+		assertEquals("B", shared.getLargestKey());
+	}
+
+	/**
+	 * Test a tally of a few objects from a large shared symbol table, added
+	 * out of id order.
+	 */
+	@Test
+	public void testSparseIds() {
+		SymbolTable<Integer> symbols = new SymbolTable<Integer>();
+		for (int i = 0; i < 1000; i++)
+			symbols.intern(i);
+		Tally<Integer> tally = new Tally<Integer>(symbols);
+		tally.addToCount(999, 2);
+		tally.addToCount(5, 4);
+		tally.addToCount(500, 1);
+		tally.addToCount(999, 3);
+		assertEquals(3, tally.size());
+		assertEquals(5, tally.getCount(999));
+		assertEquals(4, tally.getCount(5));
+		assertEquals(1, tally.getCount(500));
+		assertEquals(0, tally.getCount(6));
+		assertEquals(0, tally.getCount(2000));
+		assertEquals(Integer.valueOf(999), tally.getLargestKey());
+		assertEquals("[999, 5, 500]", tally.topK(3).toString());
+		assertEquals(Integer.valueOf(5), tally.keyAt(0));
+		assertEquals(1, tally.countAt(1));
+	}
+
+	/**
+	 * Test that a tally survives serialization.
+	 */
+	@Test
+	public void testSerialization() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(azb);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		@SuppressWarnings("unchecked")
+		Tally<String> copy = (Tally<String>) in.readObject();
+		assertEquals(azb.toString(), copy.toString());
+		assertEquals(azb.getTotalCount(), copy.getTotalCount());
+	}
 }